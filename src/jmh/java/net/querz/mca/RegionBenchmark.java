@@ -0,0 +1,70 @@
+package net.querz.mca;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads and saves a full synthetic region file with 1024 chunks.
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class RegionBenchmark {
+
+	@Param({"ZLIB"})
+	public CompressionType compression;
+
+	private File directory;
+	private File regionFile;
+	private File outputFile;
+	private MCAFile region;
+
+	@Setup
+	public void setup() throws IOException {
+		directory = Files.createTempDirectory("nbt-jmh").toFile();
+		regionFile = new File(directory, "r.0.0.mca");
+		outputFile = new File(directory, "r.1.1.mca");
+		region = RegionFixtures.createRegion(1024, Chunk.DEFAULT_DATA_VERSION, RegionFixtures.DEFAULT_SEED);
+		region.setCompressionType(compression);
+		MCAUtil.write(region, regionFile);
+	}
+
+	@TearDown
+	public void tearDown() {
+		regionFile.delete();
+		outputFile.delete();
+		directory.delete();
+	}
+
+	@Benchmark
+	public MCAFile load() throws IOException {
+		return MCAUtil.read(regionFile);
+	}
+
+	@Benchmark
+	public MCAFile loadBiomes() throws IOException {
+		return MCAUtil.read(regionFile, LoadFlags.BIOMES);
+	}
+
+	@Benchmark
+	public int save() throws IOException {
+		return MCAUtil.write(region, outputFile);
+	}
+}
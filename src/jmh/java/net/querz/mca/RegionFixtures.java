@@ -0,0 +1,217 @@
+package net.querz.mca;
+
+import net.querz.nbt.tag.CompoundTag;
+import net.querz.nbt.tag.DoubleTag;
+import net.querz.nbt.tag.FloatTag;
+import net.querz.nbt.tag.ListTag;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Generates deterministic synthetic region files for benchmarks.
+ * The same seed always results in the same data, so benchmark results
+ * can be reproduced without any world files.
+ * */
+public final class RegionFixtures {
+
+	public static final long DEFAULT_SEED = 0x4E4254L;
+
+	private static final String[] STONE = {"minecraft:stone", "minecraft:granite", "minecraft:diorite", "minecraft:andesite", "minecraft:gravel"};
+	private static final String[] ORES = {"minecraft:coal_ore", "minecraft:iron_ore", "minecraft:gold_ore", "minecraft:redstone_ore", "minecraft:lapis_ore", "minecraft:diamond_ore"};
+	private static final String[] ENTITIES = {"minecraft:pig", "minecraft:cow", "minecraft:sheep", "minecraft:zombie", "minecraft:skeleton"};
+
+	private RegionFixtures() {}
+
+	/**
+	 * Creates a region with the given amount of chunks, starting at index 0.
+	 * @param chunks The amount of chunks, between 0 and 1024.
+	 * @param dataVersion The data version of all chunks.
+	 * @param seed The seed for the random data.
+	 * @return The region.
+	 * */
+	public static MCAFile createRegion(int chunks, int dataVersion, long seed) {
+		MCAFile mcaFile = new MCAFile(0, 0);
+		Random random = new Random(seed);
+		for (int i = 0; i < chunks; i++) {
+			Chunk chunk = createChunk(random, dataVersion);
+			chunk.setLastMCAUpdate(1600000000 + i);
+			mcaFile.setChunk(i, chunk);
+		}
+		return mcaFile;
+	}
+
+	/**
+	 * Creates a chunk with 8 sections of terrain, biomes, heightmaps, entities and tile entities.
+	 * @param random The source of the random data.
+	 * @param dataVersion The data version of the chunk.
+	 * @return The chunk.
+	 * */
+	public static Chunk createChunk(Random random, int dataVersion) {
+		Chunk chunk = Chunk.newChunk(dataVersion);
+		chunk.setLastUpdate(random.nextInt(1000000));
+		chunk.setInhabitedTime(random.nextInt(100000));
+		chunk.setStatus("full");
+
+		int[] heights = new int[256];
+		int base = 60 + random.nextInt(8);
+		for (int i = 0; i < 256; i++) {
+			heights[i] = base + random.nextInt(4);
+		}
+
+		for (int y = 0; y < 8; y++) {
+			chunk.setSection(y, createSection(random, dataVersion, y, heights));
+		}
+
+		int[] biomes = new int[dataVersion < 2202 ? 256 : 1024];
+		int biome = random.nextInt(50);
+		for (int i = 0; i < biomes.length; i++) {
+			biomes[i] = random.nextInt(16) == 0 ? random.nextInt(50) : biome;
+		}
+		chunk.setBiomes(biomes);
+
+		CompoundTag heightMaps = new CompoundTag();
+		for (String name : new String[]{"MOTION_BLOCKING", "MOTION_BLOCKING_NO_LEAVES", "OCEAN_FLOOR", "WORLD_SURFACE"}) {
+			long[] heightMap = new long[37];
+			for (int i = 0; i < heightMap.length; i++) {
+				heightMap[i] = random.nextLong();
+			}
+			heightMaps.putLongArray(name, heightMap);
+		}
+		chunk.setHeightMaps(heightMaps);
+
+		ListTag<CompoundTag> entities = new ListTag<>(CompoundTag.class);
+		for (int i = random.nextInt(5); i > 0; i--) {
+			entities.add(createEntity(random));
+		}
+		chunk.setEntities(entities);
+
+		ListTag<CompoundTag> tileEntities = new ListTag<>(CompoundTag.class);
+		for (int i = random.nextInt(3); i > 0; i--) {
+			tileEntities.add(createChest(random));
+		}
+		chunk.setTileEntities(tileEntities);
+		chunk.setStructures(new CompoundTag());
+		return chunk;
+	}
+
+	private static Section createSection(Random random, int dataVersion, int sectionY, int[] heights) {
+		Section section = Section.newSection();
+		section.dataVersion = dataVersion;
+		for (String name : STONE) {
+			section.addToPalette(block(name));
+		}
+		for (String name : ORES) {
+			section.addToPalette(block(name));
+		}
+		section.addToPalette(block("minecraft:dirt"));
+		CompoundTag grass = block("minecraft:grass_block");
+		grass.getCompoundTag("Properties").putString("snowy", "false");
+		section.addToPalette(grass);
+		CompoundTag water = block("minecraft:water");
+		water.getCompoundTag("Properties").putString("level", "0");
+		section.addToPalette(water);
+		section.adjustBlockStateBits(null, section.getBlockStates());
+
+		long[] blockStates = section.getBlockStates();
+		for (int i = 0; i < 4096; i++) {
+			int y = sectionY * 16 + (i >> 8);
+			int height = heights[i & 0xFF];
+			int index;
+			if (y > height) {
+				index = y <= 62 ? 14 : 0; // water or air
+			} else if (y == height) {
+				index = 13; // grass
+			} else if (y > height - 4) {
+				index = 12; // dirt
+			} else if (random.nextInt(32) == 0) {
+				index = 6 + random.nextInt(ORES.length);
+			} else {
+				index = 1 + (random.nextInt(8) == 0 ? random.nextInt(STONE.length) : 0);
+			}
+			section.setPaletteIndex(i, index, blockStates);
+		}
+
+		byte[] skyLight = new byte[2048];
+		byte[] blockLight = new byte[2048];
+		random.nextBytes(skyLight);
+		random.nextBytes(blockLight);
+		section.setSkyLight(skyLight);
+		section.setBlockLight(blockLight);
+		section.setHeight(sectionY);
+		return section;
+	}
+
+	private static CompoundTag block(String name) {
+		CompoundTag block = new CompoundTag();
+		block.putString("Name", name);
+		block.put("Properties", new CompoundTag());
+		return block;
+	}
+
+	private static CompoundTag createEntity(Random random) {
+		CompoundTag entity = new CompoundTag();
+		entity.putString("id", ENTITIES[random.nextInt(ENTITIES.length)]);
+		entity.put("Pos", doubles(random.nextDouble() * 16, 64 + random.nextDouble() * 8, random.nextDouble() * 16));
+		entity.put("Motion", doubles(0, -0.0784, 0));
+		ListTag<FloatTag> rotation = new ListTag<>(FloatTag.class);
+		rotation.addFloat(random.nextFloat() * 360);
+		rotation.addFloat(0);
+		entity.put("Rotation", rotation);
+		entity.putFloat("Health", 10);
+		entity.putShort("Air", (short) 300);
+		entity.putByte("OnGround", (byte) 1);
+		entity.putIntArray("UUID", new int[]{random.nextInt(), random.nextInt(), random.nextInt(), random.nextInt()});
+		ListTag<CompoundTag> attributes = new ListTag<>(CompoundTag.class);
+		CompoundTag attribute = new CompoundTag();
+		attribute.putString("Name", "minecraft:generic.movement_speed");
+		attribute.putDouble("Base", 0.25);
+		attributes.add(attribute);
+		entity.put("Attributes", attributes);
+		return entity;
+	}
+
+	private static ListTag<DoubleTag> doubles(double... values) {
+		ListTag<DoubleTag> list = new ListTag<>(DoubleTag.class);
+		for (double value : values) {
+			list.addDouble(value);
+		}
+		return list;
+	}
+
+	private static CompoundTag createChest(Random random) {
+		CompoundTag chest = new CompoundTag();
+		chest.putString("id", "minecraft:chest");
+		chest.putInt("x", random.nextInt(16));
+		chest.putInt("y", 40 + random.nextInt(20));
+		chest.putInt("z", random.nextInt(16));
+		ListTag<CompoundTag> items = new ListTag<>(CompoundTag.class);
+		for (int i = random.nextInt(10); i > 0; i--) {
+			CompoundTag item = new CompoundTag();
+			item.putByte("Slot", (byte) random.nextInt(27));
+			item.putString("id", ORES[random.nextInt(ORES.length)]);
+			item.putByte("Count", (byte) (1 + random.nextInt(64)));
+			items.add(item);
+		}
+		chest.put("Items", items);
+		return chest;
+	}
+
+	/**
+	 * Writes a region with the default seed to a file.
+	 * Usage: {@code RegionFixtures <file> [chunks] [dataVersion] [seed]}
+	 * @param args The command line arguments.
+	 * @throws IOException If the file could not be written.
+	 * */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.out.println("usage: RegionFixtures <file> [chunks] [dataVersion] [seed]");
+			return;
+		}
+		int chunks = args.length > 1 ? Integer.parseInt(args[1]) : 1024;
+		int dataVersion = args.length > 2 ? Integer.parseInt(args[2]) : Chunk.DEFAULT_DATA_VERSION;
+		long seed = args.length > 3 ? Long.parseLong(args[3]) : DEFAULT_SEED;
+		int written = MCAUtil.write(createRegion(chunks, dataVersion, seed), new File(args[0]));
+		System.out.println("wrote " + written + " chunks to " + args[0]);
+	}
+}
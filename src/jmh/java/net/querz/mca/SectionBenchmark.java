@@ -0,0 +1,136 @@
+package net.querz.mca;
+
+import net.querz.nbt.tag.CompoundTag;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Accesses all 4096 palette indices of a section and cleans up its palette.
+ * 2230 uses block states spanning multiple longs, 2567 does not.
+ * With {@code unpacked}, the section stores its palette indices unpacked.
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SectionBenchmark {
+
+	@Param({"2230", "2567"})
+	public int dataVersion;
+
+	@Param({"false", "true"})
+	public boolean unpacked;
+
+	private static final String[] SIDES = {"none", "side", "up"};
+
+	private CompoundTag sectionData;
+	private Section section;
+	private long[] blockStates;
+
+	@State(Scope.Thread)
+	public static class FreshSection {
+
+		private Section section;
+
+		@Setup(Level.Invocation)
+		public void setup(SectionBenchmark benchmark) {
+			// cleanup modifies the section, so every invocation needs a fresh one
+			section = new Section(benchmark.sectionData.clone(), benchmark.dataVersion);
+			section.setUnpacked(benchmark.unpacked);
+		}
+	}
+
+	@Setup
+	public void setup() {
+		Chunk chunk = RegionFixtures.createChunk(new Random(RegionFixtures.DEFAULT_SEED), dataVersion);
+		sectionData = chunk.getSection(3).updateHandle();
+		section = new Section(sectionData.clone(), dataVersion);
+		blockStates = section.getBlockStates().clone();
+		section.setUnpacked(unpacked);
+	}
+
+	@Benchmark
+	public int getPaletteIndex() {
+		int sum = 0;
+		for (int i = 0; i < 4096; i++) {
+			sum += section.getPaletteIndex(i);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public int forEachBlock() {
+		int[] sum = new int[1];
+		section.forEachBlock((s, x, y, z, paletteIndex) -> {
+			sum[0] += paletteIndex + y;
+			return true;
+		});
+		return sum[0];
+	}
+
+	@Benchmark
+	public int blockStatesIterator() {
+		int count = 0;
+		for (CompoundTag blockState : section.blocksStates()) {
+			if (blockState != null) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Benchmark
+	public long[] setPaletteIndex() {
+		for (int i = 0; i < 4096; i++) {
+			section.setPaletteIndex(i, i & 7, blockStates);
+		}
+		return blockStates;
+	}
+
+	@Benchmark
+	public Section setBlockStateVariants() {
+		// 16 * 3 * 3 * 3 = 432 variants of the same block, like redstone wire
+		Section section = Section.newSection();
+		section.dataVersion = dataVersion;
+		int i = 0;
+		for (int power = 0; power < 16; power++) {
+			for (String north : SIDES) {
+				for (String east : SIDES) {
+					for (String south : SIDES) {
+						CompoundTag properties = new CompoundTag();
+						properties.putString("power", Integer.toString(power));
+						properties.putString("north", north);
+						properties.putString("east", east);
+						properties.putString("south", south);
+						CompoundTag block = new CompoundTag();
+						block.putString("Name", "minecraft:redstone_wire");
+						block.put("Properties", properties);
+						section.setBlockStateAt(i & 0xF, i >> 8, i >> 4 & 0xF, block, false);
+						i++;
+					}
+				}
+			}
+		}
+		return section;
+	}
+
+	@Benchmark
+	public Section cleanupPaletteAndBlockStates(FreshSection fresh) {
+		fresh.section.cleanupPaletteAndBlockStates();
+		return fresh.section;
+	}
+}
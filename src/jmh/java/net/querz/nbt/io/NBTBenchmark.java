@@ -0,0 +1,101 @@
+package net.querz.nbt.io;
+
+import net.querz.mca.Chunk;
+import net.querz.mca.CompressionType;
+import net.querz.mca.RegionFixtures;
+import net.querz.nbt.tag.CompoundTag;
+import net.querz.nbt.tag.Tag;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads and writes the NBT data of a single synthetic chunk.
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NBTBenchmark {
+
+	@Param({"NONE", "GZIP", "ZLIB", "LZ4"})
+	public CompressionType compression;
+
+	@Param({"false", "true"})
+	public boolean littleEndian;
+
+	private final KeyCache keyCache = new KeyCache(1024);
+	private CompoundTag chunk;
+	private byte[] data;
+
+	@Setup
+	public void setup() throws IOException {
+		chunk = RegionFixtures.createChunk(new Random(RegionFixtures.DEFAULT_SEED), Chunk.DEFAULT_DATA_VERSION).updateHandle(0, 0);
+		data = write();
+	}
+
+	@Benchmark
+	public NamedTag read() throws IOException {
+		try (InputStream in = new BufferedInputStream(compression.decompress(new ByteArrayInputStream(data)))) {
+			NBTInput nbtIn = littleEndian ? new LittleEndianNBTInputStream(in) : new NBTInputStream(in);
+			return nbtIn.readTag(Tag.DEFAULT_MAX_DEPTH);
+		}
+	}
+
+	@Benchmark
+	public byte[] write() throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(data == null ? 8192 : data.length);
+		try (OutputStream out = new BufferedOutputStream(compression.compress(baos))) {
+			NBTOutput nbtOut = littleEndian ? new LittleEndianNBTOutputStream(out) : new NBTOutputStream(out);
+			nbtOut.writeTag(new NamedTag("", chunk), Tag.DEFAULT_MAX_DEPTH);
+			nbtOut.flush();
+		}
+		return baos.toByteArray();
+	}
+
+	@Benchmark
+	public NamedTag readBuffer() throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(compression.decompress(data)).order(order());
+		return new NBTBufferInput(buffer).readTag(Tag.DEFAULT_MAX_DEPTH);
+	}
+
+	@Benchmark
+	public NamedTag readBufferKeyCache() throws IOException {
+		NBTBufferInput nbtIn = new NBTBufferInput(ByteBuffer.wrap(compression.decompress(data)).order(order()));
+		nbtIn.setKeyCache(keyCache);
+		return nbtIn.readTag(Tag.DEFAULT_MAX_DEPTH);
+	}
+
+	@Benchmark
+	public byte[] writeBuffer() throws IOException {
+		NBTBufferOutput nbtOut = new NBTBufferOutput(ByteBuffer.allocate(data.length).order(order()));
+		nbtOut.writeTag(new NamedTag("", chunk), Tag.DEFAULT_MAX_DEPTH);
+		ByteBuffer buffer = nbtOut.getBuffer();
+		return compression.compress(buffer.array(), 0, buffer.position());
+	}
+
+	private ByteOrder order() {
+		return littleEndian ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+	}
+}
@@ -0,0 +1,50 @@
+package net.querz.nbt.io;
+
+import net.querz.mca.Chunk;
+import net.querz.mca.RegionFixtures;
+import net.querz.nbt.tag.CompoundTag;
+import net.querz.nbt.tag.Tag;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses and writes the SNBT representation of a single synthetic chunk.
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SNBTBenchmark {
+
+	private CompoundTag chunk;
+	private String snbt;
+
+	@Setup
+	public void setup() throws IOException {
+		chunk = RegionFixtures.createChunk(new Random(RegionFixtures.DEFAULT_SEED), Chunk.DEFAULT_DATA_VERSION).updateHandle(0, 0);
+		snbt = SNBTUtil.toSNBT(chunk);
+	}
+
+	@Benchmark
+	public Tag<?> parse() throws IOException {
+		return SNBTUtil.fromSNBT(snbt);
+	}
+
+	@Benchmark
+	public String write() throws IOException {
+		return SNBTUtil.toSNBT(chunk);
+	}
+}
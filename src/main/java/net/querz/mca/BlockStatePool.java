@@ -0,0 +1,53 @@
+package net.querz.mca;
+
+import net.querz.nbt.tag.CompoundTag;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A pool of canonical block states that can be shared by the palettes of any number of sections, chunks and regions.
+ * When a pool is set on an {@link MCAFile} or a {@link RegionProcessor}, or passed to
+ * {@link Section#Section(CompoundTag, int, long, BlockStatePool)}, every palette entry is replaced with the equal
+ * block state of the pool, so duplicates of the same block state are not retained in memory, and palette entries
+ * from different sections can be compared by reference.<br>
+ * Pooled block states are shared by all palettes using them, so they are frozen using {@link CompoundTag#freeze()}
+ * when they are added to the pool. This also caches their hash codes, which makes lookups in the pool cheaper.
+ * Block states set through {@link Section#setBlockStateAt(int, int, int, CompoundTag, boolean)} are not pooled
+ * automatically, but can be pooled by passing {@link BlockStatePool#intern(CompoundTag)} instead.<br>
+ * This class is thread-safe, so a pool can be used while loading chunks in parallel.
+ * */
+public class BlockStatePool {
+
+	private final ConcurrentMap<CompoundTag, CompoundTag> blockStates = new ConcurrentHashMap<>();
+
+	/**
+	 * Returns the canonical instance of a block state, adding it to this pool if it does not contain an equal block state yet.
+	 * A block state that is added to this pool is frozen, while block states for which an equal block state
+	 * is returned are not modified.
+	 * @param blockState The block state.
+	 * @return The block state of this pool that is equal to {@code blockState}.
+	 * */
+	public CompoundTag intern(CompoundTag blockState) {
+		CompoundTag pooled = blockStates.get(blockState);
+		if (pooled == null) {
+			// only the instance that is actually added is frozen, an equal block state added concurrently
+			// by another thread leaves this one unchanged. Freezing does not change the hash code of the key.
+			pooled = blockStates.computeIfAbsent(blockState, CompoundTag::freeze);
+		}
+		return pooled;
+	}
+
+	/**
+	 * @return The amount of distinct block states in this pool.
+	 * */
+	public int size() {
+		return blockStates.size();
+	}
+
+	/**
+	 * Removes all block states from this pool. Palettes that already use pooled block states keep them.
+	 * */
+	public void clear() {
+		blockStates.clear();
+	}
+}
@@ -0,0 +1,20 @@
+package net.querz.mca;
+
+/**
+ * Receives the blocks passed by {@link Section#forEachBlock(BlockVisitor)},
+ * {@link Chunk#forEachBlock(BlockVisitor)} and {@link MCAFile#forEachBlock(BlockVisitor)}.
+ * */
+@FunctionalInterface
+public interface BlockVisitor {
+
+	/**
+	 * Called for each block.
+	 * @param section The Section containing the block. Its palette contains the block state.
+	 * @param x The x-coordinate of the block.
+	 * @param y The y-coordinate of the block.
+	 * @param z The z-coordinate of the block.
+	 * @param paletteIndex The index of the block state in the palette of the Section.
+	 * @return {@code true} to continue, {@code false} to stop visiting any further blocks.
+	 * */
+	boolean visit(Section section, int x, int y, int z, int paletteIndex);
+}
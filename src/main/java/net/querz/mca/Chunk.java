@@ -1,20 +1,30 @@
 package net.querz.mca;
 
+import net.querz.io.ByteBufferInputStream;
 import net.querz.nbt.tag.CompoundTag;
 import net.querz.nbt.tag.ListTag;
+import net.querz.nbt.tag.Tag;
+import net.querz.nbt.io.KeyCache;
 import net.querz.nbt.io.NamedTag;
-import net.querz.nbt.io.NBTDeserializer;
+import net.querz.nbt.io.NBTBufferInput;
+import net.querz.nbt.io.NBTInput;
+import net.querz.nbt.io.NBTInputStream;
+import net.querz.nbt.io.NBTPathSelector;
 import net.querz.nbt.io.NBTSerializer;
 import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static net.querz.mca.LoadFlags.*;
 
@@ -22,6 +32,17 @@ public class Chunk implements Iterable<Section> {
 
 	public static final int DEFAULT_DATA_VERSION = 2567;
 
+	// selectors for partially loaded chunks, by load flags
+	private static final Map<Long, NBTPathSelector> selectors = new ConcurrentHashMap<>();
+
+	// reusable buffers for the compressed and decompressed chunk data of each thread, up to a limited size
+	private static final ThreadLocal<byte[]> compressedBuffer = new ThreadLocal<>();
+	private static final ThreadLocal<byte[]> decompressedBuffer = new ThreadLocal<>();
+	private static final int MAX_RETAINED_BUFFER_SIZE = 1 << 23;
+
+	// chunks of all regions use the same few keys, so they share their String instances
+	private static final KeyCache keyCache = new KeyCache(1024);
+
 	private boolean partial;
 	private boolean raw;
 
@@ -46,6 +67,7 @@ public class Chunk implements Iterable<Section> {
 	private ListTag<ListTag<?>> postProcessing;
 	private String status;
 	private CompoundTag structures;
+	BlockStatePool blockStatePool;
 
 	Chunk(int lastMCAUpdate) {
 		this.lastMCAUpdate = lastMCAUpdate;
@@ -65,7 +87,7 @@ public class Chunk implements Iterable<Section> {
 			throw new NullPointerException("data cannot be null");
 		}
 
-		if ((loadFlags != ALL_DATA) && (loadFlags & RAW) != 0) {
+		if (!isAllData(loadFlags) && (loadFlags & RAW) != 0) {
 			raw = true;
 			return;
 		}
@@ -117,13 +139,13 @@ public class Chunk implements Iterable<Section> {
 		if ((loadFlags & (BLOCK_LIGHTS|BLOCK_STATES|SKY_LIGHT)) != 0 && level.containsKey("Sections")) {
 			for (CompoundTag section : level.getListTag("Sections").asCompoundTagList()) {
 				int sectionIndex = section.getNumber("Y").byteValue();
-				Section newSection = new Section(section, dataVersion, loadFlags);
+				Section newSection = new Section(section, dataVersion, loadFlags, blockStatePool);
 				sections.put(sectionIndex, newSection);
 			}
 		}
 
 		// If we haven't requested the full set of data we can drop the underlying raw data to let the GC handle it.
-		if (loadFlags != ALL_DATA) {
+		if (!isAllData(loadFlags)) {
 			data = null;
 			partial = true;
 		}
@@ -139,16 +161,55 @@ public class Chunk implements Iterable<Section> {
 	 * @throws IOException When something went wrong during writing.
 	 */
 	public int serialize(RandomAccessFile raf, int xPos, int zPos) throws IOException {
+		return serialize(raf, xPos, zPos, CompressionType.ZLIB);
+	}
+
+	/**
+	 * Serializes this chunk to a <code>RandomAccessFile</code>.
+	 * @param raf The RandomAccessFile to be written to.
+	 * @param xPos The x-coordinate of the chunk.
+	 * @param zPos The z-coodrinate of the chunk.
+	 * @param compressionType The compression type of the chunk data.
+	 * @return The amount of bytes written to the RandomAccessFile.
+	 * @throws UnsupportedOperationException When something went wrong during writing.
+	 * @throws IOException When something went wrong during writing.
+	 */
+	public int serialize(RandomAccessFile raf, int xPos, int zPos, CompressionType compressionType) throws IOException {
+		return writeCompressed(raf, compressionType, compress(xPos, zPos, compressionType));
+	}
+
+	/**
+	 * Updates the handle of this chunk and compresses it, without writing it anywhere.
+	 * This does not depend on any other chunk, so multiple chunks can be compressed concurrently.
+	 * {@link Chunk#serialize(RandomAccessFile, int, int, CompressionType)} writes the data returned by this method,
+	 * and {@link MCAFile#serialize(RandomAccessFile, boolean, java.util.concurrent.Executor)} calls this method
+	 * instead of {@code serialize}, so subclasses changing the serialized data should override this method.
+	 * @param xPos The x-coordinate of the chunk.
+	 * @param zPos The z-coodrinate of the chunk.
+	 * @param compressionType The compression type of the chunk data.
+	 * @return The compressed chunk data.
+	 * @throws UnsupportedOperationException If this chunk has only been loaded partially.
+	 * @throws IOException When something went wrong during compression.
+	 */
+	protected byte[] compress(int xPos, int zPos, CompressionType compressionType) throws IOException {
 		if (partial) {
 			throw new UnsupportedOperationException("Partially loaded chunks cannot be serialized");
 		}
-		ByteArrayOutputStream baos = new ByteArrayOutputStream(4096);
-		try (BufferedOutputStream nbtOut = new BufferedOutputStream(CompressionType.ZLIB.compress(baos))) {
-			new NBTSerializer(false).toStream(new NamedTag(null, updateHandle(xPos, zPos)), nbtOut);
-		}
-		byte[] rawData = baos.toByteArray();
+		return compressionType.compress(new NBTSerializer(false).toBytes(new NamedTag(null, updateHandle(xPos, zPos))));
+	}
+
+	/**
+	 * Writes chunk data created by {@link Chunk#compress(int, int, CompressionType)} to a <code>RandomAccessFile</code>,
+	 * prefixed with its length and compression type.
+	 * @param raf The RandomAccessFile to be written to.
+	 * @param compressionType The compression type of the chunk data.
+	 * @param rawData The compressed chunk data.
+	 * @return The amount of bytes written to the RandomAccessFile.
+	 * @throws IOException When something went wrong during writing.
+	 */
+	static int writeCompressed(RandomAccessFile raf, CompressionType compressionType, byte[] rawData) throws IOException {
 		raf.writeInt(rawData.length + 1); // including the byte to store the compression type
-		raf.writeByte(CompressionType.ZLIB.getID());
+		raf.writeByte(compressionType.getID());
 		raf.write(rawData);
 		return rawData.length + 5;
 	}
@@ -169,13 +230,105 @@ public class Chunk implements Iterable<Section> {
 	 * @throws IOException When something went wrong during reading.
 	 */
 	public void deserialize(RandomAccessFile raf, long loadFlags) throws IOException {
-		byte compressionTypeByte = raf.readByte();
-		CompressionType compressionType = CompressionType.getFromID(compressionTypeByte);
-		if (compressionType == null) {
-			throw new IOException("invalid compression type " + compressionTypeByte);
+		byte compressionType = raf.readByte();
+		InputStream in = new FileInputStream(raf.getFD());
+		deserialize(new BufferedInputStream(getCodec(compressionType, in).decompress(in)), loadFlags);
+	}
+
+	/**
+	 * Reads chunk data of a known length from a RandomAccessFile. The RandomAccessFile must already be
+	 * positioned after the length of the chunk data. The chunk data is read in one call and decompressed
+	 * in memory, so nothing is read beyond the end of the chunk data.
+	 * @param raf The RandomAccessFile to read the chunk data from.
+	 * @param length The length of the chunk data, including its compression type.
+	 * @param loadFlags A logical or of {@link LoadFlags} constants indicating what data should be loaded
+	 * @throws IOException When something went wrong during reading.
+	 */
+	void deserialize(RandomAccessFile raf, int length, long loadFlags) throws IOException {
+		if (length < 1) {
+			throw new IOException("invalid chunk data length " + length);
+		}
+		if (length > raf.length() - raf.getFilePointer()) {
+			throw new EOFException("chunk data of " + length + " bytes exceeds the end of the file");
+		}
+		byte[] data = getBuffer(compressedBuffer, length);
+		raf.readFully(data, 0, length);
+		deserialize(data, 0, length, loadFlags);
+	}
+
+	/**
+	 * Reads chunk data from a ByteBuffer. The remaining bytes of the buffer must start with the
+	 * compression type of the chunk data, followed by the compressed chunk data itself.
+	 * All remaining bytes of the buffer are consumed.
+	 * @param buffer The ByteBuffer to read the chunk data from.
+	 * @param loadFlags A logical or of {@link LoadFlags} constants indicating what data should be loaded
+	 * @throws IOException When something went wrong during reading.
+	 */
+	public void deserialize(ByteBuffer buffer, long loadFlags) throws IOException {
+		int length = buffer.remaining();
+		if (length < 1) {
+			throw new EOFException("missing chunk data");
+		}
+		if (buffer.hasArray()) {
+			deserialize(buffer.array(), buffer.arrayOffset() + buffer.position(), length, loadFlags);
+			buffer.position(buffer.limit());
+		} else {
+			// e.g. a memory mapped file, which is copied in one call
+			byte[] data = getBuffer(compressedBuffer, length);
+			buffer.get(data, 0, length);
+			deserialize(data, 0, length, loadFlags);
+		}
+	}
+
+	private void deserialize(byte[] data, int offset, int length, long loadFlags) throws IOException {
+		ByteBuffer compressed = ByteBuffer.wrap(data, offset + 1, length - 1);
+		CompressionCodec codec = getCodec(data[offset], new ByteBufferInputStream(compressed));
+		ByteBuffer nbt = codec.decompress(data, compressed.position(), compressed.remaining(), decompressedBuffer.get());
+		retainBuffer(decompressedBuffer, nbt.array());
+		NBTBufferInput nbtIn = new NBTBufferInput(nbt);
+		nbtIn.setCompactCompounds(isCompactCompounds(loadFlags));
+		nbtIn.setKeyCache(keyCache);
+		readData(nbtIn, loadFlags);
+	}
+
+	private static byte[] getBuffer(ThreadLocal<byte[]> buffer, int length) {
+		byte[] b = buffer.get();
+		if (b == null || b.length < length) {
+			b = new byte[length];
+			retainBuffer(buffer, b);
+		}
+		return b;
+	}
+
+	private static void retainBuffer(ThreadLocal<byte[]> buffer, byte[] b) {
+		if (b.length <= MAX_RETAINED_BUFFER_SIZE) {
+			buffer.set(b);
+		}
+	}
+
+	private void deserialize(InputStream dis, long loadFlags) throws IOException {
+		NBTInputStream nbtIn = new NBTInputStream(dis);
+		nbtIn.setCompactCompounds(isCompactCompounds(loadFlags));
+		nbtIn.setKeyCache(keyCache);
+		readData(nbtIn, loadFlags);
+	}
+
+	private static boolean isCompactCompounds(long loadFlags) {
+		return (loadFlags & COMPACT_COMPOUNDS) != 0;
+	}
+
+	private static boolean isAllData(long loadFlags) {
+		return (loadFlags & ALL_DATA) == ALL_DATA;
+	}
+
+	private <I extends DataInput & NBTInput> void readData(I in, long loadFlags) throws IOException {
+		NamedTag tag;
+		if (isAllData(loadFlags) || (loadFlags & RAW) != 0) {
+			tag = in.readTag(Tag.DEFAULT_MAX_DEPTH);
+		} else {
+			// only create the tags that are kept by initReferences and skip everything else
+			tag = selectors.computeIfAbsent(loadFlags & ~COMPACT_COMPOUNDS, Chunk::createSelector).read(in);
 		}
-		BufferedInputStream dis = new BufferedInputStream(compressionType.decompress(new FileInputStream(raf.getFD())));
-		NamedTag tag = new NBTDeserializer(false).fromStream(dis);
 		if (tag != null && tag.getTag() instanceof CompoundTag) {
 			data = (CompoundTag) tag.getTag();
 			initReferences(loadFlags);
@@ -184,6 +337,54 @@ public class Chunk implements Iterable<Section> {
 		}
 	}
 
+	private static NBTPathSelector createSelector(long loadFlags) {
+		NBTPathSelector selector = new NBTPathSelector("DataVersion", "Level.InhabitedTime", "Level.LastUpdate", "Level.Status");
+		selectIfSet(selector, loadFlags, BIOMES, "Level.Biomes");
+		selectIfSet(selector, loadFlags, HEIGHTMAPS, "Level.Heightmaps");
+		selectIfSet(selector, loadFlags, CARVING_MASKS, "Level.CarvingMasks");
+		selectIfSet(selector, loadFlags, ENTITIES, "Level.Entities");
+		selectIfSet(selector, loadFlags, TILE_ENTITIES, "Level.TileEntities");
+		selectIfSet(selector, loadFlags, TILE_TICKS, "Level.TileTicks");
+		selectIfSet(selector, loadFlags, LIQUID_TICKS, "Level.LiquidTicks");
+		selectIfSet(selector, loadFlags, LIGHTS, "Level.Lights");
+		selectIfSet(selector, loadFlags, LIQUIDS_TO_BE_TICKED, "Level.LiquidsToBeTicked");
+		selectIfSet(selector, loadFlags, TO_BE_TICKED, "Level.ToBeTicked");
+		selectIfSet(selector, loadFlags, POST_PROCESSING, "Level.PostProcessing");
+		selectIfSet(selector, loadFlags, STRUCTURES, "Level.Structures");
+		if ((loadFlags & (BLOCK_LIGHTS|BLOCK_STATES|SKY_LIGHT)) != 0) {
+			// sections are only created with a palette
+			selector.select("Level.Sections[*].Y");
+			selector.select("Level.Sections[*].Palette");
+			selectIfSet(selector, loadFlags, BLOCK_LIGHTS, "Level.Sections[*].BlockLight");
+			selectIfSet(selector, loadFlags, BLOCK_STATES, "Level.Sections[*].BlockStates");
+			selectIfSet(selector, loadFlags, SKY_LIGHT, "Level.Sections[*].SkyLight");
+		}
+		return selector;
+	}
+
+	private static void selectIfSet(NBTPathSelector selector, long loadFlags, long flag, String path) {
+		if ((loadFlags & flag) != 0) {
+			selector.select(path);
+		}
+	}
+
+	// reads the name of a custom compression type from the start of the chunk data
+	private static CompressionCodec getCodec(byte id, InputStream in) throws IOException {
+		if (id == CompressionType.CUSTOM_ID) {
+			String name = new DataInputStream(in).readUTF();
+			CompressionCodec codec = CompressionType.getCustomCodec(name);
+			if (codec == null) {
+				throw new IOException("unknown custom compression type " + name);
+			}
+			return codec;
+		}
+		CompressionType compressionType = CompressionType.getFromID(id);
+		if (compressionType == null) {
+			throw new IOException("invalid compression type " + id);
+		}
+		return compressionType.getCodec();
+	}
+
 	/**
 	 * @deprecated Use {@link #getBiomeAt(int, int, int)} instead
 	 */
@@ -628,6 +829,27 @@ public class Chunk implements Iterable<Section> {
 		}
 	}
 
+	/**
+	 * Visits all blocks of all sections of this chunk, ordered by section.
+	 * The x- and z-coordinates are relative to this chunk, ranging from 0-15, the y-coordinate is absolute.
+	 * @see Section#forEachBlock(BlockVisitor)
+	 * @param visitor The visitor receiving the blocks.
+	 * @return {@code false} if the visitor stopped early, {@code true} otherwise.
+	 */
+	public boolean forEachBlock(BlockVisitor visitor) {
+		return forEachBlock(visitor, 0, 0, new int[4096]);
+	}
+
+	boolean forEachBlock(BlockVisitor visitor, int offsetX, int offsetZ, int[] buffer) {
+		for (Map.Entry<Integer, Section> entry : sections.entrySet()) {
+			Section section = entry.getValue();
+			if (section != null && !section.forEachBlock(visitor, offsetX, entry.getKey() * 16, offsetZ, buffer)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	private void checkRaw() {
 		if (raw) {
 			throw new UnsupportedOperationException("cannot update field when working with raw data");
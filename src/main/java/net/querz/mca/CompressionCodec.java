@@ -0,0 +1,63 @@
+package net.querz.mca;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Compresses and decompresses chunk data for a {@link CompressionType}.
+ * Implementations must be thread-safe, because a codec is shared by all threads using its CompressionType.
+ * @see CompressionType#setCodec(CompressionCodec)
+ * */
+public interface CompressionCodec {
+
+	/**
+	 * @param out The stream receiving the compressed data.
+	 * @return A stream compressing all data written to it. Closing it closes {@code out}.
+	 * @throws IOException If the stream could not be created.
+	 * */
+	OutputStream compress(OutputStream out) throws IOException;
+
+	/**
+	 * @param in The stream providing the compressed data.
+	 * @return A stream decompressing the data of {@code in}. Closing it closes {@code in}.
+	 * @throws IOException If the stream could not be created.
+	 * */
+	InputStream decompress(InputStream in) throws IOException;
+
+	/**
+	 * Compresses data without any streams.
+	 * @param data The array containing the data.
+	 * @param offset The start of the data in {@code data}.
+	 * @param length The length of the data.
+	 * @return The compressed data.
+	 * @throws IOException If the data could not be compressed.
+	 * */
+	byte[] compress(byte[] data, int offset, int length) throws IOException;
+
+	/**
+	 * Decompresses data without any streams.
+	 * @param data The array containing the compressed data.
+	 * @param offset The start of the compressed data in {@code data}.
+	 * @param length The length of the compressed data.
+	 * @return The decompressed data.
+	 * @throws IOException If the data is invalid or incomplete.
+	 * */
+	byte[] decompress(byte[] data, int offset, int length) throws IOException;
+
+	/**
+	 * Decompresses data into a reusable array, which avoids allocating a new array for every decompression.
+	 * The returned buffer contains the decompressed data between index {@code 0} and its limit. It is backed
+	 * by {@code out} if the data fits into it, otherwise by a new, larger array that can be reused instead.
+	 * @param data The array containing the compressed data.
+	 * @param offset The start of the compressed data in {@code data}.
+	 * @param length The length of the compressed data.
+	 * @param out The array to decompress into, or {@code null}.
+	 * @return A heap buffer wrapping the decompressed data.
+	 * @throws IOException If the data is invalid or incomplete.
+	 * */
+	default ByteBuffer decompress(byte[] data, int offset, int length, byte[] out) throws IOException {
+		return ByteBuffer.wrap(decompress(data, offset, length));
+	}
+}
@@ -3,39 +3,134 @@ package net.querz.mca;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.zip.DeflaterOutputStream;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
-import java.util.zip.InflaterInputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 public enum CompressionType {
 
-	NONE(0, t -> t, t -> t),
-	GZIP(1, GZIPOutputStream::new, GZIPInputStream::new),
-	ZLIB(2, DeflaterOutputStream::new, InflaterInputStream::new);
+	NONE(0, new UncompressedCodec()),
+	GZIP(1, new DeflateCodec(true)),
+	ZLIB(2, new DeflateCodec(false)),
+	/**
+	 * Uncompressed chunk data as written by Minecraft.
+	 * */
+	UNCOMPRESSED(3, new UncompressedCodec()),
+	/**
+	 * LZ4 compressed chunk data, see {@link Lz4Codec}.
+	 * */
+	LZ4(4, new Lz4Codec());
+
+	/**
+	 * The id of chunk data compressed with a custom algorithm. The id is followed by the name of the
+	 * algorithm, encoded like {@link java.io.DataOutput#writeUTF(String)}, and the compressed data.
+	 * @see CompressionType#registerCustomCodec(String, CompressionCodec)
+	 * */
+	public static final byte CUSTOM_ID = 127;
+
+	private static final Map<String, CompressionCodec> customCodecs = new ConcurrentHashMap<>();
 
 	private byte id;
-	private ExceptionFunction<OutputStream, ? extends OutputStream, IOException> compressor;
-	private ExceptionFunction<InputStream, ? extends InputStream, IOException> decompressor;
+	private volatile CompressionCodec codec;
 
-	CompressionType(int id,
-					ExceptionFunction<OutputStream, ? extends OutputStream, IOException> compressor,
-					ExceptionFunction<InputStream, ? extends InputStream, IOException> decompressor) {
+	CompressionType(int id, CompressionCodec codec) {
 		this.id = (byte) id;
-		this.compressor = compressor;
-		this.decompressor = decompressor;
+		this.codec = codec;
 	}
 
 	public byte getID() {
 		return id;
 	}
 
+	/**
+	 * @return The codec used to compress and decompress data of this compression type.
+	 * */
+	public CompressionCodec getCodec() {
+		return codec;
+	}
+
+	/**
+	 * Replaces the codec of this compression type for all threads, e.g. with a
+	 * {@link DeflateCodec} using a different compression level.
+	 * The codec must produce data in the format identified by {@link CompressionType#getID()}.
+	 * @param codec The new codec.
+	 * @throws NullPointerException If {@code codec} is {@code null}.
+	 * */
+	public void setCodec(CompressionCodec codec) {
+		this.codec = Objects.requireNonNull(codec, "codec must not be null");
+	}
+
 	public OutputStream compress(OutputStream out) throws IOException {
-		return compressor.accept(out);
+		return codec.compress(out);
 	}
 
 	public InputStream decompress(InputStream in) throws IOException {
-		return decompressor.accept(in);
+		return codec.decompress(in);
+	}
+
+	/**
+	 * @param data The data to compress.
+	 * @return The compressed data.
+	 * @throws IOException If the data could not be compressed.
+	 * */
+	public byte[] compress(byte[] data) throws IOException {
+		return codec.compress(data, 0, data.length);
+	}
+
+	/**
+	 * @param data The array containing the data to compress.
+	 * @param offset The start of the data in {@code data}.
+	 * @param length The length of the data.
+	 * @return The compressed data.
+	 * @throws IOException If the data could not be compressed.
+	 * */
+	public byte[] compress(byte[] data, int offset, int length) throws IOException {
+		return codec.compress(data, offset, length);
+	}
+
+	/**
+	 * @param data The compressed data.
+	 * @return The decompressed data.
+	 * @throws IOException If the data is invalid or incomplete.
+	 * */
+	public byte[] decompress(byte[] data) throws IOException {
+		return codec.decompress(data, 0, data.length);
+	}
+
+	/**
+	 * @param data The array containing the compressed data.
+	 * @param offset The start of the compressed data in {@code data}.
+	 * @param length The length of the compressed data.
+	 * @return The decompressed data.
+	 * @throws IOException If the data is invalid or incomplete.
+	 * */
+	public byte[] decompress(byte[] data, int offset, int length) throws IOException {
+		return codec.decompress(data, offset, length);
+	}
+
+	/**
+	 * Registers a codec for chunk data compressed with a custom algorithm.
+	 * @param name The name of the algorithm as stored in the chunk data, usually a namespaced id.
+	 * @param codec The codec, or {@code null} to remove the codec for this name.
+	 * @see CompressionType#CUSTOM_ID
+	 * */
+	public static void registerCustomCodec(String name, CompressionCodec codec) {
+		Objects.requireNonNull(name, "name must not be null");
+		if (codec == null) {
+			customCodecs.remove(name);
+		} else {
+			customCodecs.put(name, codec);
+		}
+	}
+
+	/**
+	 * @param name The name of the custom algorithm.
+	 * @return The codec registered for this name, or {@code null}.
+	 * */
+	public static CompressionCodec getCustomCodec(String name) {
+		return customCodecs.get(name);
 	}
 
 	public static CompressionType getFromID(byte id) {
@@ -46,4 +141,36 @@ public enum CompressionType {
 		}
 		return null;
 	}
+
+	private static class UncompressedCodec implements CompressionCodec {
+
+		@Override
+		public OutputStream compress(OutputStream out) {
+			return out;
+		}
+
+		@Override
+		public InputStream decompress(InputStream in) {
+			return in;
+		}
+
+		@Override
+		public byte[] compress(byte[] data, int offset, int length) {
+			return Arrays.copyOfRange(data, offset, offset + length);
+		}
+
+		@Override
+		public byte[] decompress(byte[] data, int offset, int length) {
+			return Arrays.copyOfRange(data, offset, offset + length);
+		}
+
+		@Override
+		public ByteBuffer decompress(byte[] data, int offset, int length, byte[] out) {
+			if (out == null || out.length < length) {
+				out = new byte[length];
+			}
+			System.arraycopy(data, offset, out, 0, length);
+			return ByteBuffer.wrap(out, 0, length);
+		}
+	}
 }
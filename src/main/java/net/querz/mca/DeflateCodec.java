@@ -0,0 +1,374 @@
+package net.querz.mca;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * A {@link CompressionCodec} for the ZLIB and GZIP formats with a configurable compression level and strategy.
+ * {@link Inflater}s and {@link Deflater}s are pooled per thread and reset after use instead of allocating
+ * new native zlib streams for every chunk. They are returned to the pool when a byte array has been
+ * processed, when a stream has been closed, or when a decompressing stream has reached the end of its data.
+ * Streams of the GZIP format use the {@code java.util.zip} GZIP streams, which always allocate
+ * their own instances, while the byte array methods are pooled for both formats.
+ * */
+public class DeflateCodec implements CompressionCodec {
+
+	// the amount of instances kept per thread, more than one is only needed for nested streams
+	private static final int POOL_SIZE = 2;
+	private static final int BUFFER_SIZE = 4096;
+
+	private static final ThreadLocal<ArrayDeque<Inflater>> INFLATERS = ThreadLocal.withInitial(ArrayDeque::new);
+	private static final ThreadLocal<ArrayDeque<Inflater>> RAW_INFLATERS = ThreadLocal.withInitial(ArrayDeque::new);
+	private static final ThreadLocal<ArrayDeque<Deflater>> DEFLATERS = ThreadLocal.withInitial(ArrayDeque::new);
+	private static final ThreadLocal<ArrayDeque<Deflater>> RAW_DEFLATERS = ThreadLocal.withInitial(ArrayDeque::new);
+
+	private static final int GZIP_MAGIC = 0x8B1F;
+	private static final int FHCRC = 2, FEXTRA = 4, FNAME = 8, FCOMMENT = 16;
+	private static final byte[] GZIP_HEADER = {0x1F, (byte) 0x8B, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+
+	private final boolean gzip;
+	private final int level;
+	private final int strategy;
+
+	/**
+	 * Creates a codec using the default compression level and strategy.
+	 * @param gzip {@code true} for the GZIP format, {@code false} for the ZLIB format.
+	 * */
+	public DeflateCodec(boolean gzip) {
+		this(gzip, Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY);
+	}
+
+	/**
+	 * @param gzip {@code true} for the GZIP format, {@code false} for the ZLIB format.
+	 * @param level The compression level, ranging from 0-9, or {@link Deflater#DEFAULT_COMPRESSION}.
+	 * @param strategy The compression strategy, one of {@link Deflater#DEFAULT_STRATEGY},
+	 *                 {@link Deflater#FILTERED} or {@link Deflater#HUFFMAN_ONLY}.
+	 * @throws IllegalArgumentException If the level or the strategy is invalid.
+	 * */
+	public DeflateCodec(boolean gzip, int level, int strategy) {
+		if (level != Deflater.DEFAULT_COMPRESSION && (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION)) {
+			throw new IllegalArgumentException("invalid compression level " + level);
+		}
+		if (strategy != Deflater.DEFAULT_STRATEGY && strategy != Deflater.FILTERED && strategy != Deflater.HUFFMAN_ONLY) {
+			throw new IllegalArgumentException("invalid compression strategy " + strategy);
+		}
+		this.gzip = gzip;
+		this.level = level;
+		this.strategy = strategy;
+	}
+
+	public boolean isGzip() {
+		return gzip;
+	}
+
+	public int getLevel() {
+		return level;
+	}
+
+	public int getStrategy() {
+		return strategy;
+	}
+
+	private Inflater acquireInflater() {
+		Inflater inflater = (gzip ? RAW_INFLATERS : INFLATERS).get().poll();
+		return inflater == null ? new Inflater(gzip) : inflater;
+	}
+
+	private void releaseInflater(Inflater inflater) {
+		ArrayDeque<Inflater> pool = (gzip ? RAW_INFLATERS : INFLATERS).get();
+		if (pool.size() < POOL_SIZE) {
+			inflater.reset();
+			pool.push(inflater);
+		} else {
+			inflater.end();
+		}
+	}
+
+	private Deflater acquireDeflater() {
+		Deflater deflater = (gzip ? RAW_DEFLATERS : DEFLATERS).get().poll();
+		if (deflater == null) {
+			deflater = new Deflater(level, gzip);
+		} else {
+			deflater.setLevel(level);
+		}
+		deflater.setStrategy(strategy);
+		return deflater;
+	}
+
+	private void releaseDeflater(Deflater deflater) {
+		ArrayDeque<Deflater> pool = (gzip ? RAW_DEFLATERS : DEFLATERS).get();
+		if (pool.size() < POOL_SIZE) {
+			deflater.reset();
+			pool.push(deflater);
+		} else {
+			deflater.end();
+		}
+	}
+
+	@Override
+	public OutputStream compress(OutputStream out) throws IOException {
+		if (gzip) {
+			return new GZIPOutputStream(out, BUFFER_SIZE) {
+				{
+					def.setLevel(level);
+					def.setStrategy(strategy);
+				}
+			};
+		}
+		return new PooledDeflaterOutputStream(out, acquireDeflater());
+	}
+
+	@Override
+	public InputStream decompress(InputStream in) throws IOException {
+		if (gzip) {
+			return new GZIPInputStream(in, BUFFER_SIZE);
+		}
+		return new PooledInflaterInputStream(in, acquireInflater());
+	}
+
+	@Override
+	public byte[] compress(byte[] data, int offset, int length) throws IOException {
+		Deflater deflater = acquireDeflater();
+		try {
+			deflater.setInput(data, offset, length);
+			deflater.finish();
+			byte[] out = new byte[Math.max(64, length / 2)];
+			int pos = 0;
+			if (gzip) {
+				System.arraycopy(GZIP_HEADER, 0, out, 0, GZIP_HEADER.length);
+				pos = GZIP_HEADER.length;
+			}
+			while (!deflater.finished()) {
+				if (pos == out.length) {
+					out = grow(out);
+				}
+				pos += deflater.deflate(out, pos, out.length - pos);
+			}
+			if (gzip) {
+				if (out.length - pos < 8) {
+					out = grow(out);
+				}
+				CRC32 crc = new CRC32();
+				crc.update(data, offset, length);
+				writeIntLE(out, pos, (int) crc.getValue());
+				writeIntLE(out, pos + 4, length);
+				pos += 8;
+			}
+			return Arrays.copyOf(out, pos);
+		} finally {
+			releaseDeflater(deflater);
+		}
+	}
+
+	@Override
+	public byte[] decompress(byte[] data, int offset, int length) throws IOException {
+		ByteBuffer buffer = decompress(data, offset, length, null);
+		return Arrays.copyOf(buffer.array(), buffer.limit());
+	}
+
+	@Override
+	public ByteBuffer decompress(byte[] data, int offset, int length, byte[] out) throws IOException {
+		int end = offset + length;
+		int start = gzip ? readGzipHeader(data, offset, end) : offset;
+		Inflater inflater = acquireInflater();
+		try {
+			if (out == null || out.length == 0) {
+				out = new byte[Math.max(64, Math.min(length, Integer.MAX_VALUE / 4) * 4)];
+			}
+			int pos = 0;
+			for (;;) {
+				inflater.setInput(data, start, end - start);
+				int memberStart = pos;
+				while (!inflater.finished()) {
+					if (pos == out.length) {
+						out = grow(out);
+					}
+					int n = inflater.inflate(out, pos, out.length - pos);
+					if (n == 0 && !inflater.finished()) {
+						if (inflater.needsDictionary()) {
+							throw new ZipException("ZLIB dictionary missing");
+						} else if (inflater.needsInput()) {
+							throw new EOFException("unexpected end of " + (gzip ? "GZIP" : "ZLIB") + " data");
+						}
+					}
+					pos += n;
+				}
+				if (!gzip) {
+					break;
+				}
+				int trailer = end - inflater.getRemaining();
+				readGzipTrailer(data, trailer, end, out, memberStart, pos - memberStart);
+				// like GZIPInputStream, read concatenated members until the data ends or does not start another member
+				start = trailer + 8;
+				if (start >= end) {
+					break;
+				}
+				try {
+					start = readGzipHeader(data, start, end);
+				} catch (IOException ex) {
+					break;
+				}
+				inflater.reset();
+			}
+			return ByteBuffer.wrap(out, 0, pos);
+		} catch (DataFormatException ex) {
+			throw new ZipException(ex.getMessage() == null ? "invalid " + (gzip ? "GZIP" : "ZLIB") + " data" : ex.getMessage());
+		} finally {
+			releaseInflater(inflater);
+		}
+	}
+
+	private static byte[] grow(byte[] array) {
+		int length = array.length + (array.length >> 1) + 16;
+		return Arrays.copyOf(array, length < 0 ? Integer.MAX_VALUE - 8 : length);
+	}
+
+	private static void writeIntLE(byte[] b, int offset, int value) {
+		b[offset] = (byte) value;
+		b[offset + 1] = (byte) (value >> 8);
+		b[offset + 2] = (byte) (value >> 16);
+		b[offset + 3] = (byte) (value >> 24);
+	}
+
+	private static int readShortLE(byte[] b, int offset, int end) throws EOFException {
+		if (offset + 2 > end) {
+			throw new EOFException("unexpected end of GZIP data");
+		}
+		return b[offset] & 0xFF | (b[offset + 1] & 0xFF) << 8;
+	}
+
+	private static int readIntLE(byte[] b, int offset, int end) throws EOFException {
+		return readShortLE(b, offset, end) | readShortLE(b, offset + 2, end) << 16;
+	}
+
+	// returns the offset of the compressed data
+	private static int readGzipHeader(byte[] data, int offset, int end) throws IOException {
+		if (readShortLE(data, offset, end) != GZIP_MAGIC) {
+			throw new ZipException("not in GZIP format");
+		}
+		if (offset + 10 > end) {
+			throw new EOFException("unexpected end of GZIP data");
+		}
+		if (data[offset + 2] != Deflater.DEFLATED) {
+			throw new ZipException("unsupported GZIP compression method " + data[offset + 2]);
+		}
+		int flags = data[offset + 3] & 0xFF;
+		int pos = offset + 10;
+		if ((flags & FEXTRA) != 0) {
+			pos += 2 + readShortLE(data, pos, end);
+		}
+		if ((flags & FNAME) != 0) {
+			pos = skipZeroTerminated(data, pos, end);
+		}
+		if ((flags & FCOMMENT) != 0) {
+			pos = skipZeroTerminated(data, pos, end);
+		}
+		if ((flags & FHCRC) != 0) {
+			CRC32 crc = new CRC32();
+			crc.update(data, offset, pos - offset);
+			if (readShortLE(data, pos, end) != ((int) crc.getValue() & 0xFFFF)) {
+				throw new ZipException("corrupt GZIP header");
+			}
+			pos += 2;
+		}
+		if (pos > end) {
+			throw new EOFException("unexpected end of GZIP data");
+		}
+		return pos;
+	}
+
+	private static int skipZeroTerminated(byte[] data, int pos, int end) throws EOFException {
+		while (pos < end) {
+			if (data[pos++] == 0) {
+				return pos;
+			}
+		}
+		throw new EOFException("unexpected end of GZIP data");
+	}
+
+	private static void readGzipTrailer(byte[] data, int offset, int end, byte[] out, int outOffset, int length) throws IOException {
+		CRC32 crc = new CRC32();
+		crc.update(out, outOffset, length);
+		if (readIntLE(data, offset, end) != (int) crc.getValue() || readIntLE(data, offset + 4, end) != length) {
+			throw new ZipException("corrupt GZIP trailer");
+		}
+	}
+
+	private class PooledDeflaterOutputStream extends DeflaterOutputStream {
+
+		private boolean released;
+
+		PooledDeflaterOutputStream(OutputStream out, Deflater deflater) {
+			super(out, deflater, BUFFER_SIZE);
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				super.close();
+			} finally {
+				if (!released) {
+					released = true;
+					releaseDeflater(def);
+				}
+			}
+		}
+	}
+
+	private class PooledInflaterInputStream extends InflaterInputStream {
+
+		private boolean released;
+
+		PooledInflaterInputStream(InputStream in, Inflater inflater) {
+			super(in, inflater, BUFFER_SIZE);
+		}
+
+		private void release() {
+			if (!released) {
+				released = true;
+				releaseInflater(inf);
+			}
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (released) {
+				return -1;
+			}
+			int n = super.read(b, off, len);
+			if (n < 0) {
+				// the end of the data has been reached, the inflater is not needed anymore
+				release();
+			}
+			return n;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return released ? 0 : super.available();
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				super.close();
+			} finally {
+				release();
+			}
+		}
+	}
+}
@@ -18,6 +18,9 @@ public final class LoadFlags {
 	public static final long LIGHTS               = 0x04000;
 	public static final long LIQUIDS_TO_BE_TICKED = 0x08000;
 	public static final long RAW                  = 0x10000;
+	// reads all CompoundTags of a chunk with CompoundTag.createCompact(int). it only changes how the data is stored
+	// and is not included in ALL_DATA, so it can be combined with any other flag, e.g. ALL_DATA | COMPACT_COMPOUNDS
+	public static final long COMPACT_COMPOUNDS    = 0x20000;
 
-	public static final long ALL_DATA             = 0xffffffffffffffffL;
+	public static final long ALL_DATA             = ~COMPACT_COMPOUNDS;
 }
@@ -0,0 +1,213 @@
+package net.querz.mca;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Compresses and decompresses single blocks of the LZ4 block format.
+ * The compressor is a greedy single-pass compressor with a hash table of 4-byte sequences,
+ * equivalent to the default "fast" compression of the reference implementation.
+ * */
+final class Lz4Block {
+
+	private static final int HASH_LOG = 12;
+	static final int HASH_TABLE_SIZE = 1 << HASH_LOG;
+
+	private static final int MIN_MATCH = 4;
+	// the last match must start at least 12 bytes before the end of the block
+	private static final int MF_LIMIT = 12;
+	// the last 5 bytes of a block are always literals
+	private static final int LAST_LITERALS = 5;
+	private static final int MAX_DISTANCE = 65535;
+	private static final int RUN_MASK = 15;
+	// the search step increases after this many unsuccessful attempts (as a power of 2) to skip incompressible data faster
+	private static final int SKIP_STRENGTH = 6;
+
+	private Lz4Block() {}
+
+	/**
+	 * @param length The length of the uncompressed data.
+	 * @return The maximum length of the compressed data.
+	 * */
+	static int maxCompressedLength(int length) {
+		return length + length / 255 + 16;
+	}
+
+	private static int readInt(byte[] b, int offset) {
+		return XXHash32.readIntLE(b, offset);
+	}
+
+	private static int hash(int sequence) {
+		return sequence * -1640531535 >>> 32 - HASH_LOG;
+	}
+
+	/**
+	 * Compresses a block.
+	 * @param src The array containing the data.
+	 * @param srcOff The start of the data in {@code src}.
+	 * @param srcLen The length of the data.
+	 * @param dest The array receiving the compressed data,
+	 *             with at least {@link Lz4Block#maxCompressedLength(int)} bytes after {@code destOff}.
+	 * @param destOff The offset in {@code dest} to write the compressed data to.
+	 * @param table A hash table with {@link Lz4Block#HASH_TABLE_SIZE} entries, reused between blocks.
+	 * @return The length of the compressed data.
+	 * */
+	static int compress(byte[] src, int srcOff, int srcLen, byte[] dest, int destOff, int[] table) {
+		int srcEnd = srcOff + srcLen;
+		int anchor = srcOff;
+		int d = destOff;
+		if (srcLen >= MF_LIMIT + 1) {
+			Arrays.fill(table, -1);
+			int mfLimit = srcEnd - MF_LIMIT;
+			int matchLimit = srcEnd - LAST_LITERALS;
+			int s = srcOff;
+			int attempts = 1 << SKIP_STRENGTH;
+			while (s < mfLimit) {
+				int sequence = readInt(src, s);
+				int h = hash(sequence);
+				int ref = table[h];
+				table[h] = s;
+				if (ref < 0 || s - ref > MAX_DISTANCE || readInt(src, ref) != sequence) {
+					s += attempts++ >>> SKIP_STRENGTH;
+					continue;
+				}
+				attempts = 1 << SKIP_STRENGTH;
+				// extend the match backwards into pending literals
+				while (s > anchor && ref > srcOff && src[s - 1] == src[ref - 1]) {
+					s--;
+					ref--;
+				}
+				int matchLength = MIN_MATCH;
+				while (s + matchLength < matchLimit && src[s + matchLength] == src[ref + matchLength]) {
+					matchLength++;
+				}
+				d = writeSequence(src, anchor, s - anchor, s - ref, matchLength, dest, d);
+				s += matchLength;
+				anchor = s;
+				if (s < mfLimit) {
+					table[hash(readInt(src, s - 2))] = s - 2;
+				}
+			}
+		}
+		return writeLastLiterals(src, anchor, srcEnd - anchor, dest, d) - destOff;
+	}
+
+	private static int writeLength(int length, byte[] dest, int d) {
+		for (length -= RUN_MASK; length >= 255; length -= 255) {
+			dest[d++] = (byte) 255;
+		}
+		dest[d++] = (byte) length;
+		return d;
+	}
+
+	private static int writeSequence(byte[] src, int literalOff, int literalLength, int offset, int matchLength, byte[] dest, int d) {
+		int token = d++;
+		int tokenLiterals = Math.min(literalLength, RUN_MASK);
+		if (literalLength >= RUN_MASK) {
+			d = writeLength(literalLength, dest, d);
+		}
+		System.arraycopy(src, literalOff, dest, d, literalLength);
+		d += literalLength;
+		dest[d++] = (byte) offset;
+		dest[d++] = (byte) (offset >>> 8);
+		matchLength -= MIN_MATCH;
+		int tokenMatch = Math.min(matchLength, RUN_MASK);
+		if (matchLength >= RUN_MASK) {
+			d = writeLength(matchLength, dest, d);
+		}
+		dest[token] = (byte) (tokenLiterals << 4 | tokenMatch);
+		return d;
+	}
+
+	private static int writeLastLiterals(byte[] src, int literalOff, int literalLength, byte[] dest, int d) {
+		int token = d++;
+		if (literalLength >= RUN_MASK) {
+			d = writeLength(literalLength, dest, d);
+		}
+		dest[token] = (byte) (Math.min(literalLength, RUN_MASK) << 4);
+		System.arraycopy(src, literalOff, dest, d, literalLength);
+		return d + literalLength;
+	}
+
+	/**
+	 * Decompresses a block. Matches may refer to data before {@code destOff} down to {@code dictStart},
+	 * which is used by dependent blocks of the LZ4 frame format.
+	 * @param src The array containing the compressed block.
+	 * @param srcOff The start of the compressed block in {@code src}.
+	 * @param srcLen The length of the compressed block.
+	 * @param dest The array receiving the decompressed data.
+	 * @param dictStart The start of the data that can be referred to by matches.
+	 * @param destOff The offset in {@code dest} to write the decompressed data to.
+	 * @param destEnd The maximum end of the decompressed data in {@code dest}.
+	 * @return The end of the decompressed data in {@code dest}.
+	 * @throws IOException If the block is malformed or truncated.
+	 * */
+	static int decompress(byte[] src, int srcOff, int srcLen, byte[] dest, int dictStart, int destOff, int destEnd) throws IOException {
+		int s = srcOff, srcEnd = srcOff + srcLen;
+		int d = destOff;
+		while (true) {
+			if (s >= srcEnd) {
+				throw new EOFException("unexpected end of LZ4 block");
+			}
+			int token = src[s++] & 0xFF;
+			int literalLength = token >>> 4;
+			if (literalLength == RUN_MASK) {
+				int b;
+				do {
+					if (s >= srcEnd) {
+						throw new EOFException("unexpected end of LZ4 block");
+					}
+					b = src[s++] & 0xFF;
+					literalLength += b;
+				} while (b == 255);
+			}
+			if (literalLength < 0 || literalLength > destEnd - d) {
+				throw new IOException("malformed LZ4 block: output exceeds " + (destEnd - destOff) + " bytes");
+			}
+			if (literalLength > srcEnd - s) {
+				throw new EOFException("unexpected end of LZ4 block");
+			}
+			System.arraycopy(src, s, dest, d, literalLength);
+			s += literalLength;
+			d += literalLength;
+			if (s == srcEnd) {
+				// the last sequence only contains literals
+				return d;
+			}
+
+			if (srcEnd - s < 2) {
+				throw new EOFException("unexpected end of LZ4 block");
+			}
+			int offset = src[s++] & 0xFF | (src[s++] & 0xFF) << 8;
+			if (offset == 0 || offset > d - dictStart) {
+				throw new IOException("malformed LZ4 block: invalid match offset " + offset);
+			}
+			int matchLength = token & RUN_MASK;
+			if (matchLength == RUN_MASK) {
+				int b;
+				do {
+					if (s >= srcEnd) {
+						throw new EOFException("unexpected end of LZ4 block");
+					}
+					b = src[s++] & 0xFF;
+					matchLength += b;
+				} while (b == 255);
+			}
+			matchLength += MIN_MATCH;
+			if (matchLength < 0 || matchLength > destEnd - d) {
+				throw new IOException("malformed LZ4 block: output exceeds " + (destEnd - destOff) + " bytes");
+			}
+			int ref = d - offset;
+			if (offset >= matchLength) {
+				System.arraycopy(dest, ref, dest, d, matchLength);
+				d += matchLength;
+			} else {
+				// overlapping match, repeating the last offset bytes
+				for (int end = d + matchLength; d < end; ) {
+					dest[d++] = dest[ref++];
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,504 @@
+package net.querz.mca;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A {@link CompressionCodec} for LZ4 compressed data, implemented in pure Java.
+ * Data is written either in the block stream format of lz4-java, which is used by Minecraft for
+ * chunks with the compression type {@link CompressionType#LZ4}, or in the standard LZ4 frame format.
+ * Both formats are detected automatically when decompressing, including concatenated and skippable frames.
+ * LZ4 frames using a preset dictionary are not supported.
+ * */
+public class Lz4Codec implements CompressionCodec {
+
+	static final int BLOCK_SIZE = 1 << 16;
+
+	// the block stream format of lz4-java: magic, token, compressed length, length, checksum
+	private static final byte[] BLOCK_MAGIC = "LZ4Block".getBytes(StandardCharsets.US_ASCII);
+	private static final int BLOCK_HEADER_LENGTH = BLOCK_MAGIC.length + 13;
+	private static final int METHOD_RAW = 0x10;
+	private static final int METHOD_LZ4 = 0x20;
+	private static final int COMPRESSION_LEVEL_BASE = 10;
+	private static final int BLOCK_CHECKSUM_SEED = 0x9747B28C;
+
+	// the LZ4 frame format
+	private static final int FRAME_MAGIC = 0x184D2204;
+	private static final int SKIPPABLE_MAGIC = 0x184D2A50;
+	private static final int FLG_VERSION = 0x40;
+	private static final int FLG_INDEPENDENT = 0x20;
+	private static final int FLG_BLOCK_CHECKSUM = 0x10;
+	private static final int FLG_CONTENT_SIZE = 0x08;
+	private static final int FLG_CONTENT_CHECKSUM = 0x04;
+	private static final int FLG_DICTIONARY = 0x01;
+	private static final int UNCOMPRESSED_BLOCK = 0x80000000;
+	private static final int HISTORY_SIZE = 65536;
+
+	private final boolean frame;
+
+	/**
+	 * Creates a codec writing the block stream format used by Minecraft.
+	 * */
+	public Lz4Codec() {
+		this(false);
+	}
+
+	/**
+	 * @param frame {@code true} to write the standard LZ4 frame format,
+	 *              {@code false} to write the block stream format used by Minecraft.
+	 * */
+	public Lz4Codec(boolean frame) {
+		this.frame = frame;
+	}
+
+	/**
+	 * @return {@code true} if this codec writes the standard LZ4 frame format.
+	 * */
+	public boolean isFrame() {
+		return frame;
+	}
+
+	@Override
+	public OutputStream compress(OutputStream out) throws IOException {
+		return new Lz4OutputStream(out, frame);
+	}
+
+	@Override
+	public InputStream decompress(InputStream in) {
+		return new Lz4InputStream(in);
+	}
+
+	@Override
+	public byte[] compress(byte[] data, int offset, int length) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(Lz4Block.maxCompressedLength(length) + 64);
+		try (OutputStream out = compress(baos)) {
+			out.write(data, offset, length);
+		}
+		return baos.toByteArray();
+	}
+
+	@Override
+	public byte[] decompress(byte[] data, int offset, int length) throws IOException {
+		ByteBuffer buffer = decompress(data, offset, length, null);
+		return Arrays.copyOf(buffer.array(), buffer.limit());
+	}
+
+	@Override
+	public ByteBuffer decompress(byte[] data, int offset, int length, byte[] out) throws IOException {
+		try (Lz4InputStream in = new Lz4InputStream(new ByteArrayInputStream(data, offset, length))) {
+			if (out == null || out.length == 0) {
+				out = new byte[Math.max(64, Math.min(length, Integer.MAX_VALUE / 4) * 4)];
+			}
+			int pos = 0, n;
+			while ((n = in.read(out, pos, out.length - pos)) != -1) {
+				pos += n;
+				if (pos == out.length) {
+					out = Arrays.copyOf(out, out.length + (out.length >> 1));
+				}
+			}
+			return ByteBuffer.wrap(out, 0, pos);
+		}
+	}
+
+	private static void writeIntLE(byte[] b, int offset, int value) {
+		b[offset] = (byte) value;
+		b[offset + 1] = (byte) (value >> 8);
+		b[offset + 2] = (byte) (value >> 16);
+		b[offset + 3] = (byte) (value >> 24);
+	}
+
+	// the compression level stored in the token of each block in the block stream format
+	private static int compressionLevel(int blockSize) {
+		return Math.max(0, 32 - Integer.numberOfLeadingZeros(blockSize - 1) - COMPRESSION_LEVEL_BASE);
+	}
+
+	private static class Lz4OutputStream extends OutputStream {
+
+		private final OutputStream out;
+		private final boolean frame;
+		private final byte[] buffer = new byte[BLOCK_SIZE];
+		private final byte[] compressed = new byte[BLOCK_HEADER_LENGTH + Lz4Block.maxCompressedLength(BLOCK_SIZE)];
+		private final int[] table = new int[Lz4Block.HASH_TABLE_SIZE];
+		private final XXHash32 checksum;
+		private int size;
+		private boolean closed;
+
+		Lz4OutputStream(OutputStream out, boolean frame) throws IOException {
+			this.out = out;
+			this.frame = frame;
+			if (frame) {
+				checksum = new XXHash32(0);
+				byte[] header = new byte[7];
+				writeIntLE(header, 0, FRAME_MAGIC);
+				header[4] = FLG_VERSION | FLG_INDEPENDENT | FLG_CONTENT_CHECKSUM;
+				// 64 KiB blocks
+				header[5] = 4 << 4;
+				header[6] = (byte) (XXHash32.hash(header, 4, 2, 0) >>> 8);
+				out.write(header);
+			} else {
+				checksum = new XXHash32(BLOCK_CHECKSUM_SEED);
+			}
+		}
+
+		private void ensureOpen() throws IOException {
+			if (closed) {
+				throw new IOException("stream closed");
+			}
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			ensureOpen();
+			if (size == buffer.length) {
+				flushBlock();
+			}
+			buffer[size++] = (byte) b;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			ensureOpen();
+			if ((off | len | off + len) < 0 || off + len > b.length) {
+				throw new IndexOutOfBoundsException();
+			}
+			while (len > 0) {
+				if (size == buffer.length) {
+					flushBlock();
+				}
+				int n = Math.min(len, buffer.length - size);
+				System.arraycopy(b, off, buffer, size, n);
+				size += n;
+				off += n;
+				len -= n;
+			}
+		}
+
+		private void flushBlock() throws IOException {
+			if (size == 0) {
+				return;
+			}
+			if (frame) {
+				checksum.update(buffer, 0, size);
+				int length = Lz4Block.compress(buffer, 0, size, compressed, 4, table);
+				if (length >= size) {
+					writeIntLE(compressed, 0, size | UNCOMPRESSED_BLOCK);
+					out.write(compressed, 0, 4);
+					out.write(buffer, 0, size);
+				} else {
+					writeIntLE(compressed, 0, length);
+					out.write(compressed, 0, 4 + length);
+				}
+			} else {
+				checksum.reset();
+				checksum.update(buffer, 0, size);
+				int length = Lz4Block.compress(buffer, 0, size, compressed, BLOCK_HEADER_LENGTH, table);
+				if (length >= size) {
+					writeBlockHeader(METHOD_RAW, size, size, checksum.getValue());
+					out.write(compressed, 0, BLOCK_HEADER_LENGTH);
+					out.write(buffer, 0, size);
+				} else {
+					writeBlockHeader(METHOD_LZ4, length, size, checksum.getValue());
+					out.write(compressed, 0, BLOCK_HEADER_LENGTH + length);
+				}
+			}
+			size = 0;
+		}
+
+		private void writeBlockHeader(int method, int compressedLength, int length, int check) {
+			System.arraycopy(BLOCK_MAGIC, 0, compressed, 0, BLOCK_MAGIC.length);
+			compressed[BLOCK_MAGIC.length] = (byte) (method | compressionLevel(BLOCK_SIZE));
+			writeIntLE(compressed, BLOCK_MAGIC.length + 1, compressedLength);
+			writeIntLE(compressed, BLOCK_MAGIC.length + 5, length);
+			// lz4-java only stores the lower 28 bits of the checksum
+			writeIntLE(compressed, BLOCK_MAGIC.length + 9, check & 0x0FFFFFFF);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			ensureOpen();
+			flushBlock();
+			out.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			try {
+				flushBlock();
+				if (frame) {
+					writeIntLE(compressed, 0, 0);
+					writeIntLE(compressed, 4, checksum.getValue());
+					out.write(compressed, 0, 8);
+				} else {
+					writeBlockHeader(METHOD_RAW, 0, 0, 0);
+					out.write(compressed, 0, BLOCK_HEADER_LENGTH);
+				}
+			} finally {
+				out.close();
+			}
+		}
+	}
+
+	private static class Lz4InputStream extends InputStream {
+
+		private final InputStream in;
+		private final byte[] header = new byte[BLOCK_HEADER_LENGTH];
+		private byte[] compressed = new byte[0];
+		private byte[] window = new byte[0];
+		private int pos, limit;
+		private boolean started, finished, closed;
+
+		// the state of the current frame, frameBlockSize is 0 if no frame is being read
+		private int frameBlockSize;
+		private boolean independent, blockChecksum;
+		private long contentSize, contentRead;
+		private XXHash32 contentChecksum;
+
+		Lz4InputStream(InputStream in) {
+			this.in = in;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (pos == limit && !refill()) {
+				return -1;
+			}
+			return window[pos++] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if ((off | len | off + len) < 0 || off + len > b.length) {
+				throw new IndexOutOfBoundsException();
+			}
+			if (len == 0) {
+				return 0;
+			}
+			if (pos == limit && !refill()) {
+				return -1;
+			}
+			int n = Math.min(len, limit - pos);
+			System.arraycopy(window, pos, b, off, n);
+			pos += n;
+			return n;
+		}
+
+		@Override
+		public int available() {
+			return limit - pos;
+		}
+
+		@Override
+		public void close() throws IOException {
+			closed = true;
+			in.close();
+		}
+
+		private void readFully(byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				int n = in.read(b, off, len);
+				if (n < 0) {
+					throw new EOFException("unexpected end of LZ4 data");
+				}
+				off += n;
+				len -= n;
+			}
+		}
+
+		private int readIntLE() throws IOException {
+			readFully(header, 0, 4);
+			return XXHash32.readIntLE(header, 0);
+		}
+
+		private void skipFully(long n) throws IOException {
+			while (n > 0) {
+				long skipped = in.skip(n);
+				if (skipped <= 0) {
+					if (in.read() < 0) {
+						throw new EOFException("unexpected end of LZ4 data");
+					}
+					skipped = 1;
+				}
+				n -= skipped;
+			}
+		}
+
+		private static byte[] ensureCapacity(byte[] array, int capacity) {
+			return array.length < capacity ? new byte[capacity] : array;
+		}
+
+		// decompresses the next block into the window, returns false at the end of the data
+		private boolean refill() throws IOException {
+			if (closed) {
+				throw new IOException("stream closed");
+			}
+			while (!finished) {
+				if (frameBlockSize != 0) {
+					if (readFrameBlock()) {
+						return true;
+					}
+					continue;
+				}
+				int first = in.read();
+				if (first < 0) {
+					if (!started) {
+						throw new EOFException("unexpected end of LZ4 data");
+					}
+					finished = true;
+					return false;
+				}
+				started = true;
+				header[0] = (byte) first;
+				readFully(header, 1, 3);
+				int magic = XXHash32.readIntLE(header, 0);
+				if (magic == FRAME_MAGIC) {
+					readFrameDescriptor();
+				} else if ((magic & 0xFFFFFFF0) == SKIPPABLE_MAGIC) {
+					skipFully(readIntLE() & 0xFFFFFFFFL);
+				} else if (Arrays.equals(Arrays.copyOf(header, 4), Arrays.copyOf(BLOCK_MAGIC, 4))) {
+					if (readStreamBlock()) {
+						return true;
+					}
+				} else {
+					throw new IOException("not in LZ4 format");
+				}
+			}
+			return false;
+		}
+
+		private boolean readStreamBlock() throws IOException {
+			readFully(header, 4, BLOCK_HEADER_LENGTH - 4);
+			for (int i = 4; i < BLOCK_MAGIC.length; i++) {
+				if (header[i] != BLOCK_MAGIC[i]) {
+					throw new IOException("not in LZ4 format");
+				}
+			}
+			int token = header[BLOCK_MAGIC.length] & 0xFF;
+			int method = token & 0xF0;
+			int maxLength = 1 << COMPRESSION_LEVEL_BASE + (token & 0x0F);
+			int compressedLength = XXHash32.readIntLE(header, BLOCK_MAGIC.length + 1);
+			int length = XXHash32.readIntLE(header, BLOCK_MAGIC.length + 5);
+			int check = XXHash32.readIntLE(header, BLOCK_MAGIC.length + 9);
+			if (method != METHOD_RAW && method != METHOD_LZ4
+					|| length < 0 || length > maxLength || compressedLength < 0
+					|| (length == 0) != (compressedLength == 0)
+					|| method == METHOD_RAW && length != compressedLength) {
+				throw new IOException("corrupt LZ4 block header");
+			}
+			if (length == 0) {
+				// end of the stream, which may be followed by another stream
+				if (check != 0) {
+					throw new IOException("corrupt LZ4 block header");
+				}
+				return false;
+			}
+			window = ensureCapacity(window, length);
+			if (method == METHOD_RAW) {
+				readFully(window, 0, length);
+			} else {
+				compressed = ensureCapacity(compressed, compressedLength);
+				readFully(compressed, 0, compressedLength);
+				if (Lz4Block.decompress(compressed, 0, compressedLength, window, 0, 0, length) != length) {
+					throw new IOException("corrupt LZ4 block: length mismatch");
+				}
+			}
+			if ((XXHash32.hash(window, 0, length, BLOCK_CHECKSUM_SEED) & 0x0FFFFFFF) != check) {
+				throw new IOException("corrupt LZ4 block: checksum mismatch");
+			}
+			pos = 0;
+			limit = length;
+			return true;
+		}
+
+		private void readFrameDescriptor() throws IOException {
+			readFully(header, 0, 2);
+			int flags = header[0] & 0xFF;
+			int descriptorLength = 2;
+			if ((flags & 0xC0) != FLG_VERSION) {
+				throw new IOException("unsupported LZ4 frame version " + (flags >>> 6));
+			}
+			if ((flags & FLG_DICTIONARY) != 0) {
+				throw new IOException("LZ4 frames with a dictionary are not supported");
+			}
+			int blockSizeID = header[1] >>> 4 & 7;
+			if (blockSizeID < 4) {
+				throw new IOException("invalid LZ4 frame block size " + blockSizeID);
+			}
+			contentSize = -1;
+			if ((flags & FLG_CONTENT_SIZE) != 0) {
+				readFully(header, 2, 8);
+				contentSize = XXHash32.readIntLE(header, 2) & 0xFFFFFFFFL | (long) XXHash32.readIntLE(header, 6) << 32;
+				descriptorLength += 8;
+			}
+			int check = in.read();
+			if (check < 0) {
+				throw new EOFException("unexpected end of LZ4 data");
+			}
+			if ((XXHash32.hash(header, 0, descriptorLength, 0) >>> 8 & 0xFF) != check) {
+				throw new IOException("corrupt LZ4 frame descriptor");
+			}
+			frameBlockSize = 1 << 8 + 2 * blockSizeID;
+			independent = (flags & FLG_INDEPENDENT) != 0;
+			blockChecksum = (flags & FLG_BLOCK_CHECKSUM) != 0;
+			contentChecksum = (flags & FLG_CONTENT_CHECKSUM) != 0 ? new XXHash32(0) : null;
+			contentRead = 0;
+			pos = limit = 0;
+			window = ensureCapacity(window, independent ? frameBlockSize : HISTORY_SIZE + frameBlockSize);
+		}
+
+		private boolean readFrameBlock() throws IOException {
+			int blockLength = readIntLE();
+			if (blockLength == 0) {
+				if (contentChecksum != null && readIntLE() != contentChecksum.getValue()) {
+					throw new IOException("corrupt LZ4 frame: checksum mismatch");
+				}
+				if (contentSize >= 0 && contentSize != contentRead) {
+					throw new IOException("corrupt LZ4 frame: expected " + contentSize + " bytes, got " + contentRead);
+				}
+				frameBlockSize = 0;
+				return false;
+			}
+			boolean uncompressed = (blockLength & UNCOMPRESSED_BLOCK) != 0;
+			blockLength &= ~UNCOMPRESSED_BLOCK;
+			if (blockLength > frameBlockSize) {
+				throw new IOException("corrupt LZ4 frame: block of " + blockLength + " bytes exceeds the maximum of " + frameBlockSize);
+			}
+			compressed = ensureCapacity(compressed, blockLength);
+			readFully(compressed, 0, blockLength);
+			if (blockChecksum && readIntLE() != XXHash32.hash(compressed, 0, blockLength, 0)) {
+				throw new IOException("corrupt LZ4 frame: block checksum mismatch");
+			}
+
+			// dependent blocks may refer to the last 64 KiB of the previous blocks
+			int start = 0;
+			if (!independent) {
+				start = Math.min(limit, HISTORY_SIZE);
+				System.arraycopy(window, limit - start, window, 0, start);
+			}
+			int end;
+			if (uncompressed) {
+				System.arraycopy(compressed, 0, window, start, blockLength);
+				end = start + blockLength;
+			} else {
+				end = Lz4Block.decompress(compressed, 0, blockLength, window, 0, start, start + frameBlockSize);
+			}
+			if (contentChecksum != null) {
+				contentChecksum.update(window, start, end - start);
+			}
+			contentRead += end - start;
+			pos = start;
+			limit = end;
+			return true;
+		}
+	}
+}
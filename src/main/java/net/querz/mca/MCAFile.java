@@ -3,11 +3,21 @@ package net.querz.mca;
 import net.querz.nbt.tag.CompoundTag;
 import net.querz.nbt.tag.Tag;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
-import java.util.Arrays;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
 
 public class MCAFile implements Iterable<Chunk> {
 
@@ -19,6 +29,16 @@ public class MCAFile implements Iterable<Chunk> {
 	private int regionX, regionZ;
 	private Chunk[] chunks;
 
+	// state of lazily deserialized chunks that have not been accessed yet, guarded by this object
+	// lazyHeader is volatile so that it can be checked without locking once all chunks have been loaded
+	private ByteBuffer lazySource;
+	private volatile int[] lazyHeader;
+	private int lazyChunks;
+	private long lazyLoadFlags;
+
+	private BlockStatePool blockStatePool;
+	private CompressionType compressionType = CompressionType.ZLIB;
+
 	/**
 	 * MCAFile represents a world save file used by Minecraft to store world
 	 * data on the hard drive.
@@ -32,6 +52,61 @@ public class MCAFile implements Iterable<Chunk> {
 		this.regionZ = regionZ;
 	}
 
+	/**
+	 * @return The x-coordinate of this region.
+	 * */
+	public int getRegionX() {
+		return regionX;
+	}
+
+	/**
+	 * @return The z-coordinate of this region.
+	 * */
+	public int getRegionZ() {
+		return regionZ;
+	}
+
+	/**
+	 * @return The pool of block states used when loading chunks, or {@code null}.
+	 * */
+	public BlockStatePool getBlockStatePool() {
+		return blockStatePool;
+	}
+
+	/**
+	 * Sets the pool of block states used for the palettes of all chunks loaded from now on,
+	 * including chunks of a lazily deserialized file that are loaded on first access.
+	 * The same pool can be used by multiple {@code MCAFile}s.
+	 * @param blockStatePool The pool of block states, or {@code null} to not pool any block states.
+	 * */
+	public void setBlockStatePool(BlockStatePool blockStatePool) {
+		this.blockStatePool = blockStatePool;
+	}
+
+	/**
+	 * @return The compression type used when serializing chunks.
+	 * */
+	public CompressionType getCompressionType() {
+		return compressionType;
+	}
+
+	/**
+	 * Sets the compression type used when serializing chunks, which defaults to {@link CompressionType#ZLIB}.
+	 * Minecraft reads {@link CompressionType#UNCOMPRESSED} since 1.15.1 and {@link CompressionType#LZ4} since 1.20.5.
+	 * Deserializing always uses the compression type stored with each chunk.
+	 * @param compressionType The compression type.
+	 * @throws NullPointerException If {@code compressionType} is {@code null}.
+	 * */
+	public void setCompressionType(CompressionType compressionType) {
+		this.compressionType = Objects.requireNonNull(compressionType, "compressionType must not be null");
+	}
+
+	private Chunk createChunk(int lastMCAUpdate) {
+		Chunk chunk = new Chunk(lastMCAUpdate);
+		chunk.blockStatePool = blockStatePool;
+		return chunk;
+	}
+
 	/**
 	 * Reads an .mca file from a {@code RandomAccessFile} into this object.
 	 * This method does not perform any cleanups on the data.
@@ -50,24 +125,231 @@ public class MCAFile implements Iterable<Chunk> {
 	 * @throws IOException If something went wrong during deserialization.
 	 * */
 	public void deserialize(RandomAccessFile raf, long loadFlags) throws IOException {
+		resetLazyState();
 		chunks = new Chunk[1024];
 		for (int i = 0; i < 1024; i++) {
 			raf.seek(i * 4);
 			int offset = raf.read() << 16;
 			offset |= (raf.read() & 0xFF) << 8;
 			offset |= raf.read() & 0xFF;
-			if (raf.readByte() == 0) {
+			int sectors = raf.read();
+			if (sectors == 0) {
 				continue;
 			}
 			raf.seek(4096 + i * 4);
 			int timestamp = raf.readInt();
-			Chunk chunk = new Chunk(timestamp);
-			raf.seek(4096 * offset + 4); //+4: skip data size
-			chunk.deserialize(raf, loadFlags);
+			Chunk chunk = createChunk(timestamp);
+			raf.seek(4096 * offset);
+			int length = raf.readInt();
+			byte compressionType = raf.readByte();
+			raf.seek(4096 * offset + 4);
+			chunk.deserialize(raf, dataLength(length, compressionType, sectors), loadFlags);
+			chunks[i] = chunk;
+		}
+	}
+
+	/**
+	 * Reads an .mca file from a {@code ByteBuffer} into this object, e.g. from a memory mapped file.
+	 * The buffer must contain the entire .mca file starting at index {@code 0}. The header containing
+	 * the chunk locations and timestamps is parsed in one pass, and each chunk is decompressed directly
+	 * from the buffer. Neither the position nor the limit of the buffer are modified.
+	 * This method does not perform any cleanups on the data.
+	 * @param buffer The {@code ByteBuffer} to read from.
+	 * @param loadFlags A logical or of {@link LoadFlags} constants indicating what data should be loaded
+	 * @throws IOException If something went wrong during deserialization.
+	 * */
+	public void deserialize(ByteBuffer buffer, long loadFlags) throws IOException {
+		deserialize(buffer, loadFlags, false);
+	}
+
+	/**
+	 * Reads an .mca file from a {@code ByteBuffer} into this object, e.g. from a memory mapped file.
+	 * The buffer must contain the entire .mca file starting at index {@code 0}.
+	 * If {@code lazy} is {@code true}, only the header is parsed and the buffer is retained by this object.
+	 * Each chunk is then decompressed and parsed on first access through {@link MCAFile#getChunk(int)},
+	 * any method delegating to it or iteration. The buffer is released once all chunks have been accessed
+	 * or replaced, so the content of the buffer must not be modified until then.
+	 * Loading a chunk on first access is thread-safe, so several threads may read chunks concurrently and each
+	 * chunk is only loaded once. Changing this file while other threads are reading it is not thread-safe.
+	 * This method does not perform any cleanups on the data.
+	 * @param buffer The {@code ByteBuffer} to read from.
+	 * @param loadFlags A logical or of {@link LoadFlags} constants indicating what data should be loaded
+	 * @param lazy Whether the chunks should only be loaded when they are accessed.
+	 * @throws IOException If something went wrong during deserialization.
+	 * */
+	public void deserialize(ByteBuffer buffer, long loadFlags, boolean lazy) throws IOException {
+		resetLazyState();
+		buffer = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+		int[] header = readHeader(buffer);
+		chunks = new Chunk[1024];
+		if (lazy) {
+			for (int i = 0; i < 1024; i++) {
+				// validate the chunk locations, so that accessing a chunk only fails if its data is corrupted
+				if (getChunkData(buffer, header[i]) != null) {
+					lazyChunks++;
+				} else {
+					header[i] = 0;
+				}
+			}
+			if (lazyChunks > 0) {
+				lazySource = buffer;
+				lazyLoadFlags = loadFlags;
+				lazyHeader = header;
+			}
+			return;
+		}
+		for (int i = 0; i < 1024; i++) {
+			ByteBuffer chunkData = getChunkData(buffer, header[i]);
+			if (chunkData == null) {
+				continue;
+			}
+			Chunk chunk = createChunk(header[i + 1024]);
+			chunk.deserialize(chunkData, loadFlags);
 			chunks[i] = chunk;
 		}
 	}
 
+	/**
+	 * Reads an .mca file from a {@code ByteBuffer} into this object, e.g. from a memory mapped file.
+	 * The buffer must contain the entire .mca file starting at index {@code 0}.
+	 * The chunks are independent of each other, so their decompression and parsing is distributed
+	 * across the supplied {@code Executor}, e.g. a {@link java.util.concurrent.ForkJoinPool}.
+	 * This method blocks until all chunks have been loaded.
+	 * This method does not perform any cleanups on the data.
+	 * @param buffer The {@code ByteBuffer} to read from.
+	 * @param loadFlags A logical or of {@link LoadFlags} constants indicating what data should be loaded
+	 * @param executor The {@code Executor} used to load the chunks.
+	 * @throws IOException If something went wrong during deserialization.
+	 * */
+	public void deserialize(ByteBuffer buffer, long loadFlags, Executor executor) throws IOException {
+		resetLazyState();
+		buffer = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+		int[] header = readHeader(buffer);
+		Chunk[] chunks = new Chunk[1024];
+		List<CompletableFuture<Void>> tasks = new ArrayList<>();
+		for (int i = 0; i < 1024; i++) {
+			ByteBuffer chunkData = getChunkData(buffer, header[i]);
+			if (chunkData == null) {
+				continue;
+			}
+			Chunk chunk = createChunk(header[i + 1024]);
+			tasks.add(Tasks.run(() -> chunk.deserialize(chunkData, loadFlags), executor));
+			chunks[i] = chunk;
+		}
+		Tasks.join(tasks);
+		this.chunks = chunks;
+	}
+
+	private Chunk loadLazyChunk(int index) {
+		ByteBuffer chunkData;
+		Chunk chunk;
+		long loadFlags;
+		synchronized (this) {
+			// another thread may have loaded the chunk or the last lazy chunk while this thread was waiting
+			int[] header = lazyHeader;
+			if (chunks[index] != null || header == null || header[index] == 0) {
+				return chunks[index];
+			}
+			try {
+				chunkData = getChunkData(lazySource, header[index]);
+			} catch (IOException ex) {
+				throw new UncheckedIOException("failed to load chunk at index " + index, ex);
+			}
+			chunk = createChunk(header[index + 1024]);
+			loadFlags = lazyLoadFlags;
+		}
+		// chunks are decoded without holding the lock, so different chunks can be loaded in parallel
+		try {
+			chunk.deserialize(chunkData, loadFlags);
+		} catch (IOException ex) {
+			throw new UncheckedIOException("failed to load chunk at index " + index, ex);
+		}
+		synchronized (this) {
+			// if another thread loaded or replaced the chunk in the meantime, its chunk is kept
+			int[] header = lazyHeader;
+			if (chunks[index] == null && header != null && header[index] != 0) {
+				chunks[index] = chunk;
+				discardLazyChunk(index);
+			}
+			return chunks[index];
+		}
+	}
+
+	private synchronized void discardLazyChunk(int index) {
+		int[] header = lazyHeader;
+		if (header == null || header[index] == 0) {
+			return;
+		}
+		header[index] = 0;
+		if (--lazyChunks == 0) {
+			resetLazyState();
+		}
+	}
+
+	private synchronized void resetLazyState() {
+		lazySource = null;
+		lazyHeader = null;
+		lazyChunks = 0;
+	}
+
+	/**
+	 * Reads the 8 KiB header of an .mca file, containing 1024 chunk locations followed by 1024 timestamps.
+	 * @param buffer The big endian buffer containing the .mca file starting at index {@code 0}.
+	 * @return The chunk locations at the indices 0 - 1023 and the timestamps at the indices 1024 - 2047.
+	 * @throws IOException If the buffer is too small to contain a header.
+	 * */
+	static int[] readHeader(ByteBuffer buffer) throws IOException {
+		if (buffer.limit() < 8192) {
+			throw new EOFException("region file header is incomplete");
+		}
+		int[] header = new int[2048];
+		ByteBuffer headerBuffer = buffer.duplicate();
+		headerBuffer.clear();
+		headerBuffer.order(ByteOrder.BIG_ENDIAN).asIntBuffer().get(header);
+		return header;
+	}
+
+	/**
+	 * Creates a view of the data of a single chunk, starting with its compression type.
+	 * @param buffer The big endian buffer containing the .mca file starting at index {@code 0}.
+	 * @param location The location of the chunk as stored in the header.
+	 * @return The data of the chunk or {@code null} if the chunk does not exist.
+	 * @throws IOException If the chunk location points beyond the end of the buffer.
+	 * */
+	static ByteBuffer getChunkData(ByteBuffer buffer, int location) throws IOException {
+		if ((location & 0xFF) == 0) {
+			return null;
+		}
+		int start = (location >>> 8) * 4096;
+		if (start < 0 || start > buffer.limit() - 5) {
+			throw new EOFException("chunk data at sector " + (location >>> 8) + " is out of bounds");
+		}
+		// the length includes the compression type byte, truncated data is read up to the end of the buffer
+		int length = dataLength(buffer.getInt(start), buffer.get(start + 4), location & 0xFF);
+		int end = (int) Math.min((long) start + 4 + length, buffer.limit());
+		ByteBuffer chunkData = buffer.duplicate();
+		chunkData.limit(Math.max(end, start + 5));
+		chunkData.position(start + 4);
+		return chunkData;
+	}
+
+	/**
+	 * Older versions wrote a chunk length without the compression type, which cuts off the last byte of the ZLIB
+	 * or GZIP checksum. Both formats ignore any bytes after their data, so their length is extended by one byte
+	 * if that byte is still inside the sectors of the chunk. Anything shorter is truncated data.
+	 * @param length The length stored in front of the chunk data.
+	 * @param compressionType The compression type of the chunk data.
+	 * @param sectors The amount of sectors of the chunk.
+	 * @return The length of the chunk data to read, including its compression type.
+	 * */
+	static int dataLength(int length, byte compressionType, int sectors) {
+		boolean deflate = compressionType == CompressionType.GZIP.getID() || compressionType == CompressionType.ZLIB.getID();
+		if (deflate && length > 0 && (long) length + 4 < sectors * 4096L) {
+			return length + 1;
+		}
+		return length;
+	}
+
 	/**
 	 * Calls {@link MCAFile#serialize(RandomAccessFile, boolean)} without updating any timestamps.
 	 * @see MCAFile#serialize(RandomAccessFile, boolean)
@@ -89,26 +371,85 @@ public class MCAFile implements Iterable<Chunk> {
 	 * @throws IOException If something went wrong during serialization.
 	 * */
 	public int serialize(RandomAccessFile raf, boolean changeLastUpdate) throws IOException {
-		int globalOffset = 2;
-		int lastWritten = 0;
-		int timestamp = (int) (System.currentTimeMillis() / 1000L);
-		int chunksWritten = 0;
+		if (chunks == null) {
+			return 0;
+		}
 		int chunkXOffset = MCAUtil.regionToChunk(regionX);
 		int chunkZOffset = MCAUtil.regionToChunk(regionZ);
+		CompressionType compressionType = this.compressionType;
+		return writeChunks(raf, changeLastUpdate, index -> {
+			Chunk chunk = getChunk(index);
+			if (chunk == null) {
+				return -1;
+			}
+			int xPos = chunkXOffset + (index & 0x1F), zPos = chunkZOffset + (index >> 5);
+			// the default compression type uses the original overload, so subclasses overriding it still apply
+			if (compressionType == CompressionType.ZLIB) {
+				return chunk.serialize(raf, xPos, zPos);
+			}
+			return chunk.serialize(raf, xPos, zPos, compressionType);
+		});
+	}
 
+	/**
+	 * Serializes this object to an .mca file, compressing all chunks concurrently using the supplied
+	 * {@code Executor}. The compressed chunks are then written sequentially, so the resulting file is
+	 * identical to the one written by {@link MCAFile#serialize(RandomAccessFile, boolean)}, but all
+	 * compressed chunks are held in memory at the same time.
+	 * Each chunk is compressed using {@link Chunk#compress(int, int, CompressionType)} instead of being written
+	 * by {@link Chunk#serialize(RandomAccessFile, int, int)}, so subclasses of {@link Chunk} changing the written
+	 * data must override {@code compress} for it to apply to this method.
+	 * This method does not perform any cleanups on the data.
+	 * @param raf The {@code RandomAccessFile} to write to.
+	 * @param changeLastUpdate Whether it should update all timestamps that show
+	 *                         when this file was last updated.
+	 * @param executor The {@code Executor} used to compress the chunks.
+	 * @return The amount of chunks written to the file.
+	 * @throws IOException If something went wrong during serialization.
+	 * */
+	public int serialize(RandomAccessFile raf, boolean changeLastUpdate, Executor executor) throws IOException {
 		if (chunks == null) {
 			return 0;
 		}
+		int chunkXOffset = MCAUtil.regionToChunk(regionX);
+		int chunkZOffset = MCAUtil.regionToChunk(regionZ);
+		CompressionType compressionType = this.compressionType;
+		byte[][] compressed = new byte[1024][];
+		List<CompletableFuture<Void>> tasks = new ArrayList<>();
+		for (int index = 0; index < 1024; index++) {
+			Chunk chunk = getChunk(index);
+			if (chunk == null) {
+				continue;
+			}
+			int i = index;
+			tasks.add(Tasks.run(() -> compressed[i] = chunk.compress(chunkXOffset + (i & 0x1F), chunkZOffset + (i >> 5), compressionType), executor));
+		}
+		Tasks.join(tasks);
+		return writeChunks(raf, changeLastUpdate, index -> {
+			if (compressed[index] == null) {
+				return -1;
+			}
+			return Chunk.writeCompressed(raf, compressionType, compressed[index]);
+		});
+	}
+
+	// writes the chunks using a writer returning the amount of bytes written at the current position of the file,
+	// or -1 if there is no chunk at an index
+	private int writeChunks(RandomAccessFile raf, boolean changeLastUpdate, ExceptionFunction<Integer, Integer, IOException> writer) throws IOException {
+		int globalOffset = 2;
+		int lastWritten = 0;
+		int timestamp = (int) (System.currentTimeMillis() / 1000L);
+		int chunksWritten = 0;
 
 		for (int cx = 0; cx < 32; cx++) {
 			for (int cz = 0; cz < 32; cz++) {
 				int index = getChunkIndex(cx, cz);
-				Chunk chunk = chunks[index];
-				if (chunk == null) {
+				raf.seek(4096 * globalOffset);
+				int written = writer.accept(index);
+				if (written == -1) {
 					continue;
 				}
-				raf.seek(4096 * globalOffset);
-				lastWritten = chunk.serialize(raf, chunkXOffset + cx, chunkZOffset + cz);
+				lastWritten = written;
 
 				if (lastWritten == 0) {
 					continue;
@@ -126,7 +467,7 @@ public class MCAFile implements Iterable<Chunk> {
 
 				// write timestamp
 				raf.seek(index * 4 + 4096);
-				raf.writeInt(changeLastUpdate ? timestamp : chunk.getLastMCAUpdate());
+				raf.writeInt(changeLastUpdate ? timestamp : chunks[index].getLastMCAUpdate());
 
 				globalOffset += sectors;
 			}
@@ -151,6 +492,7 @@ public class MCAFile implements Iterable<Chunk> {
 		if (chunks == null) {
 			chunks = new Chunk[1024];
 		}
+		discardLazyChunk(index);
 		chunks[index] = chunk;
 	}
 
@@ -167,14 +509,22 @@ public class MCAFile implements Iterable<Chunk> {
 
 	/**
 	 * Returns the chunk data of a chunk at a specific index in this file.
+	 * If this file has been deserialized lazily, the chunk is loaded on first access. Concurrent calls are
+	 * thread-safe and return the same chunk, but calls concurrent with changes to this file are not.
+	 * Different chunks are loaded in parallel.
 	 * @param index The index of the chunk in this file.
 	 * @return The chunk data.
+	 * @throws UncheckedIOException If the chunk has not been loaded yet and loading it failed.
 	 * */
 	public Chunk getChunk(int index) {
 		checkIndex(index);
 		if (chunks == null) {
 			return null;
 		}
+		if (lazyHeader != null) {
+			// chunks loaded by other threads are only visible through the lock
+			return loadLazyChunk(index);
+		}
 		return chunks[index];
 	}
 
@@ -289,6 +639,7 @@ public class MCAFile implements Iterable<Chunk> {
 
 	/**
 	 * Recalculates the Palette and the BlockStates of all chunks and sections of this region.
+	 * Chunks of a lazily deserialized file that have not been accessed yet are unchanged and are therefore skipped.
 	 */
 	public void cleanupPalettesAndBlockStates() {
 		for (Chunk chunk : chunks) {
@@ -298,8 +649,102 @@ public class MCAFile implements Iterable<Chunk> {
 		}
 	}
 
+	/**
+	 * Recalculates the Palette and the BlockStates of all chunks and sections of this region,
+	 * cleaning up the chunks in parallel on the supplied {@code Executor}. This is not an overload of
+	 * {@link MCAFile#cleanupPalettesAndBlockStates()} to keep method references to it unambiguous.
+	 * Chunks of a lazily deserialized file that have not been accessed yet are unchanged and are therefore skipped.
+	 * @param executor The {@code Executor} used to clean up the chunks.
+	 */
+	public void cleanupPalettesAndBlockStatesInParallel(Executor executor) {
+		List<CompletableFuture<Void>> tasks = new ArrayList<>();
+		for (Chunk chunk : chunks) {
+			if (chunk != null) {
+				tasks.add(Tasks.run(chunk::cleanupPalettesAndBlockStates, executor));
+			}
+		}
+		Tasks.joinUnchecked(tasks);
+	}
+
+	/**
+	 * Visits all blocks of all chunks of this region, ordered by chunk index.
+	 * The coordinates are absolute block coordinates.
+	 * @see Section#forEachBlock(BlockVisitor)
+	 * @param visitor The visitor receiving the blocks.
+	 * @return {@code false} if the visitor stopped early, {@code true} otherwise.
+	 * @throws UncheckedIOException If this file has been deserialized lazily and loading a chunk failed.
+	 */
+	public boolean forEachBlock(BlockVisitor visitor) {
+		int[] buffer = new int[4096];
+		for (int i = 0; i < 1024; i++) {
+			Chunk chunk = getChunk(i);
+			if (chunk != null && !chunk.forEachBlock(visitor, blockOffsetX(i), blockOffsetZ(i), buffer)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Visits all blocks of all chunks of this region, visiting the chunks in parallel on the supplied
+	 * {@code Executor}. The visitor must therefore be thread-safe. The blocks of a chunk are visited in
+	 * order, but there is no order between chunks. If the visitor stops early, chunks that are already
+	 * being visited on other threads are stopped as well.
+	 * @see MCAFile#forEachBlock(BlockVisitor)
+	 * @param visitor The visitor receiving the blocks.
+	 * @param executor The {@code Executor} used to visit the chunks.
+	 * @return {@code false} if the visitor stopped early, {@code true} otherwise.
+	 * @throws UncheckedIOException If this file has been deserialized lazily and loading a chunk failed.
+	 */
+	public boolean forEachBlock(BlockVisitor visitor, Executor executor) {
+		AtomicBoolean stopped = new AtomicBoolean();
+		BlockVisitor stoppable = (section, x, y, z, paletteIndex) -> {
+			if (stopped.get()) {
+				return false;
+			}
+			if (!visitor.visit(section, x, y, z, paletteIndex)) {
+				stopped.set(true);
+				return false;
+			}
+			return true;
+		};
+		List<CompletableFuture<Void>> tasks = new ArrayList<>();
+		for (int i = 0; i < 1024; i++) {
+			if (!containsChunk(i)) {
+				continue;
+			}
+			int index = i;
+			int offsetX = blockOffsetX(i), offsetZ = blockOffsetZ(i);
+			// lazy chunks are loaded by the task visiting them
+			tasks.add(Tasks.run(() -> {
+				Chunk chunk;
+				if (!stopped.get() && (chunk = getChunk(index)) != null) {
+					chunk.forEachBlock(stoppable, offsetX, offsetZ, new int[4096]);
+				}
+			}, executor));
+		}
+		Tasks.joinUnchecked(tasks);
+		return !stopped.get();
+	}
+
+	private synchronized boolean containsChunk(int index) {
+		if (chunks == null) {
+			return false;
+		}
+		int[] header = lazyHeader;
+		return chunks[index] != null || header != null && header[index] != 0;
+	}
+
+	private int blockOffsetX(int index) {
+		return MCAUtil.chunkToBlock(MCAUtil.regionToChunk(regionX) + (index & 0x1F));
+	}
+
+	private int blockOffsetZ(int index) {
+		return MCAUtil.chunkToBlock(MCAUtil.regionToChunk(regionZ) + (index >> 5));
+	}
+
 	@Override
 	public Iterator<Chunk> iterator() {
-		return Arrays.stream(chunks).iterator();
+		return IntStream.range(0, 1024).mapToObj(this::getChunk).iterator();
 	}
 }
@@ -3,8 +3,12 @@ package net.querz.mca;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executor;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -55,9 +59,140 @@ public final class MCAUtil {
 	 * @throws IOException if something during deserialization goes wrong.
 	 * */
 	public static MCAFile read(File file, long loadFlags) throws IOException {
+		return read(file, loadFlags, false);
+	}
+
+	/**
+	 * @see MCAUtil#read(File, long, boolean)
+	 * @param file The file to read the data from.
+	 * @param loadFlags A logical or of {@link LoadFlags} constants indicating what data should be loaded
+	 * @param memoryMapped Whether the file should be memory mapped instead of being read through a {@code RandomAccessFile}.
+	 * @return An in-memory representation of the MCA file with decompressed chunk data
+	 * @throws IOException if something during deserialization goes wrong.
+	 * */
+	public static MCAFile read(String file, long loadFlags, boolean memoryMapped) throws IOException {
+		return read(new File(file), loadFlags, memoryMapped);
+	}
+
+	/**
+	 * Reads an MCA file and loads all of its chunks. If {@code memoryMapped} is {@code true}, the file
+	 * is mapped into memory using {@link FileChannel#map(FileChannel.MapMode, long, long)} and the chunks
+	 * are decompressed directly from the mapped buffer, which avoids most of the system calls necessary
+	 * to read the file through a {@code RandomAccessFile}.
+	 * @param file The file to read the data from.
+	 * @param loadFlags A logical or of {@link LoadFlags} constants indicating what data should be loaded
+	 * @param memoryMapped Whether the file should be memory mapped instead of being read through a {@code RandomAccessFile}.
+	 * @return An in-memory representation of the MCA file with decompressed chunk data
+	 * @throws IOException if something during deserialization goes wrong.
+	 * */
+	public static MCAFile read(File file, long loadFlags, boolean memoryMapped) throws IOException {
+		ReadOptions options = new ReadOptions();
+		options.setLoadFlags(loadFlags);
+		options.setMemoryMapped(memoryMapped);
+		return read(file, options);
+	}
+
+	/**
+	 * @see MCAUtil#read(File, long, Executor)
+	 * @param file The file to read the data from.
+	 * @param loadFlags A logical or of {@link LoadFlags} constants indicating what data should be loaded
+	 * @param executor The {@code Executor} used to decompress and parse the chunks.
+	 * @return An in-memory representation of the MCA file with decompressed chunk data
+	 * @throws IOException if something during deserialization goes wrong.
+	 * */
+	public static MCAFile read(String file, long loadFlags, Executor executor) throws IOException {
+		return read(new File(file), loadFlags, executor);
+	}
+
+	/**
+	 * Reads an MCA file and loads all of its chunks in parallel. The file is memory mapped and
+	 * the decompression and parsing of the chunks is distributed across the supplied {@code Executor},
+	 * e.g. {@link java.util.concurrent.ForkJoinPool#commonPool()}.
+	 * @see MCAFile#deserialize(java.nio.ByteBuffer, long, Executor)
+	 * @param file The file to read the data from.
+	 * @param loadFlags A logical or of {@link LoadFlags} constants indicating what data should be loaded
+	 * @param executor The {@code Executor} used to decompress and parse the chunks, or {@code null} to load
+	 *                 them on the calling thread.
+	 * @return An in-memory representation of the MCA file with decompressed chunk data
+	 * @throws IOException if something during deserialization goes wrong.
+	 * */
+	public static MCAFile read(File file, long loadFlags, Executor executor) throws IOException {
+		ReadOptions options = new ReadOptions();
+		options.setLoadFlags(loadFlags);
+		options.setMemoryMapped(true);
+		options.setExecutor(executor);
+		return read(file, options);
+	}
+
+	/**
+	 * @see MCAUtil#readLazy(File, long)
+	 * @param file The file to read the data from.
+	 * @param loadFlags A logical or of {@link LoadFlags} constants indicating what data should be loaded
+	 * @return An in-memory representation of the MCA file that loads its chunks on first access.
+	 * @throws IOException if something during deserialization goes wrong.
+	 * */
+	public static MCAFile readLazy(String file, long loadFlags) throws IOException {
+		return readLazy(new File(file), loadFlags);
+	}
+
+	/**
+	 * Reads the header of an MCA file and memory maps the file, but does not load any chunks.
+	 * Each chunk is decompressed and parsed when it is accessed for the first time.
+	 * The file must not be modified until all chunks have been accessed or the returned
+	 * {@code MCAFile} is no longer used. Several threads may read chunks of the returned {@code MCAFile}
+	 * concurrently, but must not change it while doing so.
+	 * @see MCAFile#deserialize(java.nio.ByteBuffer, long, boolean)
+	 * @param file The file to read the data from.
+	 * @param loadFlags A logical or of {@link LoadFlags} constants indicating what data should be loaded
+	 * @return An in-memory representation of the MCA file that loads its chunks on first access.
+	 * @throws IOException if something during deserialization goes wrong.
+	 * */
+	public static MCAFile readLazy(File file, long loadFlags) throws IOException {
+		ReadOptions options = new ReadOptions();
+		options.setLoadFlags(loadFlags);
+		options.setLazy(true);
+		return read(file, options);
+	}
+
+	/**
+	 * @see MCAUtil#read(File, ReadOptions)
+	 * @param file The file to read the data from.
+	 * @param options The options used to read the file.
+	 * @return An in-memory representation of the MCA file.
+	 * @throws IOException if something during deserialization goes wrong.
+	 * */
+	public static MCAFile read(String file, ReadOptions options) throws IOException {
+		return read(new File(file), options);
+	}
+
+	/**
+	 * Reads an MCA file using any combination of {@link ReadOptions}, e.g. in parallel while pooling
+	 * the block states of all sections.
+	 * @param file The file to read the data from.
+	 * @param options The options used to read the file.
+	 * @return An in-memory representation of the MCA file.
+	 * @throws IOException if something during deserialization goes wrong.
+	 * @throws IllegalArgumentException If the options request reading the file lazily and in parallel.
+	 * */
+	public static MCAFile read(File file, ReadOptions options) throws IOException {
+		if (options.isLazy() && options.getExecutor() != null) {
+			throw new IllegalArgumentException("cannot read a file lazily and in parallel");
+		}
 		MCAFile mcaFile = newMCAFile(file);
-		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
-			mcaFile.deserialize(raf, loadFlags);
+		mcaFile.setBlockStatePool(options.getBlockStatePool());
+		if (!options.isMemoryMapped()) {
+			try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+				mcaFile.deserialize(raf, options.getLoadFlags());
+				return mcaFile;
+			}
+		}
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (options.getExecutor() != null) {
+				mcaFile.deserialize(buffer, options.getLoadFlags(), options.getExecutor());
+			} else {
+				mcaFile.deserialize(buffer, options.getLoadFlags(), options.isLazy());
+			}
 			return mcaFile;
 		}
 	}
@@ -110,13 +245,45 @@ public final class MCAUtil {
 	 * @throws IOException If something goes wrong during serialization.
 	 * */
 	public static int write(MCAFile mcaFile, File file, boolean changeLastUpdate) throws IOException {
+		return writeFile(file, raf -> mcaFile.serialize(raf, changeLastUpdate));
+	}
+
+	/**
+	 * @see MCAUtil#write(MCAFile, File, boolean, Executor)
+	 * @param file The file to write to.
+	 * @param mcaFile The data of the MCA file to write.
+	 * @param changeLastUpdate Whether to adjust the timestamps of when the file was saved.
+	 * @param executor The {@code Executor} used to compress the chunks.
+	 * @return The amount of chunks written to the file.
+	 * @throws IOException If something goes wrong during serialization.
+	 * */
+	public static int write(MCAFile mcaFile, String file, boolean changeLastUpdate, Executor executor) throws IOException {
+		return write(mcaFile, new File(file), changeLastUpdate, executor);
+	}
+
+	/**
+	 * Writes an {@code MCAFile} object to disk like {@link MCAUtil#write(MCAFile, File, boolean)},
+	 * but compresses all chunks concurrently using the supplied {@code Executor}.
+	 * The resulting file is identical to the one written by the sequential method.
+	 * @param file The file to write to.
+	 * @param mcaFile The data of the MCA file to write.
+	 * @param changeLastUpdate Whether to adjust the timestamps of when the file was saved.
+	 * @param executor The {@code Executor} used to compress the chunks.
+	 * @return The amount of chunks written to the file.
+	 * @throws IOException If something goes wrong during serialization.
+	 * */
+	public static int write(MCAFile mcaFile, File file, boolean changeLastUpdate, Executor executor) throws IOException {
+		return writeFile(file, raf -> mcaFile.serialize(raf, changeLastUpdate, executor));
+	}
+
+	private static int writeFile(File file, ExceptionFunction<RandomAccessFile, Integer, IOException> serializer) throws IOException {
 		File to = file;
 		if (file.exists()) {
 			to = File.createTempFile(to.getName(), null);
 		}
 		int chunks;
 		try (RandomAccessFile raf = new RandomAccessFile(to, "rw")) {
-			chunks = mcaFile.serialize(raf, changeLastUpdate);
+			chunks = serializer.accept(raf);
 		}
 
 		if (chunks > 0 && to != file) {
@@ -213,6 +380,10 @@ public final class MCAUtil {
 
 	private static final Pattern mcaFilePattern = Pattern.compile("^.*r\\.(?<regionX>-?\\d+)\\.(?<regionZ>-?\\d+)\\.mca$");
 
+	static boolean isMCAFileName(String name) {
+		return mcaFilePattern.matcher(name).matches();
+	}
+
 	public static MCAFile newMCAFile(File file) {
 		Matcher m = mcaFilePattern.matcher(file.getName());
 		if (m.find()) {
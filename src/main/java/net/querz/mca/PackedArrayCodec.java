@@ -0,0 +1,309 @@
+package net.querz.mca;
+
+/**
+ * Reads and writes values of a fixed bit width packed into a {@code long[]}, as used by the BlockStates
+ * of a {@link Section}. There are two layouts:
+ * <ul>
+ *     <li>spanning (before 1.16, data version &lt; 2527): all values are packed into one continuous
+ *     stream of bits, so a value can span two longs.</li>
+ *     <li>non-spanning (1.16 and later): each long contains {@code 64 / bits} values, the remaining
+ *     bits of a long are unused.</li>
+ * </ul>
+ * Instances are cached per bit width and layout and only use integer arithmetic with precomputed
+ * masks, shifts and magic divisors.
+ * */
+public final class PackedArrayCodec {
+
+	/**
+	 * The amount of values stored in a Section.
+	 * */
+	public static final int SIZE = 4096;
+
+	private static final PackedArrayCodec[] SPANNING = new PackedArrayCodec[65];
+	private static final PackedArrayCodec[] NON_SPANNING = new PackedArrayCodec[65];
+	// the bit width for each array length of the non-spanning layout, 0 if no bit width results in this length
+	private static final byte[] NON_SPANNING_BITS = new byte[SIZE + 1];
+
+	static {
+		for (int bits = 64; bits > 0; bits--) {
+			SPANNING[bits] = new PackedArrayCodec(bits, true);
+			NON_SPANNING[bits] = new PackedArrayCodec(bits, false);
+			// iterating downwards, so the smallest bit width wins if multiple widths result in the same length
+			NON_SPANNING_BITS[NON_SPANNING[bits].length] = (byte) bits;
+		}
+	}
+
+	private final int bits;
+	private final boolean spanning;
+	private final long mask;
+	// the mask for values passed as int, which must not be sign extended for more than 32 bits
+	private final long intMask;
+	private final int valuesPerLong;
+	private final long divideMagic;
+	private final int length;
+
+	private PackedArrayCodec(int bits, boolean spanning) {
+		this.bits = bits;
+		this.spanning = spanning;
+		mask = bits == 64 ? -1L : (1L << bits) - 1;
+		intMask = mask & 0xFFFFFFFFL;
+		if (spanning) {
+			valuesPerLong = 0;
+			divideMagic = 0;
+			length = bits * SIZE / 64;
+		} else {
+			valuesPerLong = 64 / bits;
+			// index / valuesPerLong == (index * divideMagic) >>> 32 for all indices below 2^16
+			divideMagic = ((1L << 32) + valuesPerLong - 1) / valuesPerLong;
+			length = (SIZE + valuesPerLong - 1) / valuesPerLong;
+		}
+	}
+
+	/**
+	 * @param bits The amount of bits per value, ranging from 1-64.
+	 * @param spanning Whether values can span two longs, which is the case before 1.16.
+	 * @return The codec for this bit width and layout.
+	 * @throws IllegalArgumentException If {@code bits} is out of range.
+	 * */
+	public static PackedArrayCodec of(int bits, boolean spanning) {
+		if (bits < 1 || bits > 64) {
+			throw new IllegalArgumentException("bits must be between 1 and 64, got " + bits);
+		}
+		return spanning ? SPANNING[bits] : NON_SPANNING[bits];
+	}
+
+	/**
+	 * Determines the codec from the length of a packed array. This is only unambiguous for the spanning layout.
+	 * In the non-spanning layout, several bit widths result in the same length, e.g. 820 longs for 11 and 12 bits,
+	 * and the smallest one is returned. The bit width of a non-spanning array should therefore be derived
+	 * from the size of its palette using {@link PackedArrayCodec#bitsForPaletteSize(int)}, like Minecraft does,
+	 * and passed to {@link PackedArrayCodec#of(int, boolean)}.
+	 * @param length The length of the packed array.
+	 * @param spanning Whether values can span two longs, which is the case before 1.16.
+	 * @return The codec for arrays of this length.
+	 * @throws IllegalArgumentException If no bit width results in this length.
+	 * */
+	public static PackedArrayCodec forLength(int length, boolean spanning) {
+		if (length > 0 && length <= SIZE) {
+			if (spanning) {
+				if ((length & 0x3F) == 0) {
+					return SPANNING[length >> 6];
+				}
+			} else if (NON_SPANNING_BITS[length] != 0) {
+				return NON_SPANNING[NON_SPANNING_BITS[length]];
+			}
+		}
+		throw new IllegalArgumentException("invalid packed array length " + length);
+	}
+
+	/**
+	 * @param paletteSize The size of a palette.
+	 * @return The amount of bits used by Minecraft to store indices of a palette of this size.
+	 * */
+	public static int bitsForPaletteSize(int paletteSize) {
+		return Math.max(32 - Integer.numberOfLeadingZeros(paletteSize - 1), 4);
+	}
+
+	/**
+	 * @return The amount of bits per value.
+	 * */
+	public int getBits() {
+		return bits;
+	}
+
+	/**
+	 * @return Whether values can span two longs.
+	 * */
+	public boolean isSpanning() {
+		return spanning;
+	}
+
+	/**
+	 * @return The length of a packed array holding {@link PackedArrayCodec#SIZE} values.
+	 * */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * @param data The packed array.
+	 * @param index The index of the value, ranging from 0-4095.
+	 * @return The value at this index.
+	 * */
+	public int get(long[] data, int index) {
+		if (spanning) {
+			int bitIndex = index * bits;
+			int longIndex = bitIndex >> 6;
+			int startBit = bitIndex & 0x3F;
+			long value = data[longIndex] >>> startBit;
+			if (startBit + bits > 64) {
+				value |= data[longIndex + 1] << 64 - startBit;
+			}
+			return (int) (value & mask);
+		}
+		int longIndex = (int) (index * divideMagic >>> 32);
+		int startBit = (index - longIndex * valuesPerLong) * bits;
+		return (int) (data[longIndex] >>> startBit & mask);
+	}
+
+	/**
+	 * @param data The packed array.
+	 * @param index The index of the value, ranging from 0-4095.
+	 * @param value The value to set, only the lowest {@code bits} bits are used.
+	 * */
+	public void set(long[] data, int index, int value) {
+		long v = value & intMask;
+		if (spanning) {
+			int bitIndex = index * bits;
+			int longIndex = bitIndex >> 6;
+			int startBit = bitIndex & 0x3F;
+			data[longIndex] = data[longIndex] & ~(mask << startBit) | v << startBit;
+			if (startBit + bits > 64) {
+				int shift = 64 - startBit;
+				data[longIndex + 1] = data[longIndex + 1] & ~(mask >>> shift) | v >>> shift;
+			}
+			return;
+		}
+		int longIndex = (int) (index * divideMagic >>> 32);
+		int startBit = (index - longIndex * valuesPerLong) * bits;
+		data[longIndex] = data[longIndex] & ~(mask << startBit) | v << startBit;
+	}
+
+	/**
+	 * Unpacks all values at once.
+	 * @param data The packed array.
+	 * @param out The array receiving the {@link PackedArrayCodec#SIZE} values.
+	 * */
+	public void unpackAll(long[] data, int[] out) {
+		if (spanning) {
+			long word = data[0];
+			int bitIndex = 0, l = 1;
+			for (int i = 0; i < SIZE; i++) {
+				long v = word >>> bitIndex;
+				bitIndex += bits;
+				if (bitIndex >= 64) {
+					bitIndex -= 64;
+					word = l < length ? data[l++] : 0;
+					if (bitIndex > 0) {
+						v |= word << bits - bitIndex;
+					}
+				}
+				out[i] = (int) (v & mask);
+			}
+			return;
+		}
+		int i = 0;
+		int fullLongs = SIZE / valuesPerLong;
+		for (int l = 0; l < fullLongs; l++) {
+			long word = data[l];
+			for (int j = 0; j < valuesPerLong; j++) {
+				out[i++] = (int) (word & mask);
+				word >>>= bits;
+			}
+		}
+		// the last long is only partially used if 4096 is not a multiple of valuesPerLong
+		for (long word = i < SIZE ? data[fullLongs] : 0; i < SIZE; word >>>= bits) {
+			out[i++] = (int) (word & mask);
+		}
+	}
+
+	/**
+	 * Unpacks all values at once.
+	 * @param data The packed array.
+	 * @param out The array receiving the {@link PackedArrayCodec#SIZE} values.
+	 * */
+	public void unpackAll(long[] data, short[] out) {
+		if (spanning) {
+			long word = data[0];
+			int bitIndex = 0, l = 1;
+			for (int i = 0; i < SIZE; i++) {
+				long v = word >>> bitIndex;
+				bitIndex += bits;
+				if (bitIndex >= 64) {
+					bitIndex -= 64;
+					word = l < length ? data[l++] : 0;
+					if (bitIndex > 0) {
+						v |= word << bits - bitIndex;
+					}
+				}
+				out[i] = (short) (v & mask);
+			}
+			return;
+		}
+		int i = 0;
+		int fullLongs = SIZE / valuesPerLong;
+		for (int l = 0; l < fullLongs; l++) {
+			long word = data[l];
+			for (int j = 0; j < valuesPerLong; j++) {
+				out[i++] = (short) (word & mask);
+				word >>>= bits;
+			}
+		}
+		// the last long is only partially used if 4096 is not a multiple of valuesPerLong
+		for (long word = i < SIZE ? data[fullLongs] : 0; i < SIZE; word >>>= bits) {
+			out[i++] = (short) (word & mask);
+		}
+	}
+
+	/**
+	 * Packs all values at once, overwriting all bits of the packed array.
+	 * @param values The {@link PackedArrayCodec#SIZE} values.
+	 * @param out The packed array, which must have a length of {@link PackedArrayCodec#getLength()}.
+	 * */
+	public void packAll(int[] values, long[] out) {
+		if (spanning) {
+			long word = 0;
+			int bitIndex = 0, l = 0;
+			for (int i = 0; i < SIZE; i++) {
+				long v = values[i] & intMask;
+				word |= v << bitIndex;
+				bitIndex += bits;
+				if (bitIndex >= 64) {
+					out[l++] = word;
+					bitIndex -= 64;
+					word = bitIndex == 0 ? 0 : v >>> bits - bitIndex;
+				}
+			}
+			return;
+		}
+		int i = 0;
+		for (int l = 0; l < length; l++) {
+			long word = 0;
+			for (int j = 0; j < valuesPerLong && i < SIZE; j++) {
+				word |= (values[i++] & intMask) << j * bits;
+			}
+			out[l] = word;
+		}
+	}
+
+	/**
+	 * Packs all values at once, overwriting all bits of the packed array.
+	 * @param values The {@link PackedArrayCodec#SIZE} values.
+	 * @param out The packed array, which must have a length of {@link PackedArrayCodec#getLength()}.
+	 * */
+	public void packAll(short[] values, long[] out) {
+		if (spanning) {
+			long word = 0;
+			int bitIndex = 0, l = 0;
+			for (int i = 0; i < SIZE; i++) {
+				long v = values[i] & 0xFFFF & mask;
+				word |= v << bitIndex;
+				bitIndex += bits;
+				if (bitIndex >= 64) {
+					out[l++] = word;
+					bitIndex -= 64;
+					word = bitIndex == 0 ? 0 : v >>> bits - bitIndex;
+				}
+			}
+			return;
+		}
+		int i = 0;
+		for (int l = 0; l < length; l++) {
+			long word = 0;
+			for (int j = 0; j < valuesPerLong && i < SIZE; j++) {
+				word |= (values[i++] & 0xFFFF & mask) << j * bits;
+			}
+			out[l] = word;
+		}
+	}
+}
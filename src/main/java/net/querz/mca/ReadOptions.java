@@ -0,0 +1,84 @@
+package net.querz.mca;
+
+import java.util.concurrent.Executor;
+
+/**
+ * The options used by {@link MCAUtil#read(java.io.File, ReadOptions)} to read an MCA file.
+ * All options can be combined, except that a file cannot be read lazily and in parallel at the same time.
+ * Reading lazily or in parallel always memory maps the file.
+ * */
+public class ReadOptions {
+
+	private long loadFlags = LoadFlags.ALL_DATA;
+	private boolean memoryMapped;
+	private boolean lazy;
+	private Executor executor;
+	private BlockStatePool blockStatePool;
+
+	public long getLoadFlags() {
+		return loadFlags;
+	}
+
+	/**
+	 * Sets the data that is loaded for each chunk. Defaults to {@link LoadFlags#ALL_DATA}.
+	 * @param loadFlags A logical or of {@link LoadFlags} constants.
+	 * */
+	public void setLoadFlags(long loadFlags) {
+		this.loadFlags = loadFlags;
+	}
+
+	/**
+	 * @return Whether the file is memory mapped, which is always the case when reading lazily or in parallel.
+	 * */
+	public boolean isMemoryMapped() {
+		return memoryMapped || lazy || executor != null;
+	}
+
+	/**
+	 * Sets whether the file is memory mapped instead of being read through a {@code RandomAccessFile}.
+	 * @see MCAUtil#read(java.io.File, long, boolean)
+	 * @param memoryMapped Whether to memory map the file.
+	 * */
+	public void setMemoryMapped(boolean memoryMapped) {
+		this.memoryMapped = memoryMapped;
+	}
+
+	public boolean isLazy() {
+		return lazy;
+	}
+
+	/**
+	 * Sets whether each chunk is only loaded when it is accessed for the first time.
+	 * @see MCAUtil#readLazy(java.io.File, long)
+	 * @param lazy Whether to load the chunks lazily.
+	 * */
+	public void setLazy(boolean lazy) {
+		this.lazy = lazy;
+	}
+
+	public Executor getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * Sets the {@code Executor} used to decompress and parse the chunks in parallel.
+	 * @see MCAUtil#read(java.io.File, long, Executor)
+	 * @param executor The {@code Executor}, or {@code null} to load the chunks on the reading thread.
+	 * */
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	public BlockStatePool getBlockStatePool() {
+		return blockStatePool;
+	}
+
+	/**
+	 * Sets the pool of block states used for the palettes of all sections.
+	 * @see MCAFile#setBlockStatePool(BlockStatePool)
+	 * @param blockStatePool The pool of block states, or {@code null} to not pool any block states.
+	 * */
+	public void setBlockStatePool(BlockStatePool blockStatePool) {
+		this.blockStatePool = blockStatePool;
+	}
+}
@@ -0,0 +1,338 @@
+package net.querz.mca;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Applies a {@link ChunkVisitor} to every chunk of all region files (r.x.z.mca) in a directory.
+ * Region files are processed concurrently by a fixed amount of worker threads. The amount of regions
+ * that are loaded at the same time is bounded, so the memory usage does not depend on the size of the world.
+ * Modified regions can optionally be written back, replacing the original file atomically.
+ * */
+public class RegionProcessor {
+
+	/**
+	 * Visits a single chunk of a region file.
+	 * */
+	@FunctionalInterface
+	public interface ChunkVisitor {
+
+		/**
+		 * Called for every existing chunk in a region file. Chunks of different region files
+		 * are visited concurrently, so implementations must be thread safe.
+		 * @param chunk The chunk.
+		 * @param chunkX The absolute x-coordinate of the chunk.
+		 * @param chunkZ The absolute z-coordinate of the chunk.
+		 * @return Whether the chunk has been modified and the region file should be written back.
+		 * @throws IOException To abort processing.
+		 * */
+		boolean visit(Chunk chunk, int chunkX, int chunkZ) throws IOException;
+	}
+
+	/**
+	 * The result of {@link RegionProcessor#process(ChunkVisitor)}.
+	 * */
+	public static class Statistics {
+
+		private final long regions, chunks, bytesRead, regionsWritten, nanos;
+
+		Statistics(long regions, long chunks, long bytesRead, long regionsWritten, long nanos) {
+			this.regions = regions;
+			this.chunks = chunks;
+			this.bytesRead = bytesRead;
+			this.regionsWritten = regionsWritten;
+			this.nanos = nanos;
+		}
+
+		/**
+		 * @return The amount of processed region files.
+		 * */
+		public long getRegions() {
+			return regions;
+		}
+
+		/**
+		 * @return The amount of visited chunks.
+		 * */
+		public long getChunks() {
+			return chunks;
+		}
+
+		/**
+		 * @return The total size of all processed region files in bytes.
+		 * */
+		public long getBytesRead() {
+			return bytesRead;
+		}
+
+		/**
+		 * @return The amount of region files that have been written back.
+		 * */
+		public long getRegionsWritten() {
+			return regionsWritten;
+		}
+
+		/**
+		 * @return The time it took to process all region files in nanoseconds.
+		 * */
+		public long getNanos() {
+			return nanos;
+		}
+
+		/**
+		 * @return The amount of visited chunks per second.
+		 * */
+		public double getChunksPerSecond() {
+			return nanos == 0 ? 0 : chunks * 1e9 / nanos;
+		}
+
+		/**
+		 * @return The amount of processed megabytes (2^20 bytes) per second.
+		 * */
+		public double getMegabytesPerSecond() {
+			return nanos == 0 ? 0 : bytesRead * 1e9 / nanos / (1 << 20);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d regions, %d chunks, %d regions written in %.3fs (%.1f chunks/s, %.2f MB/s)",
+					regions, chunks, regionsWritten, nanos / 1e9, getChunksPerSecond(), getMegabytesPerSecond());
+		}
+	}
+
+	private final File directory;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private int maxPendingRegions = threads;
+	private long loadFlags = LoadFlags.ALL_DATA;
+	private boolean writeBack;
+	private BlockStatePool blockStatePool;
+
+	/**
+	 * @param directory The directory containing the region files, e.g. the "region" directory of a world.
+	 * */
+	public RegionProcessor(File directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * @see RegionProcessor#RegionProcessor(File)
+	 * @param directory The directory containing the region files.
+	 * */
+	public RegionProcessor(String directory) {
+		this(new File(directory));
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Sets the amount of worker threads. Defaults to the amount of available processors.
+	 * @param threads The amount of worker threads.
+	 * @throws IllegalArgumentException If {@code threads} is smaller than 1.
+	 * */
+	public void setThreads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("threads must be at least 1, got " + threads);
+		}
+		this.threads = threads;
+	}
+
+	public int getMaxPendingRegions() {
+		return maxPendingRegions;
+	}
+
+	/**
+	 * Sets the maximum amount of region files that are loaded or waiting for a worker at the same time.
+	 * Defaults to the amount of available processors. Values smaller than the amount of threads
+	 * limit the effective amount of threads.
+	 * @param maxPendingRegions The maximum amount of region files held in memory.
+	 * @throws IllegalArgumentException If {@code maxPendingRegions} is smaller than 1.
+	 * */
+	public void setMaxPendingRegions(int maxPendingRegions) {
+		if (maxPendingRegions < 1) {
+			throw new IllegalArgumentException("maxPendingRegions must be at least 1, got " + maxPendingRegions);
+		}
+		this.maxPendingRegions = maxPendingRegions;
+	}
+
+	public long getLoadFlags() {
+		return loadFlags;
+	}
+
+	/**
+	 * Sets the data that is loaded for each chunk. Defaults to {@link LoadFlags#ALL_DATA}.
+	 * Partially loaded chunks cannot be written back, so only {@link LoadFlags#ALL_DATA} or
+	 * {@link LoadFlags#RAW} can be combined with {@link RegionProcessor#setWriteBack(boolean)}.
+	 * @param loadFlags A logical or of {@link LoadFlags} constants.
+	 * */
+	public void setLoadFlags(long loadFlags) {
+		this.loadFlags = loadFlags;
+	}
+
+	public boolean isWriteBack() {
+		return writeBack;
+	}
+
+	/**
+	 * Sets whether region files containing chunks that have been modified by the visitor should be
+	 * written back. The new file is written next to the original file and then moved over it.
+	 * Requires all data of the chunks to be loaded, see {@link RegionProcessor#setLoadFlags(long)}.
+	 * @param writeBack Whether to write modified region files back.
+	 * */
+	public void setWriteBack(boolean writeBack) {
+		this.writeBack = writeBack;
+	}
+
+	public BlockStatePool getBlockStatePool() {
+		return blockStatePool;
+	}
+
+	/**
+	 * Sets the pool of block states shared by the palettes of all processed regions.
+	 * @see BlockStatePool
+	 * @param blockStatePool The pool of block states, or {@code null} to not pool any block states.
+	 * */
+	public void setBlockStatePool(BlockStatePool blockStatePool) {
+		this.blockStatePool = blockStatePool;
+	}
+
+	/**
+	 * Processes all region files in the directory. If processing a region file fails,
+	 * no further region files are processed and the first exception is rethrown
+	 * after all running workers have finished.
+	 * @param visitor The visitor to apply to every chunk.
+	 * @return The statistics of this run.
+	 * @throws IOException If the directory could not be read or processing a region file failed.
+	 * @throws IllegalStateException If modified regions should be written back, but the chunks are only loaded partially.
+	 * */
+	public Statistics process(ChunkVisitor visitor) throws IOException {
+		if (writeBack && (loadFlags & LoadFlags.ALL_DATA) != LoadFlags.ALL_DATA && (loadFlags & LoadFlags.RAW) == 0) {
+			throw new IllegalStateException("partially loaded chunks cannot be written back, load ALL_DATA or RAW instead");
+		}
+		List<Path> files = listRegionFiles();
+		AtomicLong regions = new AtomicLong();
+		AtomicLong chunks = new AtomicLong();
+		AtomicLong bytesRead = new AtomicLong();
+		AtomicLong regionsWritten = new AtomicLong();
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+
+		long start = System.nanoTime();
+		Semaphore pending = new Semaphore(maxPendingRegions);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			for (Path file : files) {
+				pending.acquire();
+				if (failure.get() != null) {
+					pending.release();
+					break;
+				}
+				executor.execute(() -> {
+					try {
+						bytesRead.addAndGet(Files.size(file));
+						long[] visited = new long[1];
+						if (processRegion(file.toFile(), visitor, visited)) {
+							regionsWritten.incrementAndGet();
+						}
+						chunks.addAndGet(visited[0]);
+						regions.incrementAndGet();
+					} catch (Throwable t) {
+						failure.compareAndSet(null, t);
+					} finally {
+						pending.release();
+					}
+				});
+			}
+			executor.shutdown();
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException ex) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+			InterruptedIOException iex = new InterruptedIOException("interrupted while processing region files");
+			iex.initCause(ex);
+			throw iex;
+		}
+
+		Throwable t = failure.get();
+		if (t instanceof IOException) {
+			throw (IOException) t;
+		} else if (t instanceof RuntimeException) {
+			throw (RuntimeException) t;
+		} else if (t instanceof Error) {
+			throw (Error) t;
+		}
+		return new Statistics(regions.get(), chunks.get(), bytesRead.get(), regionsWritten.get(), System.nanoTime() - start);
+	}
+
+	private List<Path> listRegionFiles() throws IOException {
+		List<Path> files = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory.toPath(), "r.*.*.mca")) {
+			for (Path file : stream) {
+				if (Files.isRegularFile(file) && MCAUtil.isMCAFileName(file.getFileName().toString())) {
+					files.add(file);
+				}
+			}
+		}
+		files.sort(null);
+		return files;
+	}
+
+	private boolean processRegion(File file, ChunkVisitor visitor, long[] visited) throws IOException {
+		ReadOptions options = new ReadOptions();
+		options.setLoadFlags(loadFlags);
+		options.setBlockStatePool(blockStatePool);
+		MCAFile mcaFile = MCAUtil.read(file, options);
+		int chunkXOffset = MCAUtil.regionToChunk(mcaFile.getRegionX());
+		int chunkZOffset = MCAUtil.regionToChunk(mcaFile.getRegionZ());
+		boolean modified = false;
+		for (int i = 0; i < 1024; i++) {
+			Chunk chunk = mcaFile.getChunk(i);
+			if (chunk == null) {
+				continue;
+			}
+			visited[0]++;
+			modified |= visitor.visit(chunk, chunkXOffset + (i & 0x1F), chunkZOffset + (i >> 5));
+		}
+		if (!modified || !writeBack) {
+			return false;
+		}
+
+		File tmp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+		try {
+			int written;
+			try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw")) {
+				written = mcaFile.serialize(raf, false);
+			}
+			if (written == 0) {
+				return false;
+			}
+			try {
+				Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException ex) {
+				Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			return true;
+		} finally {
+			Files.deleteIfExists(tmp.toPath());
+		}
+	}
+}
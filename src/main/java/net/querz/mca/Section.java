@@ -5,19 +5,31 @@ import net.querz.nbt.tag.ByteArrayTag;
 import net.querz.nbt.tag.CompoundTag;
 import net.querz.nbt.tag.ListTag;
 import net.querz.nbt.tag.LongArrayTag;
-import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 public class Section implements Comparable<Section> {
 
 	private CompoundTag data;
-	private Map<String, List<PaletteIndex>> valueIndexedPalette = new HashMap<>();
+	// the index of each block state in the palette, by instance and by structure using the hash code
+	// the block state had when it was added, see PaletteKey
+	private Map<CompoundTag, Integer> paletteInstances = new IdentityHashMap<>();
+	private Map<PaletteKey, Integer> paletteIndices = new HashMap<>();
+	// bumped by markPaletteModified(), the index is rebuilt on the next lookup if it is outdated
+	private int paletteModCount, indexedModCount;
 	private ListTag<CompoundTag> palette;
 	private byte[] blockLight;
 	private long[] blockStates;
+	// the bits per block of blockStates in the non-spanning layout, derived from the palette size like Minecraft does,
+	// because several bit widths result in the same array length. It is kept while the palette grows until the
+	// BlockStates are repacked, 0 if unknown
+	private int blockStateBits;
+	// palette indices of all blocks in unpacked mode, blockStates is then only a cache that is null when outdated
+	private short[] unpacked;
 	private byte[] skyLight;
 	private int height;
 	int dataVersion;
@@ -27,6 +39,18 @@ public class Section implements Comparable<Section> {
 	}
 
 	public Section(CompoundTag sectionRoot, int dataVersion, long loadFlags) {
+		this(sectionRoot, dataVersion, loadFlags, null);
+	}
+
+	/**
+	 * Creates a Section from its raw data, replacing all palette entries with the equal block states
+	 * of a {@link BlockStatePool}.
+	 * @param sectionRoot The raw data of the Section.
+	 * @param dataVersion The data version of the chunk containing the Section.
+	 * @param loadFlags A logical or of {@link LoadFlags} constants indicating what data should be loaded
+	 * @param blockStatePool The pool of block states, or {@code null} to keep the palette entries as they are.
+	 * */
+	public Section(CompoundTag sectionRoot, int dataVersion, long loadFlags, BlockStatePool blockStatePool) {
 		data = sectionRoot;
 		this.dataVersion = dataVersion;
 		height = sectionRoot.getNumber("Y").byteValue();
@@ -38,6 +62,9 @@ public class Section implements Comparable<Section> {
 		palette = rawPalette.asCompoundTagList();
 		for (int i = 0; i < palette.size(); i++) {
 			CompoundTag data = palette.get(i);
+			if (blockStatePool != null) {
+				palette.set(i, data = blockStatePool.intern(data));
+			}
 			putValueIndexedPalette(data, i);
 		}
 
@@ -50,6 +77,7 @@ public class Section implements Comparable<Section> {
 		}
 		if ((loadFlags & BLOCK_STATES) != 0) {
 			this.blockStates = blockStates != null ? blockStates.getValue() : null;
+			blockStateBits = PackedArrayCodec.bitsForPaletteSize(palette.size());
 		}
 		if ((loadFlags & SKY_LIGHT) != 0) {
 			this.skyLight = skyLight != null ? skyLight.getValue() : null;
@@ -59,34 +87,84 @@ public class Section implements Comparable<Section> {
 	Section() {}
 
 	void putValueIndexedPalette(CompoundTag data, int index) {
-		PaletteIndex leaf = new PaletteIndex(data, index);
-		String name = data.getString("Name");
-		List<PaletteIndex> leaves = valueIndexedPalette.get(name);
-		if (leaves == null) {
-			leaves = new ArrayList<>(1);
-			leaves.add(leaf);
-			valueIndexedPalette.put(name, leaves);
-		} else {
-			for (PaletteIndex pal : leaves) {
-				if (pal.data.equals(data)) {
-					return;
-				}
-			}
-			leaves.add(leaf);
+		// duplicates in the palette are looked up as the first equal entry, regardless of the instance
+		Integer first = paletteIndices.putIfAbsent(new PaletteKey(data), index);
+		paletteInstances.putIfAbsent(data, first == null ? index : first);
+	}
+
+	/**
+	 * Looks up the index of a block state in the palette of this Section. Palette entries are found by instance
+	 * first, so looking up a block state returned by this Section does not calculate its hash code. Other block
+	 * states are found by their hash code, which is calculated once when an entry is added to the palette,
+	 * so the lookup takes constant time regardless of the size of the palette. Palette entries that are modified
+	 * in place after they were added to the palette are only found by their new value after
+	 * {@link Section#markPaletteModified()} or {@link Section#cleanupPaletteAndBlockStates()}.
+	 * @param blockState The block state to look up.
+	 * @return The index of the block state in the palette, or {@code -1} if the palette does not contain it.
+	 * */
+	public int getPaletteIndex(CompoundTag blockState) {
+		if (paletteModCount != indexedModCount && palette != null) {
+			reindexPalette();
+		}
+		Integer index = paletteInstances.get(blockState);
+		if (index == null && blockState != null) {
+			index = paletteIndices.get(new PaletteKey(blockState));
 		}
+		return index == null ? -1 : index;
 	}
 
-	PaletteIndex getValueIndexedPalette(CompoundTag data) {
-		List<PaletteIndex> leaves = valueIndexedPalette.get(data.getString("Name"));
-		if (leaves == null) {
-			return null;
+	/**
+	 * Marks the palette of this Section as modified after palette entries have been changed in place,
+	 * e.g. block states returned by {@link Section#getBlockStateAt(int, int, int)} or {@link Section#getPalette()}.
+	 * The palette is indexed again on the next lookup, so that
+	 * {@link Section#setBlockStateAt(int, int, int, CompoundTag, boolean)} finds the modified entries
+	 * instead of adding duplicates of them.
+	 * */
+	public void markPaletteModified() {
+		paletteModCount++;
+	}
+
+	private void reindexPalette() {
+		paletteInstances = new IdentityHashMap<>(palette.size());
+		paletteIndices = new HashMap<>(palette.size() * 4 / 3 + 1);
+		for (int i = 0; i < palette.size(); i++) {
+			putValueIndexedPalette(palette.get(i), i);
 		}
-		for (PaletteIndex leaf : leaves) {
-			if (leaf.data.equals(data)) {
-				return leaf;
-			}
+		indexedModCount = paletteModCount;
+	}
+
+	// a palette entry with the hash code it had when it was added to the palette
+	private static final class PaletteKey {
+
+		private final CompoundTag blockState;
+		private final int hash;
+
+		PaletteKey(CompoundTag blockState) {
+			this.blockState = blockState;
+			hash = blockState.hashCode();
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
 		}
-		return null;
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof PaletteKey && hash == ((PaletteKey) other).hash
+					&& blockState.equals(((PaletteKey) other).blockState);
+		}
+	}
+
+	/**
+	 * Returns the instance of a block state that is used by the palette of this Section, adding the block state
+	 * to the palette if it does not contain an equal block state yet. Using the returned instance instead of
+	 * equal copies avoids keeping duplicate block states in memory.
+	 * @param blockState The block state.
+	 * @return The palette entry equal to {@code blockState}.
+	 * */
+	public CompoundTag intern(CompoundTag blockState) {
+		return palette.get(addToPalette(blockState));
 	}
 
 	@Override
@@ -97,17 +175,6 @@ public class Section implements Comparable<Section> {
 		return Integer.compare(height, o.height);
 	}
 
-	private static class PaletteIndex {
-
-		CompoundTag data;
-		int index;
-
-		PaletteIndex(CompoundTag data, int index) {
-			this.data = data;
-			this.index = index;
-		}
-	}
-
 	/**
 	 * Checks whether the data of this Section is empty.
 	 * @return true if empty
@@ -157,6 +224,14 @@ public class Section implements Comparable<Section> {
 	public void setBlockStateAt(int blockX, int blockY, int blockZ, CompoundTag state, boolean cleanup) {
 		int paletteSizeBefore = palette.size();
 		int paletteIndex = addToPalette(state);
+		if (unpacked != null) {
+			unpacked[getBlockIndex(blockX, blockY, blockZ)] = (short) paletteIndex;
+			blockStates = null;
+			if (cleanup) {
+				cleanupPaletteAndBlockStates();
+			}
+			return;
+		}
 		//power of 2 --> bits must increase, but only if the palette size changed
 		//otherwise we would attempt to update all blockstates and the entire palette
 		//every time an existing blockstate was added while having 2^x blockstates in the palette
@@ -178,25 +253,10 @@ public class Section implements Comparable<Section> {
 	 * @return The index of the block data in the palette.
 	 * */
 	public int getPaletteIndex(int blockStateIndex) {
-		int bits = blockStates.length >> 6;
-
-		if (dataVersion < 2527) {
-			double blockStatesIndex = blockStateIndex / (4096D / blockStates.length);
-			int longIndex = (int) blockStatesIndex;
-			int startBit = (int) ((blockStatesIndex - Math.floor(blockStatesIndex)) * 64D);
-			if (startBit + bits > 64) {
-				long prev = bitRange(blockStates[longIndex], startBit, 64);
-				long next = bitRange(blockStates[longIndex + 1], 0, startBit + bits - 64);
-				return (int) ((next << 64 - startBit) + prev);
-			} else {
-				return (int) bitRange(blockStates[longIndex], startBit, startBit + bits);
-			}
-		} else {
-			int indicesPerLong = (int) (64D / bits);
-			int blockStatesIndex = blockStateIndex / indicesPerLong;
-			int startBit = (blockStateIndex % indicesPerLong) * bits;
-			return (int) bitRange(blockStates[blockStatesIndex], startBit, startBit + bits);
+		if (unpacked != null) {
+			return unpacked[blockStateIndex];
 		}
+		return codec(blockStates).get(blockStates, blockStateIndex);
 	}
 
 	/**
@@ -206,24 +266,20 @@ public class Section implements Comparable<Section> {
 	 * @param blockStates The block states to be updated.
 	 * */
 	public void setPaletteIndex(int blockIndex, int paletteIndex, long[] blockStates) {
-		int bits = blockStates.length >> 6;
+		codec(blockStates).set(blockStates, blockIndex, paletteIndex);
+	}
 
+	private PackedArrayCodec codec(long[] blockStates) {
 		if (dataVersion < 2527) {
-			double blockStatesIndex = blockIndex / (4096D / blockStates.length);
-			int longIndex = (int) blockStatesIndex;
-			int startBit = (int) ((blockStatesIndex - Math.floor(longIndex)) * 64D);
-			if (startBit + bits > 64) {
-				blockStates[longIndex] = updateBits(blockStates[longIndex], paletteIndex, startBit, 64);
-				blockStates[longIndex + 1] = updateBits(blockStates[longIndex + 1], paletteIndex, startBit - 64, startBit + bits - 64);
-			} else {
-				blockStates[longIndex] = updateBits(blockStates[longIndex], paletteIndex, startBit, startBit + bits);
+			return PackedArrayCodec.forLength(blockStates.length, true);
+		}
+		if (blockStateBits != 0) {
+			PackedArrayCodec codec = PackedArrayCodec.of(blockStateBits, false);
+			if (codec.getLength() == blockStates.length) {
+				return codec;
 			}
-		} else {
-			int indicesPerLong = (int) (64D / bits);
-			int blockStatesIndex = blockIndex / indicesPerLong;
-			int startBit = (blockIndex % indicesPerLong) * bits;
-			blockStates[blockStatesIndex] = updateBits(blockStates[blockStatesIndex], paletteIndex, startBit, startBit + bits);
 		}
+		return PackedArrayCodec.forLength(blockStates.length, false);
 	}
 
 	/**
@@ -235,9 +291,9 @@ public class Section implements Comparable<Section> {
 	}
 
 	int addToPalette(CompoundTag data) {
-		PaletteIndex index;
-		if ((index = getValueIndexedPalette(data)) != null) {
-			return index.index;
+		int index = getPaletteIndex(data);
+		if (index != -1) {
+			return index;
 		}
 		palette.add(data);
 		putValueIndexedPalette(data, palette.size() - 1);
@@ -248,81 +304,83 @@ public class Section implements Comparable<Section> {
 		return (blockY & 0xF) * 256 + (blockZ & 0xF) * 16 + (blockX & 0xF);
 	}
 
-	static long updateBits(long n, long m, int i, int j) {
-		//replace i to j in n with j - i bits of m
-		long mShifted = i > 0 ? (m & ((1L << j - i) - 1)) << i : (m & ((1L << j - i) - 1)) >>> -i;
-		return ((n & ((j > 63 ? 0 : (~0L << j)) | (i < 0 ? 0 : ((1L << i) - 1L)))) | mShifted);
-	}
-
-	static long bitRange(long value, int from, int to) {
-		int waste = 64 - to;
-		return (value << waste) >>> (waste + from);
-	}
-
 	/**
 	 * This method recalculates the palette and its indices.
 	 * This should only be used moderately to avoid unnecessary recalculation of the palette indices.
 	 * Recalculating the Palette should only be executed once right before saving the Section to file.
+	 * Sections do not share any state, so different Sections can be cleaned up in parallel,
+	 * see {@link MCAFile#cleanupPalettesAndBlockStatesInParallel(Executor)}.
 	 */
 	public void cleanupPaletteAndBlockStates() {
-		if (blockStates != null) {
-			Map<Integer, Integer> oldToNewMapping = cleanupPalette();
-			adjustBlockStateBits(oldToNewMapping, blockStates);
-		}
-	}
-
-	private Map<Integer, Integer> cleanupPalette() {
-		//create index - palette mapping
-		Map<Integer, Integer> allIndices = new HashMap<>();
-		for (int i = 0; i < 4096; i++) {
-			int paletteIndex = getPaletteIndex(i);
-			allIndices.put(paletteIndex, paletteIndex);
-		}
-		//delete unused blocks from palette
-		//start at index 1 because we need to keep minecraft:air
-		int index = 1;
-		valueIndexedPalette = new HashMap<>(valueIndexedPalette.size());
-		putValueIndexedPalette(palette.get(0), 0);
-		for (int i = 1; i < palette.size(); i++) {
-			if (!allIndices.containsKey(index)) {
-				palette.remove(i);
-				i--;
-			} else {
-				putValueIndexedPalette(palette.get(i), i);
-				allIndices.put(index, i);
+		if (unpacked != null) {
+			BitSet used = new BitSet(palette.size());
+			for (int i = 0; i < 4096; i++) {
+				used.set(unpacked[i]);
+			}
+			int[] oldToNewMapping = cleanupPalette(used);
+			for (int i = 0; i < 4096; i++) {
+				unpacked[i] = (short) oldToNewMapping[unpacked[i]];
 			}
-			index++;
+			blockStates = null;
+		} else if (blockStates != null) {
+			int[] indices = new int[4096];
+			codec(blockStates).unpackAll(blockStates, indices);
+			BitSet used = new BitSet(palette.size());
+			for (int i = 0; i < 4096; i++) {
+				used.set(indices[i]);
+			}
+			int[] oldToNewMapping = cleanupPalette(used);
+			for (int i = 0; i < 4096; i++) {
+				indices[i] = oldToNewMapping[indices[i]];
+			}
+			packBlockStates(indices, blockStates);
 		}
+	}
 
-		return allIndices;
+	private int[] cleanupPalette(BitSet used) {
+		//delete unused blocks from palette by moving all used blocks to the front in a single pass
+		//index 0 is always kept because we need to keep minecraft:air
+		used.set(0);
+		int[] oldToNewMapping = new int[palette.size()];
+		paletteInstances = new IdentityHashMap<>(used.cardinality());
+		paletteIndices = new HashMap<>(used.cardinality() * 4 / 3 + 1);
+		indexedModCount = paletteModCount;
+		int size = 0;
+		for (int i = used.nextSetBit(0); i >= 0 && i < oldToNewMapping.length; i = used.nextSetBit(i + 1)) {
+			CompoundTag data = palette.get(i);
+			if (i != size) {
+				palette.set(size, data);
+			}
+			putValueIndexedPalette(data, size);
+			oldToNewMapping[i] = size++;
+		}
+		for (int i = palette.size() - 1; i >= size; i--) {
+			palette.remove(i);
+		}
+		return oldToNewMapping;
 	}
 
-	void adjustBlockStateBits(Map<Integer, Integer> oldToNewMapping, long[] blockStates) {
+	void adjustBlockStateBits(int[] oldToNewMapping, long[] blockStates) {
 		//increases or decreases the amount of bits used per BlockState
 		//based on the size of the palette. oldToNewMapping can be used to update indices
-		//if the palette had been cleaned up before using MCAFile#cleanupPalette().
-
-		int newBits = 32 - Integer.numberOfLeadingZeros(palette.size() - 1);
-		newBits = Math.max(newBits, 4);
-
-		long[] newBlockStates;
-
-		if (dataVersion < 2527) {
-			newBlockStates = newBits == blockStates.length / 64 ? blockStates : new long[newBits * 64];
-		} else {
-			int newLength = (int) Math.ceil(4096D / (Math.floor(64D / newBits)));
-			newBlockStates = newBits == blockStates.length / 64 ? blockStates : new long[newLength];
-		}
+		//if the palette had been cleaned up before.
+		int[] indices = new int[4096];
+		codec(blockStates).unpackAll(blockStates, indices);
 		if (oldToNewMapping != null) {
 			for (int i = 0; i < 4096; i++) {
-				setPaletteIndex(i, oldToNewMapping.get(getPaletteIndex(i)), newBlockStates);
-			}
-		} else {
-			for (int i = 0; i < 4096; i++) {
-				setPaletteIndex(i, getPaletteIndex(i), newBlockStates);
+				indices[i] = oldToNewMapping[indices[i]];
 			}
 		}
+		packBlockStates(indices, blockStates);
+	}
+
+	private void packBlockStates(int[] indices, long[] blockStates) {
+		PackedArrayCodec oldCodec = codec(blockStates);
+		PackedArrayCodec newCodec = PackedArrayCodec.of(PackedArrayCodec.bitsForPaletteSize(palette.size()), dataVersion < 2527);
+		long[] newBlockStates = newCodec == oldCodec ? blockStates : new long[newCodec.getLength()];
+		newCodec.packAll(indices, newBlockStates);
 		this.blockStates = newBlockStates;
+		blockStateBits = newCodec.getBits();
 	}
 
 	/**
@@ -348,6 +406,9 @@ public class Section implements Comparable<Section> {
 	 * @return The indices of the block states of this Section.
 	 */
 	public long[] getBlockStates() {
+		if (unpacked != null && blockStates == null) {
+			blockStates = pack(unpacked);
+		}
 		return blockStates;
 	}
 
@@ -364,6 +425,48 @@ public class Section implements Comparable<Section> {
 			throw new IllegalArgumentException("BlockStates must have a length > 255 and < 4097 and must be divisible by 64");
 		}
 		this.blockStates = blockStates;
+		blockStateBits = palette == null ? 0 : PackedArrayCodec.bitsForPaletteSize(palette.size());
+		if (unpacked != null) {
+			unpacked = null;
+			setUnpacked(true);
+		}
+	}
+
+	/**
+	 * @return Whether this Section stores the palette indices of its blocks unpacked.
+	 * @see Section#setUnpacked(boolean)
+	 */
+	public boolean isUnpacked() {
+		return unpacked != null;
+	}
+
+	/**
+	 * Switches between the packed and the unpacked storage of the palette indices of the blocks of this Section.
+	 * In unpacked mode, each palette index is stored in its own array element, which makes reading and writing
+	 * single blocks a lot cheaper, but uses 8 KiB per Section. The packed BlockStates are only recalculated when
+	 * they are requested by {@link Section#getBlockStates()} or {@link Section#updateHandle(int)}.
+	 * This has no effect if this Section has no BlockStates.
+	 * @param unpacked Whether the palette indices should be stored unpacked.
+	 */
+	public void setUnpacked(boolean unpacked) {
+		if (unpacked) {
+			if (this.unpacked == null && blockStates != null) {
+				short[] indices = new short[4096];
+				codec(blockStates).unpackAll(blockStates, indices);
+				this.unpacked = indices;
+			}
+		} else if (this.unpacked != null) {
+			getBlockStates();
+			this.unpacked = null;
+		}
+	}
+
+	private long[] pack(short[] indices) {
+		PackedArrayCodec codec = PackedArrayCodec.of(PackedArrayCodec.bitsForPaletteSize(palette.size()), dataVersion < 2527);
+		long[] packed = new long[codec.getLength()];
+		codec.packAll(indices, packed);
+		blockStateBits = codec.getBits();
+		return packed;
 	}
 
 	/**
@@ -392,6 +495,7 @@ public class Section implements Comparable<Section> {
 	public static Section newSection() {
 		Section s = new Section();
 		s.blockStates = new long[256];
+		s.blockStateBits = 4;
 		s.palette = new ListTag<>(CompoundTag.class);
 		CompoundTag air = new CompoundTag();
 		air.putString("Name", "minecraft:air");
@@ -415,7 +519,7 @@ public class Section implements Comparable<Section> {
 		if (blockLight != null) {
 			data.putByteArray("BlockLight", blockLight);
 		}
-		if (blockStates != null) {
+		if (getBlockStates() != null) {
 			data.putLongArray("BlockStates", blockStates);
 		}
 		if (skyLight != null) {
@@ -443,6 +547,41 @@ public class Section implements Comparable<Section> {
 		return new BlockIterator(this);
 	}
 
+	/**
+	 * Visits all blocks of this Section in order of their indices, see {@link Section#blocksStates()}.
+	 * The coordinates are relative to this Section, ranging from 0-15. All BlockStates are decoded at once,
+	 * which is a lot faster than calling {@link Section#getPaletteIndex(int)} for each block.
+	 * A Section without BlockStates has no blocks to visit.
+	 * @param visitor The visitor receiving the blocks.
+	 * @return {@code false} if the visitor stopped early, {@code true} otherwise.
+	 * */
+	public boolean forEachBlock(BlockVisitor visitor) {
+		return forEachBlock(visitor, 0, 0, 0, new int[4096]);
+	}
+
+	boolean forEachBlock(BlockVisitor visitor, int offsetX, int offsetY, int offsetZ, int[] buffer) {
+		if (unpacked != null) {
+			for (int i = 0; i < 4096; i++) {
+				buffer[i] = unpacked[i];
+			}
+		} else if (blockStates != null) {
+			codec(blockStates).unpackAll(blockStates, buffer);
+		} else {
+			return true;
+		}
+		int i = 0;
+		for (int y = 0; y < 16; y++) {
+			for (int z = 0; z < 16; z++) {
+				for (int x = 0; x < 16; x++) {
+					if (!visitor.visit(this, offsetX + x, offsetY + y, offsetZ + z, buffer[i++])) {
+						return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
+
 	private static class BlockIterator implements Iterable<CompoundTag>, Iterator<CompoundTag> {
 
 		private Section section;
@@ -0,0 +1,70 @@
+package net.querz.mca;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Helper to run independent region and chunk operations on an {@link Executor}.
+ * */
+final class Tasks {
+
+	private Tasks() {}
+
+	@FunctionalInterface
+	interface IOTask {
+
+		void run() throws IOException;
+	}
+
+	static CompletableFuture<Void> run(IOTask task, Executor executor) {
+		return CompletableFuture.runAsync(() -> {
+			try {
+				task.run();
+			} catch (IOException ex) {
+				throw new UncheckedIOException(ex);
+			}
+		}, executor);
+	}
+
+	/**
+	 * Waits until all tasks are completed and rethrows the exception of the first failed task in list order.
+	 * @param tasks The tasks to wait for.
+	 * @throws IOException If any of the tasks threw an {@code IOException}.
+	 * */
+	static void join(List<CompletableFuture<Void>> tasks) throws IOException {
+		// no task is running anymore when an exception is rethrown
+		CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).exceptionally(ex -> null).join();
+		for (CompletableFuture<Void> task : tasks) {
+			try {
+				task.join();
+			} catch (CompletionException ex) {
+				Throwable cause = ex.getCause();
+				if (cause instanceof UncheckedIOException) {
+					throw ((UncheckedIOException) cause).getCause();
+				} else if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				} else if (cause instanceof Error) {
+					throw (Error) cause;
+				}
+				throw ex;
+			}
+		}
+	}
+
+	/**
+	 * Waits until all tasks are completed and rethrows the exception of the first failed task in list order.
+	 * @param tasks The tasks to wait for, which do not throw any {@code IOException}.
+	 * @throws UncheckedIOException If any of the tasks threw an {@code IOException}.
+	 * */
+	static void joinUnchecked(List<CompletableFuture<Void>> tasks) {
+		try {
+			join(tasks);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+}
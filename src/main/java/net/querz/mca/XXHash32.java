@@ -0,0 +1,112 @@
+package net.querz.mca;
+
+/**
+ * A streaming implementation of the 32-bit xxHash algorithm, used for the checksums of LZ4 data.
+ * */
+final class XXHash32 {
+
+	private static final int P1 = 0x9E3779B1;
+	private static final int P2 = 0x85EBCA77;
+	private static final int P3 = 0xC2B2AE3D;
+	private static final int P4 = 0x27D4EB2F;
+	private static final int P5 = 0x165667B1;
+
+	private final int seed;
+	private int v1, v2, v3, v4;
+	private long totalLength;
+	private final byte[] memory = new byte[16];
+	private int memorySize;
+
+	XXHash32(int seed) {
+		this.seed = seed;
+		reset();
+	}
+
+	/**
+	 * @param data The array containing the data.
+	 * @param offset The start of the data in {@code data}.
+	 * @param length The length of the data.
+	 * @param seed The seed of the hash.
+	 * @return The hash of the data.
+	 * */
+	static int hash(byte[] data, int offset, int length, int seed) {
+		XXHash32 hash = new XXHash32(seed);
+		hash.update(data, offset, length);
+		return hash.getValue();
+	}
+
+	void reset() {
+		v1 = seed + P1 + P2;
+		v2 = seed + P2;
+		v3 = seed;
+		v4 = seed - P1;
+		totalLength = 0;
+		memorySize = 0;
+	}
+
+	void update(byte[] data, int offset, int length) {
+		totalLength += length;
+		if (memorySize + length < 16) {
+			System.arraycopy(data, offset, memory, memorySize, length);
+			memorySize += length;
+			return;
+		}
+		int end = offset + length;
+		if (memorySize > 0) {
+			int fill = 16 - memorySize;
+			System.arraycopy(data, offset, memory, memorySize, fill);
+			processStripe(memory, 0);
+			offset += fill;
+			memorySize = 0;
+		}
+		for (; offset <= end - 16; offset += 16) {
+			processStripe(data, offset);
+		}
+		if (offset < end) {
+			memorySize = end - offset;
+			System.arraycopy(data, offset, memory, 0, memorySize);
+		}
+	}
+
+	private void processStripe(byte[] data, int offset) {
+		v1 = round(v1, readIntLE(data, offset));
+		v2 = round(v2, readIntLE(data, offset + 4));
+		v3 = round(v3, readIntLE(data, offset + 8));
+		v4 = round(v4, readIntLE(data, offset + 12));
+	}
+
+	int getValue() {
+		int h;
+		if (totalLength >= 16) {
+			h = Integer.rotateLeft(v1, 1) + Integer.rotateLeft(v2, 7) + Integer.rotateLeft(v3, 12) + Integer.rotateLeft(v4, 18);
+		} else {
+			h = seed + P5;
+		}
+		h += (int) totalLength;
+		int i = 0;
+		for (; i <= memorySize - 4; i += 4) {
+			h += readIntLE(memory, i) * P3;
+			h = Integer.rotateLeft(h, 17) * P4;
+		}
+		for (; i < memorySize; i++) {
+			h += (memory[i] & 0xFF) * P5;
+			h = Integer.rotateLeft(h, 11) * P1;
+		}
+		h ^= h >>> 15;
+		h *= P2;
+		h ^= h >>> 13;
+		h *= P3;
+		h ^= h >>> 16;
+		return h;
+	}
+
+	private static int round(int v, int input) {
+		v += input * P2;
+		v = Integer.rotateLeft(v, 13);
+		return v * P1;
+	}
+
+	static int readIntLE(byte[] b, int offset) {
+		return b[offset] & 0xFF | (b[offset + 1] & 0xFF) << 8 | (b[offset + 2] & 0xFF) << 16 | b[offset + 3] << 24;
+	}
+}
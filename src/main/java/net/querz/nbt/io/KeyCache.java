@@ -0,0 +1,96 @@
+package net.querz.nbt.io;
+
+import java.util.Arrays;
+
+/**
+ * A bounded cache of the keys of CompoundTags, looked up by their encoded bytes.
+ * NBT data usually only uses a small set of keys, so reading the same key again returns the same
+ * String instance without allocating anything, which also reduces the memory retained by the tags.
+ * Only keys consisting of ASCII characters are cached, because they are encoded the same way
+ * by big endian and little endian NBT data. When two keys map to the same slot, the older one is replaced.
+ * A KeyCache is thread safe and can be shared by any number of readers.
+ * @see NBTDeserializer#setKeyCache(KeyCache)
+ * */
+public class KeyCache {
+
+	// longer keys are unlikely to repeat, and comparing them costs more than decoding them
+	static final int MAX_KEY_LENGTH = 64;
+
+	private static final class Entry {
+
+		final int hash;
+		final byte[] bytes;
+		final String key;
+
+		Entry(int hash, byte[] bytes, String key) {
+			this.hash = hash;
+			this.bytes = bytes;
+			this.key = key;
+		}
+	}
+
+	// entries are immutable, so concurrent lookups see either a complete entry or none
+	private final Entry[] table;
+
+	/**
+	 * @param capacity The maximum amount of keys, rounded up to a power of 2.
+	 * @throws IllegalArgumentException If {@code capacity} is not positive or larger than {@code 2^30}.
+	 * */
+	public KeyCache(int capacity) {
+		if (capacity <= 0 || capacity > 1 << 30) {
+			throw new IllegalArgumentException("invalid capacity " + capacity);
+		}
+		int size = 1;
+		while (size < capacity) {
+			size <<= 1;
+		}
+		table = new Entry[size];
+	}
+
+	/**
+	 * @return The maximum amount of keys in this cache.
+	 * */
+	public int getCapacity() {
+		return table.length;
+	}
+
+	/**
+	 * Removes all keys from this cache.
+	 * */
+	public void clear() {
+		Arrays.fill(table, null);
+	}
+
+	/**
+	 * @param ascii The array containing the encoded key, which must only consist of ASCII characters.
+	 * @param offset The start of the key in {@code ascii}.
+	 * @param length The length of the key.
+	 * @param hash The hash of the key, {@code 31 * hash + b} for every byte.
+	 * @return The cached key, or a new String that is cached for the next lookups.
+	 * */
+	String get(byte[] ascii, int offset, int length, int hash) {
+		if (length > MAX_KEY_LENGTH) {
+			return StringDecoder.ascii(ascii, offset, length);
+		}
+		int index = (hash ^ hash >>> 16) & table.length - 1;
+		Entry entry = table[index];
+		if (entry != null && entry.hash == hash && equals(entry.bytes, ascii, offset, length)) {
+			return entry.key;
+		}
+		String key = StringDecoder.ascii(ascii, offset, length);
+		table[index] = new Entry(hash, Arrays.copyOfRange(ascii, offset, offset + length), key);
+		return key;
+	}
+
+	private static boolean equals(byte[] bytes, byte[] b, int offset, int length) {
+		if (bytes.length != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (bytes[i] != b[offset + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,210 @@
+package net.querz.nbt.io;
+
+import net.querz.io.MaxDepthIO;
+import net.querz.nbt.tag.Tag;
+import java.io.DataInput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Reads NBT data directly from a {@link ByteBuffer}, which can be a heap buffer, a direct buffer or a memory mapped file.
+ * The byte order of the buffer determines the encoding: big endian buffers are read like an {@link NBTInputStream},
+ * little endian buffers like a {@link LittleEndianNBTInputStream}. The buffer is read starting at its position,
+ * and its position is advanced accordingly.
+ * */
+public class NBTBufferInput implements DataInput, NBTInput, MaxDepthIO {
+
+	private final ByteBuffer buffer;
+	private final StringDecoder strings;
+	private boolean compactCompounds;
+
+	public NBTBufferInput(ByteBuffer buffer) {
+		this.buffer = buffer;
+		strings = new StringDecoder(buffer.order() == ByteOrder.BIG_ENDIAN);
+	}
+
+	/**
+	 * @return The buffer this reads from.
+	 * */
+	public ByteBuffer getBuffer() {
+		return buffer;
+	}
+
+	/**
+	 * @param compactCompounds Whether CompoundTags should be read using
+	 *                         {@link net.querz.nbt.tag.CompoundTag#createCompact(int)}, which retains less memory.
+	 * */
+	public void setCompactCompounds(boolean compactCompounds) {
+		this.compactCompounds = compactCompounds;
+	}
+
+	/**
+	 * @param keyCache The cache returning the same String instance for the same keys, or {@code null} to not cache keys.
+	 * */
+	public void setKeyCache(KeyCache keyCache) {
+		strings.setKeyCache(keyCache);
+	}
+
+	@Override
+	public boolean isCompactCompounds() {
+		return compactCompounds;
+	}
+
+	public NamedTag readTag(int maxDepth) throws IOException {
+		byte id = readByte();
+		return new NamedTag(readString(true), NBTCodec.readTag(this, id, maxDepth));
+	}
+
+	public Tag<?> readRawTag(int maxDepth) throws IOException {
+		byte id = readByte();
+		return NBTCodec.readTag(this, id, maxDepth);
+	}
+
+	private void require(long length) throws EOFException {
+		if (buffer.remaining() < length) {
+			throw new EOFException("expected " + length + " bytes, but only " + buffer.remaining() + " bytes remaining");
+		}
+	}
+
+	/**
+	 * Reads ints into an array using an {@link java.nio.IntBuffer} view of the buffer.
+	 * @param data The array to fill.
+	 * @throws IOException If the buffer does not contain enough data.
+	 * */
+	void readInts(int[] data) throws IOException {
+		require(data.length * 4L);
+		buffer.asIntBuffer().get(data);
+		buffer.position(buffer.position() + data.length * 4);
+	}
+
+	/**
+	 * Reads longs into an array using a {@link java.nio.LongBuffer} view of the buffer.
+	 * @param data The array to fill.
+	 * @throws IOException If the buffer does not contain enough data.
+	 * */
+	void readLongs(long[] data) throws IOException {
+		require(data.length * 8L);
+		buffer.asLongBuffer().get(data);
+		buffer.position(buffer.position() + data.length * 8);
+	}
+
+	@Override
+	public void readFully(byte[] b) throws IOException {
+		readFully(b, 0, b.length);
+	}
+
+	@Override
+	public void readFully(byte[] b, int off, int len) throws IOException {
+		require(len);
+		buffer.get(b, off, len);
+	}
+
+	@Override
+	public int skipBytes(int n) {
+		int skipped = Math.max(0, Math.min(n, buffer.remaining()));
+		buffer.position(buffer.position() + skipped);
+		return skipped;
+	}
+
+	@Override
+	public boolean readBoolean() throws IOException {
+		return readByte() != 0;
+	}
+
+	@Override
+	public byte readByte() throws IOException {
+		require(1);
+		return buffer.get();
+	}
+
+	@Override
+	public int readUnsignedByte() throws IOException {
+		return readByte() & 0xFF;
+	}
+
+	@Override
+	public short readShort() throws IOException {
+		require(2);
+		return buffer.getShort();
+	}
+
+	@Override
+	public int readUnsignedShort() throws IOException {
+		return readShort() & 0xFFFF;
+	}
+
+	@Override
+	public char readChar() throws IOException {
+		require(2);
+		return buffer.getChar();
+	}
+
+	@Override
+	public int readInt() throws IOException {
+		require(4);
+		return buffer.getInt();
+	}
+
+	@Override
+	public long readLong() throws IOException {
+		require(8);
+		return buffer.getLong();
+	}
+
+	@Override
+	public float readFloat() throws IOException {
+		require(4);
+		return buffer.getFloat();
+	}
+
+	@Override
+	public double readDouble() throws IOException {
+		require(8);
+		return buffer.getDouble();
+	}
+
+	@Override
+	@Deprecated
+	public String readLine() throws IOException {
+		if (!buffer.hasRemaining()) {
+			return null;
+		}
+		StringBuilder line = new StringBuilder();
+		while (buffer.hasRemaining()) {
+			char c = (char) (buffer.get() & 0xFF);
+			if (c == '\n') {
+				break;
+			} else if (c == '\r') {
+				if (buffer.hasRemaining() && buffer.get(buffer.position()) == '\n') {
+					buffer.get();
+				}
+				break;
+			}
+			line.append(c);
+		}
+		return line.toString();
+	}
+
+	@Override
+	public String readUTF() throws IOException {
+		return readString(false);
+	}
+
+	String readString(boolean key) throws IOException {
+		int length = readUnsignedShort();
+		require(length);
+		int position = buffer.position();
+		String s;
+		if (buffer.hasArray()) {
+			s = strings.decode(buffer.array(), buffer.arrayOffset() + position, length, key);
+		} else {
+			byte[] b = strings.buffer(length);
+			buffer.get(b, 0, length);
+			s = strings.decode(b, 0, length, key);
+		}
+		buffer.position(position + length);
+		return s;
+	}
+}
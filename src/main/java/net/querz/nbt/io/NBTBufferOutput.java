@@ -0,0 +1,231 @@
+package net.querz.nbt.io;
+
+import net.querz.io.MaxDepthIO;
+import net.querz.nbt.tag.Tag;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes NBT data directly into a {@link ByteBuffer}. The byte order of the buffer determines the encoding:
+ * big endian buffers are written like an {@link NBTOutputStream}, little endian buffers like a
+ * {@link LittleEndianNBTOutputStream}. The data is written starting at the position of the buffer.
+ * If the buffer is too small, it is replaced with a larger buffer of the same kind containing everything
+ * written to it so far, so the data must always be retrieved using {@link NBTBufferOutput#getBuffer()}.
+ * */
+public class NBTBufferOutput implements DataOutput, NBTOutput, MaxDepthIO {
+
+	private static final int DEFAULT_CAPACITY = 256;
+	// some VMs reserve header words in arrays
+	private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+	private ByteBuffer buffer;
+	private final boolean littleEndian;
+
+	/**
+	 * Creates an NBTBufferOutput writing into a new heap buffer.
+	 * @param order The byte order of the data.
+	 * */
+	public NBTBufferOutput(ByteOrder order) {
+		this(ByteBuffer.allocate(DEFAULT_CAPACITY).order(order));
+	}
+
+	public NBTBufferOutput(ByteBuffer buffer) {
+		this.buffer = buffer;
+		littleEndian = buffer.order() == ByteOrder.LITTLE_ENDIAN;
+	}
+
+	/**
+	 * @return The buffer containing the data, positioned after the data that has been written.
+	 * Use {@link ByteBuffer#flip()} to read the data.
+	 * */
+	public ByteBuffer getBuffer() {
+		return buffer;
+	}
+
+	public void writeTag(NamedTag tag, int maxDepth) throws IOException {
+		writeByte(tag.getTag().getID());
+		if (tag.getTag().getID() != 0) {
+			writeUTF(tag.getName() == null ? "" : tag.getName());
+		}
+		writeRawTag(tag.getTag(), maxDepth);
+	}
+
+	public void writeTag(Tag<?> tag, int maxDepth) throws IOException {
+		writeByte(tag.getID());
+		if (tag.getID() != 0) {
+			writeUTF("");
+		}
+		writeRawTag(tag, maxDepth);
+	}
+
+	public void writeRawTag(Tag<?> tag, int maxDepth) throws IOException {
+		NBTCodec.writeTag(this, tag, maxDepth);
+	}
+
+	@Override
+	public void flush() {}
+
+	private void ensureRemaining(long length) {
+		if (buffer.remaining() >= length) {
+			return;
+		}
+		long required = buffer.position() + length;
+		if (required > MAX_CAPACITY) {
+			throw new OutOfMemoryError("required buffer size of " + required + " bytes is too large");
+		}
+		int capacity = (int) Math.min(MAX_CAPACITY, Math.max(buffer.capacity() * 2L, required));
+		ByteBuffer grown = buffer.isDirect() ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+		grown.order(buffer.order());
+		buffer.flip();
+		grown.put(buffer);
+		buffer = grown;
+	}
+
+	/**
+	 * Writes all ints of an array using an {@link java.nio.IntBuffer} view of the buffer.
+	 * @param data The ints to write.
+	 * */
+	void writeInts(int[] data) {
+		ensureRemaining(data.length * 4L);
+		buffer.asIntBuffer().put(data);
+		buffer.position(buffer.position() + data.length * 4);
+	}
+
+	/**
+	 * Writes all longs of an array using a {@link java.nio.LongBuffer} view of the buffer.
+	 * @param data The longs to write.
+	 * */
+	void writeLongs(long[] data) {
+		ensureRemaining(data.length * 8L);
+		buffer.asLongBuffer().put(data);
+		buffer.position(buffer.position() + data.length * 8);
+	}
+
+	@Override
+	public void write(int b) {
+		writeByte(b);
+	}
+
+	@Override
+	public void write(byte[] b) {
+		write(b, 0, b.length);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) {
+		ensureRemaining(len);
+		buffer.put(b, off, len);
+	}
+
+	@Override
+	public void writeBoolean(boolean v) {
+		writeByte(v ? 1 : 0);
+	}
+
+	@Override
+	public void writeByte(int v) {
+		ensureRemaining(1);
+		buffer.put((byte) v);
+	}
+
+	@Override
+	public void writeShort(int v) {
+		ensureRemaining(2);
+		buffer.putShort((short) v);
+	}
+
+	@Override
+	public void writeChar(int v) {
+		ensureRemaining(2);
+		buffer.putChar((char) v);
+	}
+
+	@Override
+	public void writeInt(int v) {
+		ensureRemaining(4);
+		buffer.putInt(v);
+	}
+
+	@Override
+	public void writeLong(long v) {
+		ensureRemaining(8);
+		buffer.putLong(v);
+	}
+
+	@Override
+	public void writeFloat(float v) {
+		ensureRemaining(4);
+		buffer.putFloat(v);
+	}
+
+	@Override
+	public void writeDouble(double v) {
+		ensureRemaining(8);
+		buffer.putDouble(v);
+	}
+
+	@Override
+	public void writeBytes(String s) {
+		int length = s.length();
+		ensureRemaining(length);
+		for (int i = 0; i < length; i++) {
+			buffer.put((byte) s.charAt(i));
+		}
+	}
+
+	@Override
+	public void writeChars(String s) {
+		int length = s.length();
+		ensureRemaining(length * 2L);
+		for (int i = 0; i < length; i++) {
+			buffer.putChar(s.charAt(i));
+		}
+	}
+
+	@Override
+	public void writeUTF(String s) throws IOException {
+		if (littleEndian) {
+			byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+			writeShort(bytes.length);
+			write(bytes);
+			return;
+		}
+		// modified UTF-8, as written by DataOutputStream#writeUTF(String)
+		int length = s.length();
+		int utfLength = length;
+		for (int i = 0; i < length; i++) {
+			char c = s.charAt(i);
+			if (c >= 0x80 || c == 0) {
+				utfLength += c >= 0x800 ? 2 : 1;
+			}
+		}
+		if (utfLength > 65535) {
+			throw new UTFDataFormatException("encoded string too long: " + utfLength + " bytes");
+		}
+		ensureRemaining(2 + utfLength);
+		buffer.putShort((short) utfLength);
+		if (utfLength == length) {
+			for (int i = 0; i < length; i++) {
+				buffer.put((byte) s.charAt(i));
+			}
+			return;
+		}
+		for (int i = 0; i < length; i++) {
+			char c = s.charAt(i);
+			if (c < 0x80 && c != 0) {
+				buffer.put((byte) c);
+			} else if (c < 0x800) {
+				buffer.put((byte) (0xC0 | c >> 6));
+				buffer.put((byte) (0x80 | c & 0x3F));
+			} else {
+				buffer.put((byte) (0xE0 | c >> 12));
+				buffer.put((byte) (0x80 | c >> 6 & 0x3F));
+				buffer.put((byte) (0x80 | c & 0x3F));
+			}
+		}
+	}
+}
@@ -0,0 +1,508 @@
+package net.querz.nbt.io;
+
+import net.querz.io.MaxDepthIO;
+import net.querz.nbt.tag.ByteArrayTag;
+import net.querz.nbt.tag.ByteTag;
+import net.querz.nbt.tag.CompoundTag;
+import net.querz.nbt.tag.DoubleTag;
+import net.querz.nbt.tag.EndTag;
+import net.querz.nbt.tag.FloatTag;
+import net.querz.nbt.tag.IntArrayTag;
+import net.querz.nbt.tag.IntTag;
+import net.querz.nbt.tag.ListTag;
+import net.querz.nbt.tag.LongArrayTag;
+import net.querz.nbt.tag.LongTag;
+import net.querz.nbt.tag.ShortTag;
+import net.querz.nbt.tag.StringTag;
+import net.querz.nbt.tag.Tag;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Map;
+
+/**
+ * Reads and writes binary NBT data. The byte order is determined by the {@link DataInput}
+ * or {@link DataOutput} implementation, so this is shared by all NBT streams.
+ * */
+final class NBTCodec {
+
+	// the maximum amount of bytes converted at once when reading or writing int and long arrays
+	private static final int BULK_BUFFER_SIZE = 8192;
+
+	private NBTCodec() {}
+
+	static <I extends DataInput & MaxDepthIO> Tag<?> readTag(I in, byte type, int maxDepth) throws IOException {
+		switch (type) {
+		case EndTag.ID:
+			return EndTag.INSTANCE;
+		case ByteTag.ID:
+			return new ByteTag(in.readByte());
+		case ShortTag.ID:
+			return new ShortTag(in.readShort());
+		case IntTag.ID:
+			return new IntTag(in.readInt());
+		case LongTag.ID:
+			return new LongTag(in.readLong());
+		case FloatTag.ID:
+			return new FloatTag(in.readFloat());
+		case DoubleTag.ID:
+			return new DoubleTag(in.readDouble());
+		case ByteArrayTag.ID:
+			return readByteArray(in);
+		case StringTag.ID:
+			return new StringTag(readString(in, false));
+		case ListTag.ID:
+			return readList(in, maxDepth);
+		case CompoundTag.ID:
+			return readCompound(in, maxDepth);
+		case IntArrayTag.ID:
+			return readIntArray(in);
+		case LongArrayTag.ID:
+			return readLongArray(in);
+		default:
+			throw new IOException("invalid tag id \"" + type + "\"");
+		}
+	}
+
+	/**
+	 * Reads a string using the {@link StringDecoder} of the NBT readers of this library, because
+	 * {@link DataInputStream#readUTF()} cannot be overridden.
+	 * @param in The input.
+	 * @param key Whether the string is the key or name of a tag, which can be looked up in a {@link KeyCache}.
+	 * @return The string.
+	 * @throws IOException If reading failed or the string is malformed.
+	 * */
+	static String readString(DataInput in, boolean key) throws IOException {
+		if (in instanceof NBTInputStream) {
+			return ((NBTInputStream) in).readString(key);
+		} else if (in instanceof NBTBufferInput) {
+			return ((NBTBufferInput) in).readString(key);
+		} else if (in instanceof LittleEndianNBTInputStream) {
+			return ((LittleEndianNBTInputStream) in).readString(key);
+		}
+		return in.readUTF();
+	}
+
+	private static ByteArrayTag readByteArray(DataInput in) throws IOException {
+		ByteArrayTag bat = new ByteArrayTag(new byte[in.readInt()]);
+		in.readFully(bat.getValue());
+		return bat;
+	}
+
+	private static IntArrayTag readIntArray(DataInput in) throws IOException {
+		int[] data = new int[in.readInt()];
+		readInts(in, data);
+		return new IntArrayTag(data);
+	}
+
+	private static LongArrayTag readLongArray(DataInput in) throws IOException {
+		long[] data = new long[in.readInt()];
+		readLongs(in, data);
+		return new LongArrayTag(data);
+	}
+
+	/**
+	 * The byte order of the NBT streams of this library, which allows reading and writing arrays in bulk.
+	 * @param io A {@link DataInput} or {@link DataOutput}.
+	 * @return The byte order of {@code io}, or {@code null} if it is unknown.
+	 * */
+	private static ByteOrder byteOrder(Object io) {
+		// the methods of DataInputStream and DataOutputStream reading and writing numbers are final
+		if (io instanceof DataInputStream || io instanceof DataOutputStream) {
+			return ByteOrder.BIG_ENDIAN;
+		} else if (io instanceof LittleEndianNBTInputStream || io instanceof LittleEndianNBTOutputStream) {
+			return ByteOrder.LITTLE_ENDIAN;
+		}
+		return null;
+	}
+
+	/**
+	 * Reads ints into an array. The payload of NBT streams is read in bulk and converted using an {@link IntBuffer} view.
+	 * NBT buffers are read directly using a view of the buffer.
+	 * @param in The input.
+	 * @param data The array to fill.
+	 * @throws IOException If reading failed.
+	 * */
+	static void readInts(DataInput in, int[] data) throws IOException {
+		if (in instanceof NBTBufferInput) {
+			((NBTBufferInput) in).readInts(data);
+			return;
+		}
+		ByteOrder order = byteOrder(in);
+		if (order == null) {
+			for (int i = 0; i < data.length; i++) {
+				data[i] = in.readInt();
+			}
+			return;
+		}
+		byte[] buffer = new byte[Math.min(data.length * 4, BULK_BUFFER_SIZE)];
+		IntBuffer view = ByteBuffer.wrap(buffer).order(order).asIntBuffer();
+		for (int i = 0; i < data.length;) {
+			int n = Math.min(data.length - i, view.capacity());
+			in.readFully(buffer, 0, n * 4);
+			view.clear();
+			view.get(data, i, n);
+			i += n;
+		}
+	}
+
+	/**
+	 * Reads longs into an array. The payload of NBT streams is read in bulk and converted using a {@link LongBuffer} view.
+	 * NBT buffers are read directly using a view of the buffer.
+	 * @param in The input.
+	 * @param data The array to fill.
+	 * @throws IOException If reading failed.
+	 * */
+	static void readLongs(DataInput in, long[] data) throws IOException {
+		if (in instanceof NBTBufferInput) {
+			((NBTBufferInput) in).readLongs(data);
+			return;
+		}
+		ByteOrder order = byteOrder(in);
+		if (order == null) {
+			for (int i = 0; i < data.length; i++) {
+				data[i] = in.readLong();
+			}
+			return;
+		}
+		byte[] buffer = new byte[Math.min(data.length * 8, BULK_BUFFER_SIZE)];
+		LongBuffer view = ByteBuffer.wrap(buffer).order(order).asLongBuffer();
+		for (int i = 0; i < data.length;) {
+			int n = Math.min(data.length - i, view.capacity());
+			in.readFully(buffer, 0, n * 8);
+			view.clear();
+			view.get(data, i, n);
+			i += n;
+		}
+	}
+
+	/**
+	 * Writes all ints of an array. For NBT streams, they are converted using an {@link IntBuffer} view and written in bulk.
+	 * NBT buffers are written directly using a view of the buffer.
+	 * @param out The output.
+	 * @param data The ints to write.
+	 * @throws IOException If writing failed.
+	 * */
+	static void writeInts(DataOutput out, int[] data) throws IOException {
+		if (out instanceof NBTBufferOutput) {
+			((NBTBufferOutput) out).writeInts(data);
+			return;
+		}
+		ByteOrder order = byteOrder(out);
+		if (order == null) {
+			for (int i : data) {
+				out.writeInt(i);
+			}
+			return;
+		}
+		byte[] buffer = new byte[Math.min(data.length * 4, BULK_BUFFER_SIZE)];
+		IntBuffer view = ByteBuffer.wrap(buffer).order(order).asIntBuffer();
+		for (int i = 0; i < data.length;) {
+			int n = Math.min(data.length - i, view.capacity());
+			view.clear();
+			view.put(data, i, n);
+			out.write(buffer, 0, n * 4);
+			i += n;
+		}
+	}
+
+	/**
+	 * Writes all longs of an array. For NBT streams, they are converted using a {@link LongBuffer} view and written in bulk.
+	 * NBT buffers are written directly using a view of the buffer.
+	 * @param out The output.
+	 * @param data The longs to write.
+	 * @throws IOException If writing failed.
+	 * */
+	static void writeLongs(DataOutput out, long[] data) throws IOException {
+		if (out instanceof NBTBufferOutput) {
+			((NBTBufferOutput) out).writeLongs(data);
+			return;
+		}
+		ByteOrder order = byteOrder(out);
+		if (order == null) {
+			for (long l : data) {
+				out.writeLong(l);
+			}
+			return;
+		}
+		byte[] buffer = new byte[Math.min(data.length * 8, BULK_BUFFER_SIZE)];
+		LongBuffer view = ByteBuffer.wrap(buffer).order(order).asLongBuffer();
+		for (int i = 0; i < data.length;) {
+			int n = Math.min(data.length - i, view.capacity());
+			view.clear();
+			view.put(data, i, n);
+			out.write(buffer, 0, n * 8);
+			i += n;
+		}
+	}
+
+	private static <I extends DataInput & MaxDepthIO> ListTag<?> readList(I in, int maxDepth) throws IOException {
+		byte listType = in.readByte();
+		int length = in.readInt();
+		if (length < 0) {
+			length = 0;
+		}
+		if (length > 0) {
+			// numbers are read straight into a primitive array, their tags are only created when they are accessed
+			switch (listType) {
+			case ByteTag.ID:
+				in.decrementMaxDepth(maxDepth);
+				byte[] b = new byte[length];
+				in.readFully(b);
+				return ListTag.ofBytes(b);
+			case ShortTag.ID:
+				in.decrementMaxDepth(maxDepth);
+				short[] s = new short[length];
+				for (int i = 0; i < length; i++) {
+					s[i] = in.readShort();
+				}
+				return ListTag.ofShorts(s);
+			case IntTag.ID:
+				in.decrementMaxDepth(maxDepth);
+				int[] n = new int[length];
+				readInts(in, n);
+				return ListTag.ofInts(n);
+			case LongTag.ID:
+				in.decrementMaxDepth(maxDepth);
+				long[] l = new long[length];
+				readLongs(in, l);
+				return ListTag.ofLongs(l);
+			case FloatTag.ID:
+				in.decrementMaxDepth(maxDepth);
+				float[] f = new float[length];
+				for (int i = 0; i < length; i++) {
+					f[i] = in.readFloat();
+				}
+				return ListTag.ofFloats(f);
+			case DoubleTag.ID:
+				in.decrementMaxDepth(maxDepth);
+				double[] d = new double[length];
+				for (int i = 0; i < length; i++) {
+					d[i] = in.readDouble();
+				}
+				return ListTag.ofDoubles(d);
+			}
+		}
+		ListTag<?> list = ListTag.createUnchecked(classFromID(listType));
+		for (int i = 0; i < length; i++) {
+			list.addUnchecked(readTag(in, listType, in.decrementMaxDepth(maxDepth)));
+		}
+		return list;
+	}
+
+	private static <I extends DataInput & MaxDepthIO> CompoundTag readCompound(I in, int maxDepth) throws IOException {
+		CompoundTag comp = newCompound(in);
+		for (byte id = in.readByte(); id != EndTag.ID; id = in.readByte()) {
+			String key = readString(in, true);
+			Tag<?> element = readTag(in, id, in.decrementMaxDepth(maxDepth));
+			comp.put(key, element);
+		}
+		// the amount of entries is not known in advance, so compact compounds are shrunk after reading
+		comp.trimToSize();
+		return comp;
+	}
+
+	/**
+	 * @param in The input a CompoundTag is read from.
+	 * @return A compact CompoundTag if {@code in} is an {@link NBTInput} reading compact compounds, otherwise a regular CompoundTag.
+	 * */
+	static CompoundTag newCompound(DataInput in) {
+		if (in instanceof NBTInput && ((NBTInput) in).isCompactCompounds()) {
+			return CompoundTag.createCompact(4);
+		}
+		return new CompoundTag();
+	}
+
+	static <O extends DataOutput & MaxDepthIO> void writeTag(O out, Tag<?> tag, int maxDepth) throws IOException {
+		switch (tag.getID()) {
+		case EndTag.ID:
+			break;
+		case ByteTag.ID:
+			out.writeByte(((ByteTag) tag).asByte());
+			break;
+		case ShortTag.ID:
+			out.writeShort(((ShortTag) tag).asShort());
+			break;
+		case IntTag.ID:
+			out.writeInt(((IntTag) tag).asInt());
+			break;
+		case LongTag.ID:
+			out.writeLong(((LongTag) tag).asLong());
+			break;
+		case FloatTag.ID:
+			out.writeFloat(((FloatTag) tag).asFloat());
+			break;
+		case DoubleTag.ID:
+			out.writeDouble(((DoubleTag) tag).asDouble());
+			break;
+		case ByteArrayTag.ID:
+			out.writeInt(((ByteArrayTag) tag).length());
+			out.write(((ByteArrayTag) tag).getValue());
+			break;
+		case StringTag.ID:
+			out.writeUTF(((StringTag) tag).getValue());
+			break;
+		case ListTag.ID:
+			writeList(out, (ListTag<?>) tag, maxDepth);
+			break;
+		case CompoundTag.ID:
+			writeCompound(out, (CompoundTag) tag, maxDepth);
+			break;
+		case IntArrayTag.ID:
+			writeIntArray(out, (IntArrayTag) tag);
+			break;
+		case LongArrayTag.ID:
+			writeLongArray(out, (LongArrayTag) tag);
+			break;
+		default:
+			throw new IOException("invalid tag \"" + tag.getID() + "\"");
+		}
+	}
+
+	private static void writeIntArray(DataOutput out, IntArrayTag tag) throws IOException {
+		out.writeInt(tag.length());
+		writeInts(out, tag.getValue());
+	}
+
+	private static void writeLongArray(DataOutput out, LongArrayTag tag) throws IOException {
+		out.writeInt(tag.length());
+		writeLongs(out, tag.getValue());
+	}
+
+	private static <O extends DataOutput & MaxDepthIO> void writeList(O out, ListTag<?> tag, int maxDepth) throws IOException {
+		byte listType = idFromClass(tag.getTypeClass());
+		out.writeByte(listType);
+		int size = tag.size();
+		out.writeInt(size);
+		if (size > 0) {
+			// the primitive accessors do not create tags for lists that are stored as primitive arrays
+			switch (listType) {
+			case ByteTag.ID:
+				out.decrementMaxDepth(maxDepth);
+				for (int i = 0; i < size; i++) {
+					out.writeByte(tag.getByte(i));
+				}
+				return;
+			case ShortTag.ID:
+				out.decrementMaxDepth(maxDepth);
+				for (int i = 0; i < size; i++) {
+					out.writeShort(tag.getShort(i));
+				}
+				return;
+			case IntTag.ID:
+				out.decrementMaxDepth(maxDepth);
+				for (int i = 0; i < size; i++) {
+					out.writeInt(tag.getInt(i));
+				}
+				return;
+			case LongTag.ID:
+				out.decrementMaxDepth(maxDepth);
+				for (int i = 0; i < size; i++) {
+					out.writeLong(tag.getLong(i));
+				}
+				return;
+			case FloatTag.ID:
+				out.decrementMaxDepth(maxDepth);
+				for (int i = 0; i < size; i++) {
+					out.writeFloat(tag.getFloat(i));
+				}
+				return;
+			case DoubleTag.ID:
+				out.decrementMaxDepth(maxDepth);
+				for (int i = 0; i < size; i++) {
+					out.writeDouble(tag.getDouble(i));
+				}
+				return;
+			}
+		}
+		for (Tag<?> t : tag) {
+			writeTag(out, t, out.decrementMaxDepth(maxDepth));
+		}
+	}
+
+	private static <O extends DataOutput & MaxDepthIO> void writeCompound(O out, CompoundTag tag, int maxDepth) throws IOException {
+		for (Map.Entry<String, Tag<?>> entry : tag) {
+			if (entry.getValue().getID() == 0) {
+				throw new IOException("end tag not allowed");
+			}
+			out.writeByte(entry.getValue().getID());
+			out.writeUTF(entry.getKey());
+			writeTag(out, entry.getValue(), out.decrementMaxDepth(maxDepth));
+		}
+		out.writeByte(0);
+	}
+
+	/**
+	 * @param id The id of a tag.
+	 * @return The class of the tag with this id, or {@code null} if the id is invalid.
+	 * */
+	static Class<?> classFromID(byte id) {
+		switch (id) {
+		case EndTag.ID:
+			return EndTag.class;
+		case ByteTag.ID:
+			return ByteTag.class;
+		case ShortTag.ID:
+			return ShortTag.class;
+		case IntTag.ID:
+			return IntTag.class;
+		case LongTag.ID:
+			return LongTag.class;
+		case FloatTag.ID:
+			return FloatTag.class;
+		case DoubleTag.ID:
+			return DoubleTag.class;
+		case ByteArrayTag.ID:
+			return ByteArrayTag.class;
+		case StringTag.ID:
+			return StringTag.class;
+		case ListTag.ID:
+			return ListTag.class;
+		case CompoundTag.ID:
+			return CompoundTag.class;
+		case IntArrayTag.ID:
+			return IntArrayTag.class;
+		case LongArrayTag.ID:
+			return LongArrayTag.class;
+		default:
+			return null;
+		}
+	}
+
+	static byte idFromClass(Class<?> clazz) {
+		if (clazz == CompoundTag.class) {
+			return CompoundTag.ID;
+		} else if (clazz == StringTag.class) {
+			return StringTag.ID;
+		} else if (clazz == ListTag.class) {
+			return ListTag.ID;
+		} else if (clazz == IntTag.class) {
+			return IntTag.ID;
+		} else if (clazz == EndTag.class) {
+			return EndTag.ID;
+		} else if (clazz == ByteTag.class) {
+			return ByteTag.ID;
+		} else if (clazz == ShortTag.class) {
+			return ShortTag.ID;
+		} else if (clazz == LongTag.class) {
+			return LongTag.ID;
+		} else if (clazz == FloatTag.class) {
+			return FloatTag.ID;
+		} else if (clazz == DoubleTag.class) {
+			return DoubleTag.ID;
+		} else if (clazz == ByteArrayTag.class) {
+			return ByteArrayTag.ID;
+		} else if (clazz == IntArrayTag.class) {
+			return IntArrayTag.ID;
+		} else if (clazz == LongArrayTag.class) {
+			return LongArrayTag.ID;
+		}
+		throw new IllegalArgumentException("unknown Tag class " + clazz.getName());
+	}
+}
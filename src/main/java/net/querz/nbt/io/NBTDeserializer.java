@@ -1,14 +1,18 @@
 package net.querz.nbt.io;
 
+import net.querz.io.ByteBufferInputStream;
 import net.querz.io.Deserializer;
 import net.querz.nbt.tag.Tag;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.zip.GZIPInputStream;
 
 public class NBTDeserializer implements Deserializer<NamedTag> {
 
-	private boolean compressed, littleEndian;
+	private boolean compressed, littleEndian, compactCompounds;
+	private KeyCache keyCache;
 
 	public NBTDeserializer() {
 		this(true);
@@ -23,6 +27,22 @@ public class NBTDeserializer implements Deserializer<NamedTag> {
 		this.littleEndian = littleEndian;
 	}
 
+	/**
+	 * @param compactCompounds Whether CompoundTags should be read using
+	 *                         {@link net.querz.nbt.tag.CompoundTag#createCompact(int)}, which retains less memory.
+	 * */
+	public void setCompactCompounds(boolean compactCompounds) {
+		this.compactCompounds = compactCompounds;
+	}
+
+	/**
+	 * @param keyCache The cache returning the same String instance for the same keys, or {@code null} to not cache keys.
+	 *                 A KeyCache can be shared by multiple NBTDeserializers, even across threads.
+	 * */
+	public void setKeyCache(KeyCache keyCache) {
+		this.keyCache = keyCache;
+	}
+
 	@Override
 	public NamedTag fromStream(InputStream stream) throws IOException {
 		NBTInput nbtIn;
@@ -34,10 +54,37 @@ public class NBTDeserializer implements Deserializer<NamedTag> {
 		}
 
 		if (littleEndian) {
-			nbtIn = new LittleEndianNBTInputStream(input);
+			LittleEndianNBTInputStream in = new LittleEndianNBTInputStream(input);
+			in.setCompactCompounds(compactCompounds);
+			in.setKeyCache(keyCache);
+			nbtIn = in;
 		} else {
-			nbtIn = new NBTInputStream(input);
+			NBTInputStream in = new NBTInputStream(input);
+			in.setCompactCompounds(compactCompounds);
+			in.setKeyCache(keyCache);
+			nbtIn = in;
 		}
 		return nbtIn.readTag(Tag.DEFAULT_MAX_DEPTH);
 	}
+
+	/**
+	 * Reads a named tag directly from a {@link ByteBuffer}, starting at its position. The position of the buffer is
+	 * advanced to the end of the tag. The byte order of the buffer is ignored and remains unchanged.
+	 * If the data is compressed, it is decompressed as a stream, which may consume all remaining bytes of the buffer.
+	 * @param buffer The buffer to read from.
+	 * @return The named tag.
+	 * @throws IOException If the data is invalid or incomplete.
+	 * */
+	public NamedTag fromBuffer(ByteBuffer buffer) throws IOException {
+		if (compressed) {
+			return fromStream(new ByteBufferInputStream(buffer));
+		}
+		ByteBuffer in = buffer.duplicate().order(littleEndian ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+		NBTBufferInput nbtIn = new NBTBufferInput(in);
+		nbtIn.setCompactCompounds(compactCompounds);
+		nbtIn.setKeyCache(keyCache);
+		NamedTag tag = nbtIn.readTag(Tag.DEFAULT_MAX_DEPTH);
+		buffer.position(in.position());
+		return tag;
+	}
 }
@@ -0,0 +1,60 @@
+package net.querz.nbt.io;
+
+import java.io.IOException;
+
+/**
+ * Receives the events of an {@link NBTStreamReader}. All methods do nothing by default,
+ * so implementations only need to override the events they are interested in.
+ * */
+public interface NBTHandler {
+
+	/**
+	 * Called before the value of a named tag is read, which is the root tag or an entry of a compound.
+	 * @param type The id of the tag.
+	 * @param name The name of the tag.
+	 * @return Whether the value of this tag should be read. If {@code false}, the value
+	 *         including all its children is skipped without creating any events.
+	 * @throws IOException To abort reading.
+	 * */
+	default boolean name(byte type, String name) throws IOException {
+		return true;
+	}
+
+	default void startCompound() throws IOException {}
+
+	default void endCompound() throws IOException {}
+
+	/**
+	 * Called before the elements of a list are read.
+	 * @param elementType The id of the elements of this list.
+	 * @param length The amount of elements in this list.
+	 * @return Whether the elements of this list should be read. If {@code false}, all elements are
+	 *         skipped without creating any events, and {@link NBTHandler#endList()} is not called.
+	 * @throws IOException To abort reading.
+	 * */
+	default boolean startList(byte elementType, int length) throws IOException {
+		return true;
+	}
+
+	default void endList() throws IOException {}
+
+	default void byteValue(byte value) throws IOException {}
+
+	default void shortValue(short value) throws IOException {}
+
+	default void intValue(int value) throws IOException {}
+
+	default void longValue(long value) throws IOException {}
+
+	default void floatValue(float value) throws IOException {}
+
+	default void doubleValue(double value) throws IOException {}
+
+	default void stringValue(String value) throws IOException {}
+
+	default void byteArray(byte[] value) throws IOException {}
+
+	default void intArray(int[] value) throws IOException {}
+
+	default void longArray(long[] value) throws IOException {}
+}
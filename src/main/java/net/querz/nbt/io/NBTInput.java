@@ -8,4 +8,11 @@ public interface NBTInput {
 	NamedTag readTag(int maxDepth) throws IOException;
 
 	Tag<?> readRawTag(int maxDepth) throws IOException;
+
+	/**
+	 * @return {@code true} if CompoundTags are read using {@link net.querz.nbt.tag.CompoundTag#createCompact(int)}.
+	 * */
+	default boolean isCompactCompounds() {
+		return false;
+	}
 }
@@ -0,0 +1,260 @@
+package net.querz.nbt.io;
+
+import net.querz.nbt.tag.ByteArrayTag;
+import net.querz.nbt.tag.ByteTag;
+import net.querz.nbt.tag.CompoundTag;
+import net.querz.nbt.tag.DoubleTag;
+import net.querz.nbt.tag.FloatTag;
+import net.querz.nbt.tag.IntArrayTag;
+import net.querz.nbt.tag.IntTag;
+import net.querz.nbt.tag.ListTag;
+import net.querz.nbt.tag.LongArrayTag;
+import net.querz.nbt.tag.LongTag;
+import net.querz.nbt.tag.ShortTag;
+import net.querz.nbt.tag.StringTag;
+import net.querz.nbt.tag.Tag;
+import java.io.DataInput;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads only selected parts of an NBT structure. Everything that is not selected is skipped
+ * at byte level using the length prefixes of the data, without creating any tags.<br>
+ * A path consists of the names of the compound entries leading to the selected tag, separated by dots.
+ * {@code [*]} selects all elements of a list. For example, {@code Level.xPos} selects the
+ * {@code xPos} entry of the compound {@code Level} in the root compound, and
+ * {@code Level.Sections[*].BlockStates} selects the {@code BlockStates} of all sections.
+ * A selected tag is read completely, including all of its children. The compounds and lists
+ * leading to a selected tag are created, but only contain the selected children.
+ * */
+public class NBTPathSelector {
+
+	private static class Node {
+		Map<String, Node> children;
+		Node elements;
+		boolean selected;
+
+		Node child(String name) {
+			if (children == null) {
+				children = new HashMap<>();
+			}
+			return children.computeIfAbsent(name, k -> new Node());
+		}
+
+		Node elements() {
+			if (elements == null) {
+				elements = new Node();
+			}
+			return elements;
+		}
+	}
+
+	private final Node root = new Node();
+
+	/**
+	 * @param paths The paths to select.
+	 * @throws IllegalArgumentException If a path is invalid.
+	 * */
+	public NBTPathSelector(String... paths) {
+		for (String path : paths) {
+			select(path);
+		}
+	}
+
+	/**
+	 * Adds a path to the selection.
+	 * @param path The path to select.
+	 * @throws IllegalArgumentException If the path is invalid.
+	 * */
+	public void select(String path) {
+		Node node = root;
+		for (String segment : path.split("\\.", -1)) {
+			String name = segment;
+			int lists = 0;
+			while (name.endsWith("[*]")) {
+				name = name.substring(0, name.length() - 3);
+				lists++;
+			}
+			if (name.isEmpty() || name.contains("[") || name.contains("]")) {
+				throw new IllegalArgumentException("invalid path \"" + path + "\"");
+			}
+			node = node.child(name);
+			for (int i = 0; i < lists; i++) {
+				node = node.elements();
+			}
+		}
+		node.selected = true;
+	}
+
+	/**
+	 * Reads a named tag using {@link Tag#DEFAULT_MAX_DEPTH}.
+	 * @see NBTPathSelector#read(DataInput, int)
+	 * @param input The input to read from, e.g. an {@link NBTInputStream} or a {@link LittleEndianNBTInputStream}.
+	 * @return The root tag, only containing the selected tags.
+	 * @throws IOException If reading failed.
+	 * */
+	public NamedTag read(DataInput input) throws IOException {
+		return read(input, Tag.DEFAULT_MAX_DEPTH);
+	}
+
+	/**
+	 * Reads a named tag, only creating the tags matching the selected paths.
+	 * CompoundTags are created compact if {@code input} is an {@link NBTInput} that reads compact compounds.
+	 * @param input The input to read from, e.g. an {@link NBTInputStream} or a {@link LittleEndianNBTInputStream}.
+	 * @param maxDepth The maximum nesting depth.
+	 * @return The root tag, only containing the selected tags.
+	 * @throws IOException If reading failed.
+	 * */
+	public NamedTag read(DataInput input, int maxDepth) throws IOException {
+		Builder builder = new Builder(input);
+		new NBTStreamReader(input).read(builder, maxDepth);
+		return new NamedTag(builder.rootName, builder.root);
+	}
+
+	private class Builder implements NBTHandler {
+
+		private final Deque<Tag<?>> tags = new ArrayDeque<>();
+		private final Deque<Node> nodes = new ArrayDeque<>();
+		private final DataInput input;
+		private String rootName, name;
+		private Node node;
+		private Tag<?> root;
+
+		Builder(DataInput input) {
+			this.input = input;
+		}
+
+		@Override
+		public boolean name(byte type, String name) {
+			Node parent = nodes.peek();
+			if (parent == null) {
+				rootName = name;
+				node = NBTPathSelector.this.root;
+				return true;
+			}
+			if (parent.selected) {
+				node = parent;
+			} else if (parent.children == null || (node = parent.children.get(name)) == null) {
+				return false;
+			} else if (!node.selected && type != CompoundTag.ID && type != ListTag.ID) {
+				// the path continues below a tag that has no children
+				return false;
+			}
+			this.name = name;
+			return true;
+		}
+
+		private Node elementNode() {
+			Tag<?> parent = tags.peek();
+			if (parent instanceof ListTag) {
+				Node list = nodes.peek();
+				return list.selected ? list : list.elements;
+			}
+			return node;
+		}
+
+		private void add(Tag<?> tag) {
+			Tag<?> parent = tags.peek();
+			if (parent == null) {
+				root = tag;
+			} else if (parent instanceof CompoundTag) {
+				((CompoundTag) parent).put(name, tag);
+			} else {
+				((ListTag<?>) parent).addUnchecked(tag);
+			}
+		}
+
+		@Override
+		public void startCompound() {
+			Node n = elementNode();
+			CompoundTag c = NBTCodec.newCompound(input);
+			add(c);
+			tags.push(c);
+			nodes.push(n);
+		}
+
+		@Override
+		public void endCompound() {
+			((CompoundTag) tags.pop()).trimToSize();
+			nodes.pop();
+		}
+
+		@Override
+		public boolean startList(byte elementType, int length) {
+			Node n = elementNode();
+			if (!n.selected) {
+				if (n.elements == null) {
+					return false;
+				}
+				// only selected elements and containers of selected elements are read
+				if (!n.elements.selected && elementType != CompoundTag.ID && elementType != ListTag.ID) {
+					return false;
+				}
+			}
+			ListTag<?> l = ListTag.createUnchecked(NBTCodec.classFromID(elementType));
+			add(l);
+			tags.push(l);
+			nodes.push(n);
+			return true;
+		}
+
+		@Override
+		public void endList() {
+			tags.pop();
+			nodes.pop();
+		}
+
+		@Override
+		public void byteValue(byte value) {
+			add(new ByteTag(value));
+		}
+
+		@Override
+		public void shortValue(short value) {
+			add(new ShortTag(value));
+		}
+
+		@Override
+		public void intValue(int value) {
+			add(new IntTag(value));
+		}
+
+		@Override
+		public void longValue(long value) {
+			add(new LongTag(value));
+		}
+
+		@Override
+		public void floatValue(float value) {
+			add(new FloatTag(value));
+		}
+
+		@Override
+		public void doubleValue(double value) {
+			add(new DoubleTag(value));
+		}
+
+		@Override
+		public void stringValue(String value) {
+			add(new StringTag(value));
+		}
+
+		@Override
+		public void byteArray(byte[] value) {
+			add(new ByteArrayTag(value));
+		}
+
+		@Override
+		public void intArray(int[] value) {
+			add(new IntArrayTag(value));
+		}
+
+		@Override
+		public void longArray(long[] value) {
+			add(new LongArrayTag(value));
+		}
+	}
+}
@@ -4,6 +4,8 @@ import net.querz.io.Serializer;
 import net.querz.nbt.tag.Tag;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.zip.GZIPOutputStream;
 
 public class NBTSerializer implements Serializer<NamedTag> {
@@ -41,4 +43,50 @@ public class NBTSerializer implements Serializer<NamedTag> {
 		nbtOut.writeTag(object, Tag.DEFAULT_MAX_DEPTH);
 		nbtOut.flush();
 	}
+
+	/**
+	 * Writes a named tag into a new heap buffer.
+	 * @param object The named tag to write.
+	 * @return A buffer containing the data between index {@code 0} and its limit.
+	 * @throws IOException If the tag could not be written.
+	 * */
+	public ByteBuffer toBuffer(NamedTag object) throws IOException {
+		if (compressed) {
+			return ByteBuffer.wrap(toBytes(object));
+		}
+		NBTBufferOutput nbtOut = new NBTBufferOutput(order());
+		nbtOut.writeTag(object, Tag.DEFAULT_MAX_DEPTH);
+		ByteBuffer buffer = nbtOut.getBuffer();
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * Writes a named tag directly into a {@link ByteBuffer}, starting at its position.
+	 * The byte order of the buffer is ignored and remains unchanged. If the data does not fit into
+	 * the buffer, it is written into a new, larger buffer of the same kind containing the data of
+	 * {@code buffer} before its position, so the returned buffer must be used instead.
+	 * @param object The named tag to write.
+	 * @param buffer The buffer to write into.
+	 * @return {@code buffer} or a larger copy of it, positioned after the written data.
+	 * @throws IOException If the tag could not be written.
+	 * */
+	public ByteBuffer toBuffer(NamedTag object, ByteBuffer buffer) throws IOException {
+		ByteBuffer out = buffer.duplicate().order(order());
+		NBTBufferOutput nbtOut = new NBTBufferOutput(out);
+		if (compressed) {
+			nbtOut.write(toBytes(object));
+		} else {
+			nbtOut.writeTag(object, Tag.DEFAULT_MAX_DEPTH);
+		}
+		if (nbtOut.getBuffer() != out) {
+			return nbtOut.getBuffer().order(buffer.order());
+		}
+		buffer.position(out.position());
+		return buffer;
+	}
+
+	private ByteOrder order() {
+		return littleEndian ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+	}
 }
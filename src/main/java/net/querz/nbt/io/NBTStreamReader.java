@@ -0,0 +1,244 @@
+package net.querz.nbt.io;
+
+import net.querz.io.MaxDepthIO;
+import net.querz.nbt.tag.ByteArrayTag;
+import net.querz.nbt.tag.ByteTag;
+import net.querz.nbt.tag.CompoundTag;
+import net.querz.nbt.tag.DoubleTag;
+import net.querz.nbt.tag.EndTag;
+import net.querz.nbt.tag.FloatTag;
+import net.querz.nbt.tag.IntArrayTag;
+import net.querz.nbt.tag.IntTag;
+import net.querz.nbt.tag.ListTag;
+import net.querz.nbt.tag.LongArrayTag;
+import net.querz.nbt.tag.LongTag;
+import net.querz.nbt.tag.ShortTag;
+import net.querz.nbt.tag.StringTag;
+import net.querz.nbt.tag.Tag;
+import java.io.DataInput;
+import java.io.IOException;
+
+/**
+ * Reads NBT data as a stream of events passed to an {@link NBTHandler}, without creating any tags.
+ * Values that the handler is not interested in are skipped using their length prefixes.
+ * The encoding is determined by the underlying {@link DataInput}, so this works with both
+ * {@link NBTInputStream} and {@link LittleEndianNBTInputStream}.
+ * */
+public class NBTStreamReader implements MaxDepthIO {
+
+	// used to check the depth when skipping, which does not need an instance
+	private static final MaxDepthIO SKIP_DEPTH = new MaxDepthIO() {};
+
+	private final DataInput input;
+
+	public NBTStreamReader(DataInput input) {
+		this.input = input;
+	}
+
+	/**
+	 * Reads a named tag using {@link Tag#DEFAULT_MAX_DEPTH}.
+	 * @see NBTStreamReader#read(NBTHandler, int)
+	 * @param handler The handler receiving the events.
+	 * @throws IOException If reading failed or the handler threw an exception.
+	 * */
+	public void read(NBTHandler handler) throws IOException {
+		read(handler, Tag.DEFAULT_MAX_DEPTH);
+	}
+
+	/**
+	 * Reads a named tag, starting with a call to {@link NBTHandler#name(byte, String)}.
+	 * @param handler The handler receiving the events.
+	 * @param maxDepth The maximum nesting depth.
+	 * @throws IOException If reading failed or the handler threw an exception.
+	 * */
+	public void read(NBTHandler handler, int maxDepth) throws IOException {
+		byte type = input.readByte();
+		String name = NBTCodec.readString(input, true);
+		if (handler.name(type, name)) {
+			readValue(type, handler, maxDepth);
+		} else {
+			skip(input, type, maxDepth);
+		}
+	}
+
+	/**
+	 * Reads a tag without a name.
+	 * @param handler The handler receiving the events.
+	 * @param maxDepth The maximum nesting depth.
+	 * @throws IOException If reading failed or the handler threw an exception.
+	 * */
+	public void readRaw(NBTHandler handler, int maxDepth) throws IOException {
+		readValue(input.readByte(), handler, maxDepth);
+	}
+
+	private void readValue(byte type, NBTHandler handler, int maxDepth) throws IOException {
+		switch (type) {
+		case EndTag.ID:
+			break;
+		case ByteTag.ID:
+			handler.byteValue(input.readByte());
+			break;
+		case ShortTag.ID:
+			handler.shortValue(input.readShort());
+			break;
+		case IntTag.ID:
+			handler.intValue(input.readInt());
+			break;
+		case LongTag.ID:
+			handler.longValue(input.readLong());
+			break;
+		case FloatTag.ID:
+			handler.floatValue(input.readFloat());
+			break;
+		case DoubleTag.ID:
+			handler.doubleValue(input.readDouble());
+			break;
+		case ByteArrayTag.ID:
+			byte[] b = new byte[input.readInt()];
+			input.readFully(b);
+			handler.byteArray(b);
+			break;
+		case StringTag.ID:
+			handler.stringValue(NBTCodec.readString(input, false));
+			break;
+		case ListTag.ID:
+			readList(handler, maxDepth);
+			break;
+		case CompoundTag.ID:
+			readCompound(handler, maxDepth);
+			break;
+		case IntArrayTag.ID:
+			int[] ints = new int[input.readInt()];
+			NBTCodec.readInts(input, ints);
+			handler.intArray(ints);
+			break;
+		case LongArrayTag.ID:
+			long[] longs = new long[input.readInt()];
+			NBTCodec.readLongs(input, longs);
+			handler.longArray(longs);
+			break;
+		default:
+			throw new IOException("invalid tag id \"" + type + "\"");
+		}
+	}
+
+	private void readList(NBTHandler handler, int maxDepth) throws IOException {
+		byte elementType = input.readByte();
+		int length = Math.max(0, input.readInt());
+		if (!handler.startList(elementType, length)) {
+			skipElements(input, elementType, length, maxDepth);
+			return;
+		}
+		for (int i = 0; i < length; i++) {
+			readValue(elementType, handler, decrementMaxDepth(maxDepth));
+		}
+		handler.endList();
+	}
+
+	private void readCompound(NBTHandler handler, int maxDepth) throws IOException {
+		handler.startCompound();
+		for (byte id = input.readByte(); id != EndTag.ID; id = input.readByte()) {
+			String name = NBTCodec.readString(input, true);
+			if (handler.name(id, name)) {
+				readValue(id, handler, decrementMaxDepth(maxDepth));
+			} else {
+				skip(input, id, decrementMaxDepth(maxDepth));
+			}
+		}
+		handler.endCompound();
+	}
+
+	/**
+	 * Skips the value of a tag, including all of its children.
+	 * @param input The input to skip the value in.
+	 * @param type The id of the tag.
+	 * @param maxDepth The maximum nesting depth.
+	 * @throws IOException If the input ended before the value or if the value is invalid.
+	 * */
+	public static void skip(DataInput input, byte type, int maxDepth) throws IOException {
+		switch (type) {
+		case EndTag.ID:
+			break;
+		case ByteTag.ID:
+			skipFully(input, 1);
+			break;
+		case ShortTag.ID:
+			skipFully(input, 2);
+			break;
+		case IntTag.ID:
+		case FloatTag.ID:
+			skipFully(input, 4);
+			break;
+		case LongTag.ID:
+		case DoubleTag.ID:
+			skipFully(input, 8);
+			break;
+		case ByteArrayTag.ID:
+			skipFully(input, input.readInt());
+			break;
+		case StringTag.ID:
+			skipFully(input, input.readUnsignedShort());
+			break;
+		case ListTag.ID:
+			byte elementType = input.readByte();
+			skipElements(input, elementType, Math.max(0, input.readInt()), maxDepth);
+			break;
+		case CompoundTag.ID:
+			for (byte id = input.readByte(); id != EndTag.ID; id = input.readByte()) {
+				skipFully(input, input.readUnsignedShort());
+				skip(input, id, SKIP_DEPTH.decrementMaxDepth(maxDepth));
+			}
+			break;
+		case IntArrayTag.ID:
+			skipFully(input, input.readInt() * 4L);
+			break;
+		case LongArrayTag.ID:
+			skipFully(input, input.readInt() * 8L);
+			break;
+		default:
+			throw new IOException("invalid tag id \"" + type + "\"");
+		}
+	}
+
+	private static void skipElements(DataInput input, byte elementType, int length, int maxDepth) throws IOException {
+		if (length == 0) {
+			return;
+		}
+		int elementDepth = SKIP_DEPTH.decrementMaxDepth(maxDepth);
+		switch (elementType) {
+		case ByteTag.ID:
+			skipFully(input, length);
+			break;
+		case ShortTag.ID:
+			skipFully(input, length * 2L);
+			break;
+		case IntTag.ID:
+		case FloatTag.ID:
+			skipFully(input, length * 4L);
+			break;
+		case LongTag.ID:
+		case DoubleTag.ID:
+			skipFully(input, length * 8L);
+			break;
+		default:
+			for (int i = 0; i < length; i++) {
+				skip(input, elementType, elementDepth);
+			}
+		}
+	}
+
+	private static void skipFully(DataInput input, long n) throws IOException {
+		if (n < 0) {
+			throw new IOException("invalid length " + n);
+		}
+		while (n > 0) {
+			int skipped = input.skipBytes((int) Math.min(n, Integer.MAX_VALUE));
+			if (skipped <= 0) {
+				// skipBytes does not distinguish the end of the input from a temporary stall
+				input.readByte();
+				skipped = 1;
+			}
+			n -= skipped;
+		}
+	}
+}
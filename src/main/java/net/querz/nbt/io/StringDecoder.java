@@ -0,0 +1,146 @@
+package net.querz.nbt.io;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Decodes the length prefixed strings of NBT data, which are modified UTF-8 in big endian data
+ * and standard UTF-8 in little endian data. Strings that only consist of ASCII characters, which includes
+ * almost all keys, are created directly from the encoded bytes. The bytes are read into a scratch buffer
+ * that is reused for all strings, so each instance must only be used by a single reader.
+ * */
+final class StringDecoder {
+
+	private static final int MIN_BUFFER_SIZE = 64;
+
+	private final boolean modifiedUTF8;
+	private KeyCache keyCache;
+	private byte[] bytes;
+	private char[] chars;
+
+	StringDecoder(boolean modifiedUTF8) {
+		this.modifiedUTF8 = modifiedUTF8;
+	}
+
+	void setKeyCache(KeyCache keyCache) {
+		this.keyCache = keyCache;
+	}
+
+	KeyCache getKeyCache() {
+		return keyCache;
+	}
+
+	/**
+	 * @param length The minimum length of the scratch buffer.
+	 * @return The scratch buffer of this decoder, which is overwritten by the next call.
+	 * */
+	byte[] buffer(int length) {
+		if (bytes == null || bytes.length < length) {
+			bytes = new byte[Math.max(length, MIN_BUFFER_SIZE)];
+		}
+		return bytes;
+	}
+
+	/**
+	 * Reads a string prefixed with its length as an unsigned short.
+	 * @param in The input to read from.
+	 * @param key Whether the string is the key of a tag, which is looked up in the {@link KeyCache}.
+	 * @return The string.
+	 * @throws IOException If reading failed or the string is malformed.
+	 * */
+	String read(DataInput in, boolean key) throws IOException {
+		int length = in.readUnsignedShort();
+		byte[] b = buffer(length);
+		in.readFully(b, 0, length);
+		return decode(b, 0, length, key);
+	}
+
+	/**
+	 * @param b The array containing the encoded string.
+	 * @param offset The start of the string in {@code b}.
+	 * @param length The length of the encoded string.
+	 * @param key Whether the string is the key of a tag, which is looked up in the {@link KeyCache}.
+	 * @return The string.
+	 * @throws UTFDataFormatException If the string is malformed modified UTF-8.
+	 * */
+	String decode(byte[] b, int offset, int length, boolean key) throws UTFDataFormatException {
+		if (length == 0) {
+			return "";
+		}
+		int end = offset + length;
+		int hash = 0;
+		for (int i = offset; i < end; i++) {
+			if (b[i] < 0) {
+				return decodeUTF(b, offset, length);
+			}
+			hash = 31 * hash + b[i];
+		}
+		// ASCII characters are single bytes in both encodings, so they can be copied
+		KeyCache cache = keyCache;
+		if (key && cache != null) {
+			return cache.get(b, offset, length, hash);
+		}
+		return ascii(b, offset, length);
+	}
+
+	/**
+	 * @param b The array containing ASCII characters.
+	 * @param offset The start of the characters in {@code b}.
+	 * @param length The amount of characters.
+	 * @return A String of the characters.
+	 * */
+	@SuppressWarnings("deprecation")
+	static String ascii(byte[] b, int offset, int length) {
+		// copies the bytes without looking up a decoder, and creates a compact String where available
+		return new String(b, 0, offset, length);
+	}
+
+	private String decodeUTF(byte[] b, int offset, int length) throws UTFDataFormatException {
+		if (!modifiedUTF8) {
+			return new String(b, offset, length, StandardCharsets.UTF_8);
+		}
+		if (chars == null || chars.length < length) {
+			chars = new char[Math.max(length, MIN_BUFFER_SIZE)];
+		}
+		char[] c = chars;
+		int n = 0;
+		// the same checks as DataInputStream#readUTF(DataInput)
+		for (int i = offset, end = offset + length; i < end;) {
+			int b1 = b[i] & 0xFF;
+			switch (b1 >> 4) {
+			case 0: case 1: case 2: case 3: case 4: case 5: case 6: case 7:
+				i++;
+				c[n++] = (char) b1;
+				break;
+			case 12: case 13:
+				i += 2;
+				if (i > end) {
+					throw new UTFDataFormatException("malformed input: partial character at end");
+				}
+				int b2 = b[i - 1];
+				if ((b2 & 0xC0) != 0x80) {
+					throw new UTFDataFormatException("malformed input around byte " + (i - offset));
+				}
+				c[n++] = (char) ((b1 & 0x1F) << 6 | b2 & 0x3F);
+				break;
+			case 14:
+				i += 3;
+				if (i > end) {
+					throw new UTFDataFormatException("malformed input: partial character at end");
+				}
+				b2 = b[i - 2];
+				int b3 = b[i - 1];
+				if ((b2 & 0xC0) != 0x80 || (b3 & 0xC0) != 0x80) {
+					throw new UTFDataFormatException("malformed input around byte " + (i - 1 - offset));
+				}
+				c[n++] = (char) ((b1 & 0x0F) << 12 | (b2 & 0x3F) << 6 | b3 & 0x3F);
+				break;
+			default:
+				throw new UTFDataFormatException("malformed input around byte " + (i - offset));
+			}
+		}
+		return new String(c, 0, n);
+	}
+}
@@ -5,6 +5,8 @@ import java.lang.reflect.Array;
 /**
  * ArrayTag is an abstract representation of any NBT array tag.
  * For implementations see {@link ByteArrayTag}, {@link IntArrayTag}, {@link LongArrayTag}.
+ * A frozen ArrayTag does not allow setting a new array, but the contents of the array returned by
+ * {@link ArrayTag#getValue()} cannot be protected and must not be modified.
  * @param <T> The array type.
  * */
 public abstract class ArrayTag<T> extends Tag<T> {
@@ -27,7 +27,7 @@ public class ByteArrayTag extends ArrayTag<byte[]> implements Comparable<ByteArr
 
 	@Override
 	public int hashCode() {
-		return Arrays.hashCode(getValue());
+		return isFrozen() ? frozenHashCode() : Arrays.hashCode(getValue());
 	}
 
 	@Override
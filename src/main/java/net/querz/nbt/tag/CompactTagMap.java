@@ -0,0 +1,323 @@
+package net.querz.nbt.tag;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * A memory-compact map used as the value of compact {@link CompoundTag}s, preserving insertion order.
+ * Keys and values are stored in two parallel arrays without any entry objects. Small maps, which
+ * are the vast majority of compounds in NBT data, are searched linearly. Maps with more than
+ * {@link CompactTagMap#LINEAR_THRESHOLD} entries additionally use an open addressing table with
+ * linear probing that stores the index of each entry.<br>
+ * Removing an entry is linear in the size of the map.
+ * */
+final class CompactTagMap extends AbstractMap<String, Tag<?>> {
+
+	/**
+	 * Maps with up to this many entries do not use a hash table.
+	 * */
+	static final int LINEAR_THRESHOLD = 8;
+
+	private static final String[] EMPTY_KEYS = {};
+	private static final Tag<?>[] EMPTY_VALUES = {};
+
+	private String[] keys;
+	private Tag<?>[] values;
+	private int size;
+	// the index of each entry + 1 at the slot of its key, 0 marks an empty slot. null while the map is searched linearly
+	private int[] table;
+	private int modCount;
+	private Set<Map.Entry<String, Tag<?>>> entrySet;
+
+	CompactTagMap(int expectedSize) {
+		if (expectedSize < 0) {
+			throw new IllegalArgumentException("negative expected size " + expectedSize);
+		}
+		keys = expectedSize == 0 ? EMPTY_KEYS : new String[expectedSize];
+		values = expectedSize == 0 ? EMPTY_VALUES : new Tag<?>[expectedSize];
+	}
+
+	private static int hash(Object key) {
+		int h = key.hashCode();
+		return h ^ h >>> 16;
+	}
+
+	private int indexOf(Object key) {
+		if (key == null) {
+			return -1;
+		}
+		if (table == null) {
+			for (int i = 0; i < size; i++) {
+				if (keys[i] == key || keys[i].equals(key)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+		int mask = table.length - 1;
+		for (int slot = hash(key) & mask; ; slot = slot + 1 & mask) {
+			int i = table[slot] - 1;
+			if (i < 0) {
+				return -1;
+			}
+			if (keys[i] == key || keys[i].equals(key)) {
+				return i;
+			}
+		}
+	}
+
+	private void insertSlot(int index) {
+		int mask = table.length - 1;
+		int slot = hash(keys[index]) & mask;
+		while (table[slot] != 0) {
+			slot = slot + 1 & mask;
+		}
+		table[slot] = index + 1;
+	}
+
+	private void rebuildTable() {
+		if (size <= LINEAR_THRESHOLD) {
+			table = null;
+			return;
+		}
+		// keep the load factor at or below 0.5
+		int capacity = Integer.highestOneBit(size * 2 - 1) << 1;
+		if (table == null || table.length != capacity) {
+			table = new int[capacity];
+		} else {
+			Arrays.fill(table, 0);
+		}
+		for (int i = 0; i < size; i++) {
+			insertSlot(i);
+		}
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return indexOf(key) >= 0;
+	}
+
+	@Override
+	public Tag<?> get(Object key) {
+		int i = indexOf(key);
+		return i < 0 ? null : values[i];
+	}
+
+	@Override
+	public Tag<?> put(String key, Tag<?> value) {
+		if (key == null) {
+			throw new NullPointerException("key must not be null");
+		}
+		int i = indexOf(key);
+		if (i >= 0) {
+			Tag<?> old = values[i];
+			values[i] = value;
+			return old;
+		}
+		if (size == keys.length) {
+			int capacity = Math.max(4, size + (size >> 1));
+			keys = Arrays.copyOf(keys, capacity);
+			values = Arrays.copyOf(values, capacity);
+		}
+		keys[size] = key;
+		values[size] = value;
+		size++;
+		modCount++;
+		if (table == null || size * 2 > table.length) {
+			rebuildTable();
+		} else {
+			insertSlot(size - 1);
+		}
+		return null;
+	}
+
+	@Override
+	public Tag<?> remove(Object key) {
+		int i = indexOf(key);
+		return i < 0 ? null : removeAt(i);
+	}
+
+	private Tag<?> removeAt(int index) {
+		Tag<?> old = values[index];
+		int moved = size - index - 1;
+		System.arraycopy(keys, index + 1, keys, index, moved);
+		System.arraycopy(values, index + 1, values, index, moved);
+		size--;
+		keys[size] = null;
+		values[size] = null;
+		modCount++;
+		// the indices of all following entries changed
+		if (table != null) {
+			rebuildTable();
+		}
+		return old;
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(keys, 0, size, null);
+		Arrays.fill(values, 0, size, null);
+		size = 0;
+		table = null;
+		modCount++;
+	}
+
+	/**
+	 * Shrinks the internal arrays to the current size of this map.
+	 * */
+	void trimToSize() {
+		if (keys.length != size) {
+			keys = size == 0 ? EMPTY_KEYS : Arrays.copyOf(keys, size);
+			values = size == 0 ? EMPTY_VALUES : Arrays.copyOf(values, size);
+		}
+	}
+
+	@Override
+	public void forEach(BiConsumer<? super String, ? super Tag<?>> action) {
+		int expectedModCount = modCount;
+		for (int i = 0; i < size; i++) {
+			action.accept(keys[i], values[i]);
+		}
+		if (modCount != expectedModCount) {
+			throw new ConcurrentModificationException();
+		}
+	}
+
+	@Override
+	public Set<Map.Entry<String, Tag<?>>> entrySet() {
+		if (entrySet == null) {
+			entrySet = new EntrySet();
+		}
+		return entrySet;
+	}
+
+	private class EntrySet extends AbstractSet<Map.Entry<String, Tag<?>>> {
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public void clear() {
+			CompactTagMap.this.clear();
+		}
+
+		@Override
+		public Iterator<Map.Entry<String, Tag<?>>> iterator() {
+			return new EntryIterator();
+		}
+	}
+
+	private class EntryIterator implements Iterator<Map.Entry<String, Tag<?>>> {
+
+		private int next, last = -1;
+		private int expectedModCount = modCount;
+
+		@Override
+		public boolean hasNext() {
+			return next < size;
+		}
+
+		@Override
+		public Map.Entry<String, Tag<?>> next() {
+			if (modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+			if (next >= size) {
+				throw new NoSuchElementException();
+			}
+			last = next++;
+			return new Entry(last);
+		}
+
+		@Override
+		public void remove() {
+			if (last < 0) {
+				throw new IllegalStateException();
+			}
+			if (modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+			removeAt(last);
+			next = last;
+			last = -1;
+			expectedModCount = modCount;
+		}
+	}
+
+	private class Entry implements Map.Entry<String, Tag<?>> {
+
+		private final String key;
+		private final int index;
+		private final int expectedModCount = modCount;
+
+		Entry(int index) {
+			this.key = keys[index];
+			this.index = index;
+		}
+
+		// the index of this entry, or -1 if it was removed
+		private int index() {
+			if (modCount == expectedModCount) {
+				return index;
+			}
+			return indexOf(key);
+		}
+
+		@Override
+		public String getKey() {
+			return key;
+		}
+
+		@Override
+		public Tag<?> getValue() {
+			int i = index();
+			return i < 0 ? null : values[i];
+		}
+
+		@Override
+		public Tag<?> setValue(Tag<?> value) {
+			int i = index();
+			if (i < 0) {
+				throw new IllegalStateException("entry was removed");
+			}
+			Tag<?> old = values[i];
+			values[i] = value;
+			return old;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Map.Entry)) {
+				return false;
+			}
+			Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+			Tag<?> value = getValue();
+			return key.equals(e.getKey()) && (value == null ? e.getValue() == null : value.equals(e.getValue()));
+		}
+
+		@Override
+		public int hashCode() {
+			Tag<?> value = getValue();
+			return key.hashCode() ^ (value == null ? 0 : value.hashCode());
+		}
+
+		@Override
+		public String toString() {
+			return key + "=" + getValue();
+		}
+	}
+}
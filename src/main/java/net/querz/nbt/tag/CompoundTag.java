@@ -1,6 +1,7 @@
 package net.querz.nbt.tag;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -15,6 +16,8 @@ public class CompoundTag extends Tag<Map<String, Tag<?>>>
 
 	public static final byte ID = 10;
 
+	private boolean compact;
+
 	public CompoundTag() {
 		super(createEmptyValue());
 	}
@@ -23,6 +26,40 @@ public class CompoundTag extends Tag<Map<String, Tag<?>>>
 		super(new HashMap<>(initialCapacity));
 	}
 
+	private CompoundTag(Map<String, Tag<?>> value) {
+		super(value);
+	}
+
+	/**
+	 * Creates a CompoundTag using a memory-compact storage that preserves the insertion order of its entries.
+	 * Compact CompoundTags use considerably less memory than CompoundTags backed by a {@link HashMap},
+	 * especially for compounds with only a few entries, which are searched linearly. Their clones are compact as well.
+	 * @param expectedSize The amount of entries the storage is initially sized for.
+	 * @return A new, empty and compact CompoundTag.
+	 * @throws IllegalArgumentException If {@code expectedSize} is negative.
+	 * */
+	public static CompoundTag createCompact(int expectedSize) {
+		CompoundTag tag = new CompoundTag(new CompactTagMap(expectedSize));
+		tag.compact = true;
+		return tag;
+	}
+
+	/**
+	 * @return {@code true} if this CompoundTag was created with {@link CompoundTag#createCompact(int)}.
+	 * */
+	public boolean isCompact() {
+		return compact;
+	}
+
+	/**
+	 * Shrinks the storage of a compact CompoundTag to its current size. Has no effect on other CompoundTags.
+	 * */
+	public void trimToSize() {
+		if (getValue() instanceof CompactTagMap) {
+			((CompactTagMap) getValue()).trimToSize();
+		}
+	}
+
 	@Override
 	public byte getID() {
 		return ID;
@@ -251,6 +288,23 @@ public class CompoundTag extends Tag<Map<String, Tag<?>>>
 		return put(key, new LongArrayTag(value));
 	}
 
+	@Override
+	public CompoundTag freeze() {
+		super.freeze();
+		return this;
+	}
+
+	@Override
+	protected Map<String, Tag<?>> freezeValue(Map<String, Tag<?>> value) {
+		for (Tag<?> tag : value.values()) {
+			tag.freeze();
+		}
+		if (value instanceof CompactTagMap) {
+			((CompactTagMap) value).trimToSize();
+		}
+		return Collections.unmodifiableMap(value);
+	}
+
 	@Override
 	public String valueToString(int maxDepth) {
 		StringBuilder sb = new StringBuilder("{");
@@ -290,7 +344,7 @@ public class CompoundTag extends Tag<Map<String, Tag<?>>>
 	@Override
 	public CompoundTag clone() {
 		// Choose initial capacity based on default load factor (0.75) so all entries fit in map without resizing
-		CompoundTag copy = new CompoundTag((int) Math.ceil(getValue().size() / 0.75f));
+		CompoundTag copy = compact ? createCompact(size()) : new CompoundTag((int) Math.ceil(getValue().size() / 0.75f));
 		for (Map.Entry<String, Tag<?>> e : getValue().entrySet()) {
 			copy.put(e.getKey(), e.getValue().clone());
 		}
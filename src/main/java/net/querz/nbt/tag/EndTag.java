@@ -19,6 +19,11 @@ public final class EndTag extends Tag<Void> {
 		return value;
 	}
 
+	@Override
+	public int hashCode() {
+		return 0;
+	}
+
 	@Override
 	public String valueToString(int maxDepth) {
 		return "\"end\"";
@@ -27,7 +27,7 @@ public class IntArrayTag extends ArrayTag<int[]> implements Comparable<IntArrayT
 
 	@Override
 	public int hashCode() {
-		return Arrays.hashCode(getValue());
+		return isFrozen() ? frozenHashCode() : Arrays.hashCode(getValue());
 	}
 
 	@Override
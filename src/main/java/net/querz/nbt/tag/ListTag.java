@@ -2,6 +2,7 @@ package net.querz.nbt.tag;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
@@ -26,11 +27,82 @@ public class ListTag<T extends Tag<?>> extends Tag<List<T>> implements Iterable<
 		super(createEmptyValue(initialCapacity));
 	}
 
+	private ListTag(PrimitiveTagList<T> value, Class<?> typeClass) {
+		super(value);
+		this.typeClass = typeClass;
+	}
+
 	@Override
 	public byte getID() {
 		return ID;
 	}
 
+	/**
+	 * Creates a ListTag of {@link ByteTag}s that stores its elements in {@code values}. The tags of the elements are
+	 * only created when they are accessed, while {@link ListTag#getByte(int)} reads directly from the array.
+	 * The array is not copied and must not be modified afterwards.
+	 * @param values The values of the elements.
+	 * @return The new ListTag.
+	 */
+	public static ListTag<ByteTag> ofBytes(byte[] values) {
+		return new ListTag<>(new PrimitiveTagList.Bytes(Objects.requireNonNull(values)), ByteTag.class);
+	}
+
+	/**
+	 * Creates a ListTag of {@link ShortTag}s that stores its elements in {@code values}. The tags of the elements are
+	 * only created when they are accessed, while {@link ListTag#getShort(int)} reads directly from the array.
+	 * The array is not copied and must not be modified afterwards.
+	 * @param values The values of the elements.
+	 * @return The new ListTag.
+	 */
+	public static ListTag<ShortTag> ofShorts(short[] values) {
+		return new ListTag<>(new PrimitiveTagList.Shorts(Objects.requireNonNull(values)), ShortTag.class);
+	}
+
+	/**
+	 * Creates a ListTag of {@link IntTag}s that stores its elements in {@code values}. The tags of the elements are
+	 * only created when they are accessed, while {@link ListTag#getInt(int)} reads directly from the array.
+	 * The array is not copied and must not be modified afterwards.
+	 * @param values The values of the elements.
+	 * @return The new ListTag.
+	 */
+	public static ListTag<IntTag> ofInts(int[] values) {
+		return new ListTag<>(new PrimitiveTagList.Ints(Objects.requireNonNull(values)), IntTag.class);
+	}
+
+	/**
+	 * Creates a ListTag of {@link LongTag}s that stores its elements in {@code values}. The tags of the elements are
+	 * only created when they are accessed, while {@link ListTag#getLong(int)} reads directly from the array.
+	 * The array is not copied and must not be modified afterwards.
+	 * @param values The values of the elements.
+	 * @return The new ListTag.
+	 */
+	public static ListTag<LongTag> ofLongs(long[] values) {
+		return new ListTag<>(new PrimitiveTagList.Longs(Objects.requireNonNull(values)), LongTag.class);
+	}
+
+	/**
+	 * Creates a ListTag of {@link FloatTag}s that stores its elements in {@code values}. The tags of the elements are
+	 * only created when they are accessed, while {@link ListTag#getFloat(int)} reads directly from the array.
+	 * The array is not copied and must not be modified afterwards.
+	 * @param values The values of the elements.
+	 * @return The new ListTag.
+	 */
+	public static ListTag<FloatTag> ofFloats(float[] values) {
+		return new ListTag<>(new PrimitiveTagList.Floats(Objects.requireNonNull(values)), FloatTag.class);
+	}
+
+	/**
+	 * Creates a ListTag of {@link DoubleTag}s that stores its elements in {@code values}. The tags of the elements are
+	 * only created when they are accessed, while {@link ListTag#getDouble(int)} reads directly from the array.
+	 * The array is not copied and must not be modified afterwards.
+	 * @param values The values of the elements.
+	 * @return The new ListTag.
+	 */
+	public static ListTag<DoubleTag> ofDoubles(double[] values) {
+		return new ListTag<>(new PrimitiveTagList.Doubles(Objects.requireNonNull(values)), DoubleTag.class);
+	}
+
 	/**
 	 * <p>Creates a non-type-safe ListTag. Its element type will be set after the first
 	 * element was added.</p>
@@ -146,6 +218,7 @@ public class ListTag<T extends Tag<?>> extends Tag<List<T>> implements Iterable<
 
 	public void add(int index, T t) {
 		Objects.requireNonNull(t);
+		checkFrozen();
 		if (getTypeClass() == EndTag.class) {
 			typeClass = t.getClass();
 		} else if (typeClass != t.getClass()) {
@@ -219,10 +292,98 @@ public class ListTag<T extends Tag<?>> extends Tag<List<T>> implements Iterable<
 		return getValue().get(index);
 	}
 
+	// reads an element without caching a tag for it if the list is stored as a primitive array
+	@SuppressWarnings("unchecked")
+	private T peek(int index) {
+		List<T> value = getValue();
+		if (value instanceof PrimitiveTagList) {
+			return ((PrimitiveTagList<T>) value).peek(index);
+		}
+		return value.get(index);
+	}
+
 	public int indexOf(T t) {
 		return getValue().indexOf(t);
 	}
 
+	/**
+	 * @param index The index of the element.
+	 * @return The value of the element at {@code index} as a {@code byte}.
+	 * @throws ClassCastException If the element is not a {@link NumberTag}.
+	 */
+	public byte getByte(int index) {
+		List<T> value = getValue();
+		if (value instanceof PrimitiveTagList.Bytes && ((PrimitiveTagList<?>) value).isPrimitive()) {
+			return ((PrimitiveTagList.Bytes) value).getByte(index);
+		}
+		return ((NumberTag<?>) peek(index)).asByte();
+	}
+
+	/**
+	 * @param index The index of the element.
+	 * @return The value of the element at {@code index} as a {@code short}.
+	 * @throws ClassCastException If the element is not a {@link NumberTag}.
+	 */
+	public short getShort(int index) {
+		List<T> value = getValue();
+		if (value instanceof PrimitiveTagList.Shorts && ((PrimitiveTagList<?>) value).isPrimitive()) {
+			return ((PrimitiveTagList.Shorts) value).getShort(index);
+		}
+		return ((NumberTag<?>) peek(index)).asShort();
+	}
+
+	/**
+	 * @param index The index of the element.
+	 * @return The value of the element at {@code index} as a {@code int}.
+	 * @throws ClassCastException If the element is not a {@link NumberTag}.
+	 */
+	public int getInt(int index) {
+		List<T> value = getValue();
+		if (value instanceof PrimitiveTagList.Ints && ((PrimitiveTagList<?>) value).isPrimitive()) {
+			return ((PrimitiveTagList.Ints) value).getInt(index);
+		}
+		return ((NumberTag<?>) peek(index)).asInt();
+	}
+
+	/**
+	 * @param index The index of the element.
+	 * @return The value of the element at {@code index} as a {@code long}.
+	 * @throws ClassCastException If the element is not a {@link NumberTag}.
+	 */
+	public long getLong(int index) {
+		List<T> value = getValue();
+		if (value instanceof PrimitiveTagList.Longs && ((PrimitiveTagList<?>) value).isPrimitive()) {
+			return ((PrimitiveTagList.Longs) value).getLong(index);
+		}
+		return ((NumberTag<?>) peek(index)).asLong();
+	}
+
+	/**
+	 * @param index The index of the element.
+	 * @return The value of the element at {@code index} as a {@code float}.
+	 * @throws ClassCastException If the element is not a {@link NumberTag}.
+	 */
+	public float getFloat(int index) {
+		List<T> value = getValue();
+		if (value instanceof PrimitiveTagList.Floats && ((PrimitiveTagList<?>) value).isPrimitive()) {
+			return ((PrimitiveTagList.Floats) value).getFloat(index);
+		}
+		return ((NumberTag<?>) peek(index)).asFloat();
+	}
+
+	/**
+	 * @param index The index of the element.
+	 * @return The value of the element at {@code index} as a {@code double}.
+	 * @throws ClassCastException If the element is not a {@link NumberTag}.
+	 */
+	public double getDouble(int index) {
+		List<T> value = getValue();
+		if (value instanceof PrimitiveTagList.Doubles && ((PrimitiveTagList<?>) value).isPrimitive()) {
+			return ((PrimitiveTagList.Doubles) value).getDouble(index);
+		}
+		return ((NumberTag<?>) peek(index)).asDouble();
+	}
+
 	@SuppressWarnings("unchecked")
 	public <L extends Tag<?>> ListTag<L> asTypedList(Class<L> type) {
 		checkTypeClass(type);
@@ -272,7 +433,9 @@ public class ListTag<T extends Tag<?>> extends Tag<List<T>> implements Iterable<
 	@SuppressWarnings("unchecked")
 	public ListTag<ListTag<?>> asListTagList() {
 		checkTypeClass(ListTag.class);
-		typeClass = ListTag.class;
+		if (!isFrozen()) {
+			typeClass = ListTag.class;
+		}
 		return (ListTag<ListTag<?>>) this;
 	}
 
@@ -280,11 +443,39 @@ public class ListTag<T extends Tag<?>> extends Tag<List<T>> implements Iterable<
 		return asTypedList(CompoundTag.class);
 	}
 
+	@Override
+	public ListTag<T> freeze() {
+		super.freeze();
+		return this;
+	}
+
+	@Override
+	protected List<T> freezeValue(List<T> value) {
+		if (value instanceof PrimitiveTagList && ((PrimitiveTagList<T>) value).isPrimitive()) {
+			// keep the primitive array so no tags are created and the primitive accessors stay fast
+			((PrimitiveTagList<T>) value).freeze();
+			return value;
+		}
+		for (T t : value) {
+			t.freeze();
+		}
+		return Collections.unmodifiableList(value);
+	}
+
 	@Override
 	public String valueToString(int maxDepth) {
 		StringBuilder sb = new StringBuilder("{\"type\":\"").append(getTypeClass().getSimpleName()).append("\",\"list\":[");
-		for (int i = 0; i < size(); i++) {
-			sb.append(i > 0 ? "," : "").append(get(i).valueToString(decrementMaxDepth(maxDepth)));
+		List<T> value = getValue();
+		if (value instanceof PrimitiveTagList && ((PrimitiveTagList<?>) value).isPrimitive()) {
+			PrimitiveTagList<?> primitive = (PrimitiveTagList<?>) value;
+			for (int i = 0; i < primitive.size(); i++) {
+				decrementMaxDepth(maxDepth);
+				sb.append(i > 0 ? "," : "").append(primitive.valueToString(i));
+			}
+		} else {
+			for (int i = 0; i < size(); i++) {
+				sb.append(i > 0 ? "," : "").append(value.get(i).valueToString(decrementMaxDepth(maxDepth)));
+			}
 		}
 		sb.append("]}");
 		return sb.toString();
@@ -299,8 +490,19 @@ public class ListTag<T extends Tag<?>> extends Tag<List<T>> implements Iterable<
 				.getTypeClass()) {
 			return false;
 		}
+		List<T> value = getValue();
+		List<?> otherValue = ((ListTag<?>) other).getValue();
+		if (value instanceof PrimitiveTagList && value.getClass() == otherValue.getClass()
+				&& ((PrimitiveTagList<?>) value).isPrimitive() && ((PrimitiveTagList<?>) otherValue).isPrimitive()) {
+			for (int i = 0; i < size(); i++) {
+				if (!((PrimitiveTagList<?>) value).equals(i, (PrimitiveTagList<?>) otherValue)) {
+					return false;
+				}
+			}
+			return true;
+		}
 		for (int i = 0; i < size(); i++) {
-			if (!get(i).equals(((ListTag<?>) other).get(i))) {
+			if (!peek(i).equals(((ListTag<?>) other).peek(i))) {
 				return false;
 			}
 		}
@@ -309,7 +511,7 @@ public class ListTag<T extends Tag<?>> extends Tag<List<T>> implements Iterable<
 
 	@Override
 	public int hashCode() {
-		return Objects.hash(getTypeClass().hashCode(), getValue().hashCode());
+		return isFrozen() ? frozenHashCode() : Objects.hash(getTypeClass().hashCode(), getValue().hashCode());
 	}
 
 	@Override
@@ -320,6 +522,10 @@ public class ListTag<T extends Tag<?>> extends Tag<List<T>> implements Iterable<
 	@SuppressWarnings("unchecked")
 	@Override
 	public ListTag<T> clone() {
+		List<T> value = getValue();
+		if (value instanceof PrimitiveTagList && ((PrimitiveTagList<?>) value).isPrimitive()) {
+			return new ListTag<>(((PrimitiveTagList<T>) value).copy(), typeClass);
+		}
 		ListTag<T> copy = new ListTag<>(this.size());
 		// assure type safety for clone
 		copy.typeClass = typeClass;
@@ -27,7 +27,7 @@ public class LongArrayTag extends ArrayTag<long[]> implements Comparable<LongArr
 
 	@Override
 	public int hashCode() {
-		return Arrays.hashCode(getValue());
+		return isFrozen() ? frozenHashCode() : Arrays.hashCode(getValue());
 	}
 
 	@Override
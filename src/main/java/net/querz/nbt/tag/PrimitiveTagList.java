@@ -0,0 +1,563 @@
+package net.querz.nbt.tag;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The value of a {@link ListTag} of numbers that stores its elements in a primitive array instead of one tag per element.
+ * Reading an element through the {@link List} API creates a tag for that element only and caches it, so changes to
+ * it are retained and later reads return the same tag. Reads never change the storage of this list, so they are
+ * safe to perform from several threads as long as no thread changes the list.<br>
+ * The first structural change, e.g. adding or removing an element, moves all elements into a regular list of tags
+ * and releases the array.<br>
+ * The primitive accessors of {@link ListTag}, e.g. {@link ListTag#getDouble(int)}, read from the array
+ * without creating any tags.<br>
+ * A frozen list rejects all changes while still storing its elements in the array. Tags that are created for
+ * it afterwards are frozen as well.
+ * @param <T> The type of the elements.
+ * */
+abstract class PrimitiveTagList<T extends Tag<?>> extends AbstractList<T> implements RandomAccess {
+
+	private volatile List<T> tags;
+	private volatile AtomicReferenceArray<T> views;
+	private volatile boolean frozen;
+
+	/**
+	 * @return {@code true} if the elements are still stored in the primitive array.
+	 * */
+	final boolean isPrimitive() {
+		return tags == null;
+	}
+
+	/**
+	 * @param index The index of the element.
+	 * @return The cached tag of the element at {@code index}, or {@code null} if it has not been read as a tag yet.
+	 * */
+	final T view(int index) {
+		AtomicReferenceArray<T> v = views;
+		return v == null ? null : v.get(index);
+	}
+
+	/**
+	 * @return {@code true} if any element has been read as a tag.
+	 * */
+	final boolean hasViews() {
+		return views != null;
+	}
+
+	/**
+	 * Makes this list read-only without creating tags for its elements. Only valid while the values are stored
+	 * in the primitive array.
+	 * */
+	final void freeze() {
+		frozen = true;
+		AtomicReferenceArray<T> v = views;
+		if (v != null) {
+			for (int i = 0; i < v.length(); i++) {
+				T tag = v.get(i);
+				if (tag != null) {
+					tag.freeze();
+				}
+			}
+		}
+	}
+
+	private AtomicReferenceArray<T> views() {
+		AtomicReferenceArray<T> v = views;
+		if (v == null) {
+			synchronized (this) {
+				if ((v = views) == null) {
+					views = v = new AtomicReferenceArray<>(length());
+				}
+			}
+		}
+		return v;
+	}
+
+	private List<T> tags() {
+		if (frozen) {
+			throw new UnsupportedOperationException("cannot modify frozen ListTag");
+		}
+		List<T> t = tags;
+		if (t == null) {
+			synchronized (this) {
+				if ((t = tags) == null) {
+					int length = length();
+					t = new ArrayList<>(Math.max(length, 3));
+					for (int i = 0; i < length; i++) {
+						t.add(peek(i));
+					}
+					// publish the tags before dropping the array they were created from
+					tags = t;
+					views = null;
+					release();
+				}
+			}
+		}
+		return t;
+	}
+
+	/**
+	 * @return The amount of values in the primitive array.
+	 * */
+	abstract int length();
+
+	/**
+	 * @param index The index of the element.
+	 * @return A new tag containing the value at {@code index}.
+	 * */
+	abstract T create(int index);
+
+	/**
+	 * Drops the primitive array after all elements have been moved into the list of tags.
+	 * */
+	abstract void release();
+
+	/**
+	 * @return A copy of this list, only valid while the values are stored in the primitive array.
+	 * */
+	abstract PrimitiveTagList<T> copy();
+
+	/**
+	 * @param index The index of the element.
+	 * @return The hash code of the tag of the element at {@code index}, only valid while the values are stored
+	 * in the primitive array.
+	 * */
+	abstract int hashCode(int index);
+
+	/**
+	 * @param index The index of the element.
+	 * @param other A list of the same class.
+	 * @return Whether the elements at {@code index} are equal, only valid while both lists store their values
+	 * in the primitive array.
+	 * */
+	abstract boolean equals(int index, PrimitiveTagList<?> other);
+
+	/**
+	 * @param index The index of the element.
+	 * @return The String representation of the element at {@code index}, only valid while the values are stored
+	 * in the primitive array.
+	 * */
+	abstract String valueToString(int index);
+
+	/**
+	 * Returns the element at an index without caching a tag for it.
+	 * @param index The index of the element.
+	 * @return The element, or a new tag containing its value if it has not been read as a tag yet.
+	 * */
+	final T peek(int index) {
+		List<T> t = tags;
+		if (t != null) {
+			return t.get(index);
+		}
+		T tag = view(index);
+		return tag == null ? createTag(index) : tag;
+	}
+
+	private T createTag(int index) {
+		T tag = create(index);
+		if (frozen) {
+			tag.freeze();
+		}
+		return tag;
+	}
+
+	@Override
+	public int hashCode() {
+		List<T> t = tags;
+		if (t != null) {
+			return t.hashCode();
+		}
+		int hashCode = 1;
+		for (int i = 0, length = length(); i < length; i++) {
+			hashCode = 31 * hashCode + hashCode(i);
+		}
+		return hashCode;
+	}
+
+	@Override
+	public int size() {
+		List<T> t = tags;
+		return t == null ? length() : t.size();
+	}
+
+	@Override
+	public T get(int index) {
+		List<T> t = tags;
+		if (t != null) {
+			return t.get(index);
+		}
+		AtomicReferenceArray<T> v = views();
+		T tag = v.get(index);
+		if (tag == null) {
+			T created = createTag(index);
+			// another reader may have cached a tag for this element in the meantime
+			tag = v.compareAndSet(index, null, created) ? created : v.get(index);
+		}
+		return tag;
+	}
+
+	@Override
+	public T set(int index, T element) {
+		return tags().set(index, element);
+	}
+
+	@Override
+	public void add(int index, T element) {
+		tags().add(index, element);
+		modCount++;
+	}
+
+	@Override
+	public T remove(int index) {
+		T removed = tags().remove(index);
+		modCount++;
+		return removed;
+	}
+
+	@Override
+	public void clear() {
+		tags().clear();
+		modCount++;
+	}
+
+	static final class Bytes extends PrimitiveTagList<ByteTag> {
+
+		private byte[] values;
+
+		Bytes(byte[] values) {
+			this.values = values;
+		}
+
+		byte getByte(int index) {
+			ByteTag tag = view(index);
+			return tag == null ? values[index] : tag.asByte();
+		}
+
+		@Override
+		int length() {
+			return values.length;
+		}
+
+		@Override
+		ByteTag create(int index) {
+			return new ByteTag(values[index]);
+		}
+
+		@Override
+		void release() {
+			values = null;
+		}
+
+		@Override
+		Bytes copy() {
+			byte[] copy = Arrays.copyOf(values, values.length);
+			if (hasViews()) {
+				for (int i = 0; i < copy.length; i++) {
+					copy[i] = getByte(i);
+				}
+			}
+			return new Bytes(copy);
+		}
+
+		@Override
+		int hashCode(int index) {
+			ByteTag tag = view(index);
+			return tag == null ? Byte.hashCode(values[index]) : tag.hashCode();
+		}
+
+		@Override
+		boolean equals(int index, PrimitiveTagList<?> other) {
+			return getByte(index) == ((Bytes) other).getByte(index);
+		}
+
+		@Override
+		String valueToString(int index) {
+			return String.valueOf(getByte(index));
+		}
+	}
+
+	static final class Shorts extends PrimitiveTagList<ShortTag> {
+
+		private short[] values;
+
+		Shorts(short[] values) {
+			this.values = values;
+		}
+
+		short getShort(int index) {
+			ShortTag tag = view(index);
+			return tag == null ? values[index] : tag.asShort();
+		}
+
+		@Override
+		int length() {
+			return values.length;
+		}
+
+		@Override
+		ShortTag create(int index) {
+			return new ShortTag(values[index]);
+		}
+
+		@Override
+		void release() {
+			values = null;
+		}
+
+		@Override
+		Shorts copy() {
+			short[] copy = Arrays.copyOf(values, values.length);
+			if (hasViews()) {
+				for (int i = 0; i < copy.length; i++) {
+					copy[i] = getShort(i);
+				}
+			}
+			return new Shorts(copy);
+		}
+
+		@Override
+		int hashCode(int index) {
+			ShortTag tag = view(index);
+			return tag == null ? Short.hashCode(values[index]) : tag.hashCode();
+		}
+
+		@Override
+		boolean equals(int index, PrimitiveTagList<?> other) {
+			return getShort(index) == ((Shorts) other).getShort(index);
+		}
+
+		@Override
+		String valueToString(int index) {
+			return String.valueOf(getShort(index));
+		}
+	}
+
+	static final class Ints extends PrimitiveTagList<IntTag> {
+
+		private int[] values;
+
+		Ints(int[] values) {
+			this.values = values;
+		}
+
+		int getInt(int index) {
+			IntTag tag = view(index);
+			return tag == null ? values[index] : tag.asInt();
+		}
+
+		@Override
+		int length() {
+			return values.length;
+		}
+
+		@Override
+		IntTag create(int index) {
+			return new IntTag(values[index]);
+		}
+
+		@Override
+		void release() {
+			values = null;
+		}
+
+		@Override
+		Ints copy() {
+			int[] copy = Arrays.copyOf(values, values.length);
+			if (hasViews()) {
+				for (int i = 0; i < copy.length; i++) {
+					copy[i] = getInt(i);
+				}
+			}
+			return new Ints(copy);
+		}
+
+		@Override
+		int hashCode(int index) {
+			IntTag tag = view(index);
+			return tag == null ? Integer.hashCode(values[index]) : tag.hashCode();
+		}
+
+		@Override
+		boolean equals(int index, PrimitiveTagList<?> other) {
+			return getInt(index) == ((Ints) other).getInt(index);
+		}
+
+		@Override
+		String valueToString(int index) {
+			return String.valueOf(getInt(index));
+		}
+	}
+
+	static final class Longs extends PrimitiveTagList<LongTag> {
+
+		private long[] values;
+
+		Longs(long[] values) {
+			this.values = values;
+		}
+
+		long getLong(int index) {
+			LongTag tag = view(index);
+			return tag == null ? values[index] : tag.asLong();
+		}
+
+		@Override
+		int length() {
+			return values.length;
+		}
+
+		@Override
+		LongTag create(int index) {
+			return new LongTag(values[index]);
+		}
+
+		@Override
+		void release() {
+			values = null;
+		}
+
+		@Override
+		Longs copy() {
+			long[] copy = Arrays.copyOf(values, values.length);
+			if (hasViews()) {
+				for (int i = 0; i < copy.length; i++) {
+					copy[i] = getLong(i);
+				}
+			}
+			return new Longs(copy);
+		}
+
+		@Override
+		int hashCode(int index) {
+			LongTag tag = view(index);
+			return tag == null ? Long.hashCode(values[index]) : tag.hashCode();
+		}
+
+		@Override
+		boolean equals(int index, PrimitiveTagList<?> other) {
+			return getLong(index) == ((Longs) other).getLong(index);
+		}
+
+		@Override
+		String valueToString(int index) {
+			return String.valueOf(getLong(index));
+		}
+	}
+
+	static final class Floats extends PrimitiveTagList<FloatTag> {
+
+		private float[] values;
+
+		Floats(float[] values) {
+			this.values = values;
+		}
+
+		float getFloat(int index) {
+			FloatTag tag = view(index);
+			return tag == null ? values[index] : tag.asFloat();
+		}
+
+		@Override
+		int length() {
+			return values.length;
+		}
+
+		@Override
+		FloatTag create(int index) {
+			return new FloatTag(values[index]);
+		}
+
+		@Override
+		void release() {
+			values = null;
+		}
+
+		@Override
+		Floats copy() {
+			float[] copy = Arrays.copyOf(values, values.length);
+			if (hasViews()) {
+				for (int i = 0; i < copy.length; i++) {
+					copy[i] = getFloat(i);
+				}
+			}
+			return new Floats(copy);
+		}
+
+		@Override
+		int hashCode(int index) {
+			FloatTag tag = view(index);
+			return tag == null ? Float.hashCode(values[index]) : tag.hashCode();
+		}
+
+		@Override
+		boolean equals(int index, PrimitiveTagList<?> other) {
+			return Float.floatToIntBits(getFloat(index)) == Float.floatToIntBits(((Floats) other).getFloat(index));
+		}
+
+		@Override
+		String valueToString(int index) {
+			return String.valueOf(getFloat(index));
+		}
+	}
+
+	static final class Doubles extends PrimitiveTagList<DoubleTag> {
+
+		private double[] values;
+
+		Doubles(double[] values) {
+			this.values = values;
+		}
+
+		double getDouble(int index) {
+			DoubleTag tag = view(index);
+			return tag == null ? values[index] : tag.asDouble();
+		}
+
+		@Override
+		int length() {
+			return values.length;
+		}
+
+		@Override
+		DoubleTag create(int index) {
+			return new DoubleTag(values[index]);
+		}
+
+		@Override
+		void release() {
+			values = null;
+		}
+
+		@Override
+		Doubles copy() {
+			double[] copy = Arrays.copyOf(values, values.length);
+			if (hasViews()) {
+				for (int i = 0; i < copy.length; i++) {
+					copy[i] = getDouble(i);
+				}
+			}
+			return new Doubles(copy);
+		}
+
+		@Override
+		int hashCode(int index) {
+			DoubleTag tag = view(index);
+			return tag == null ? Double.hashCode(values[index]) : tag.hashCode();
+		}
+
+		@Override
+		boolean equals(int index, PrimitiveTagList<?> other) {
+			return Double.doubleToLongBits(getDouble(index)) == Double.doubleToLongBits(((Doubles) other).getDouble(index));
+		}
+
+		@Override
+		String valueToString(int index) {
+			return String.valueOf(getDouble(index));
+		}
+	}
+}
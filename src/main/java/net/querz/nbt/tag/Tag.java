@@ -26,6 +26,13 @@ import java.util.regex.Pattern;
  * {@link #DEFAULT_MAX_DEPTH}, which is also the maximum used by Minecraft. This is documented for 
  * the respective methods.</p>
  * 
+ * <h1>Freezing</h1>
+ * <p>A Tag can be made immutable with {@link #freeze()}, which also freezes all nested tags. Any attempt to
+ * modify a frozen Tag results in an {@code UnsupportedOperationException}, and its hash code is only
+ * calculated once. Once a frozen Tag has been safely published, e.g. through a concurrent collection or a
+ * {@code volatile} field, it can be read by any number of threads at the same time without locking.
+ * {@link #clone()} always creates a mutable copy.</p>
+ * 
  * <p>If custom NBT tags contain objects other than NBT tags, which can be nested as well, then there 
  * is no guarantee that {@code MaxDepthReachedException}s are thrown for them. The respective class 
  * will document this behavior accordingly.</p>
@@ -54,6 +61,8 @@ public abstract class Tag<T> implements Cloneable {
 	private static final Pattern NON_QUOTE_PATTERN = Pattern.compile("[a-zA-Z0-9_\\-+]+");
 
 	private T value;
+	private boolean frozen;
+	private int frozenHashCode;
 
 	/**
 	 * Initializes this Tag with some value. If the value is {@code null}, it will
@@ -82,9 +91,57 @@ public abstract class Tag<T> implements Cloneable {
 	 * @throws NullPointerException If the value is null
 	 * */
 	protected void setValue(T value) {
+		checkFrozen();
 		this.value = checkValue(value);
 	}
 
+	/**
+	 * Makes this Tag and all nested tags immutable. Freezing an already frozen Tag has no effect.
+	 * @return This Tag.
+	 * */
+	public Tag<T> freeze() {
+		if (!frozen) {
+			value = freezeValue(value);
+			frozenHashCode = hashCode();
+			frozen = true;
+		}
+		return this;
+	}
+
+	/**
+	 * @return {@code true} if this Tag has been frozen using {@link Tag#freeze()}.
+	 * */
+	public boolean isFrozen() {
+		return frozen;
+	}
+
+	/**
+	 * Called once when this Tag is frozen. Tags containing other tags should freeze them and
+	 * return an unmodifiable view of their value.
+	 * @param value The current value of this Tag.
+	 * @return The value to be used from now on.
+	 * */
+	protected T freezeValue(T value) {
+		return value;
+	}
+
+	/**
+	 * @throws UnsupportedOperationException If this Tag is frozen.
+	 * */
+	protected void checkFrozen() {
+		if (frozen) {
+			throw new UnsupportedOperationException("cannot modify frozen " + getClass().getSimpleName());
+		}
+	}
+
+	/**
+	 * @return The hash code calculated when this Tag was frozen, or {@code 0} if this Tag is not frozen.
+	 * Custom Tag implementations overwriting {@link Tag#hashCode()} should return this if the Tag is frozen.
+	 * */
+	protected final int frozenHashCode() {
+		return frozenHashCode;
+	}
+
 	/**
 	 * Checks if the value {@code value} is {@code null}.
 	 * @param value The value to check
@@ -138,12 +195,17 @@ public abstract class Tag<T> implements Cloneable {
 	 * They are equal if {@code other} is not {@code null} and they are of the same class.
 	 * Custom Tag implementations should overwrite this but check the result
 	 * of this {@code super}-method while comparing.
+	 * If both Tags are frozen, their cached hash codes are compared as well.
 	 * @param other The Tag to compare to.
 	 * @return {@code true} if they are equal based on the conditions mentioned above.
 	 * */
 	@Override
 	public boolean equals(Object other) {
-		return other != null && getClass() == other.getClass();
+		if (other == null || getClass() != other.getClass()) {
+			return false;
+		}
+		Tag<?> o = (Tag<?>) other;
+		return !frozen || !o.frozen || frozenHashCode == o.frozenHashCode;
 	}
 
 	/**
@@ -153,7 +215,7 @@ public abstract class Tag<T> implements Cloneable {
 	 * */
 	@Override
 	public int hashCode() {
-		return value.hashCode();
+		return frozen ? frozenHashCode : value.hashCode();
 	}
 
 	/**
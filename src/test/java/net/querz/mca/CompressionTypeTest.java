@@ -1,5 +1,20 @@
 package net.querz.mca;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
 public class CompressionTypeTest extends MCATestCase {
 
 	public void testGetFromID() {
@@ -8,4 +23,200 @@ public class CompressionTypeTest extends MCATestCase {
 		assertEquals(CompressionType.ZLIB, CompressionType.getFromID(CompressionType.ZLIB.getID()));
 		assertNull(CompressionType.getFromID((byte) -1));
 	}
+
+	private static byte[] testData(int length) {
+		byte[] data = new byte[length];
+		Random random = new Random(length);
+		for (int i = 0; i < length; i++) {
+			// compressible, but not trivially
+			data[i] = (byte) (random.nextInt(16) + (i >> 8));
+		}
+		return data;
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1000];
+		int n;
+		while ((n = in.read(buffer)) != -1) {
+			out.write(buffer, 0, n);
+		}
+		return out.toByteArray();
+	}
+
+	private static byte[] compressStream(CompressionType type, byte[] data) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (OutputStream out = type.compress(baos)) {
+			out.write(data);
+		}
+		return baos.toByteArray();
+	}
+
+	public void testRoundTrip() throws IOException {
+		for (CompressionType type : CompressionType.values()) {
+			for (int length : new int[]{0, 1, 100, 70000}) {
+				byte[] data = testData(length);
+				byte[] compressed = type.compress(data);
+				assertTrue(Arrays.equals(data, type.decompress(compressed)));
+				try (InputStream in = type.decompress(new ByteArrayInputStream(compressed))) {
+					assertTrue(Arrays.equals(data, readAll(in)));
+				}
+				byte[] streamCompressed = compressStream(type, data);
+				assertTrue(Arrays.equals(data, type.decompress(streamCompressed)));
+
+				// with offset and length
+				byte[] padded = new byte[compressed.length + 10];
+				System.arraycopy(compressed, 0, padded, 3, compressed.length);
+				assertTrue(Arrays.equals(data, type.decompress(padded, 3, compressed.length)));
+				assertTrue(Arrays.equals(compressed, type.decompress(type.compress(padded, 3, compressed.length))));
+			}
+		}
+	}
+
+	public void testJDKCompatibility() throws IOException {
+		byte[] data = testData(50000);
+
+		try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(CompressionType.GZIP.compress(data)))) {
+			assertTrue(Arrays.equals(data, readAll(in)));
+		}
+		try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(CompressionType.ZLIB.compress(data)))) {
+			assertTrue(Arrays.equals(data, readAll(in)));
+		}
+
+		ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+		try (OutputStream out = new GZIPOutputStream(gzip)) {
+			out.write(data);
+		}
+		assertTrue(Arrays.equals(data, CompressionType.GZIP.decompress(gzip.toByteArray())));
+
+		ByteArrayOutputStream zlib = new ByteArrayOutputStream();
+		try (OutputStream out = new DeflaterOutputStream(zlib)) {
+			out.write(data);
+		}
+		assertTrue(Arrays.equals(data, CompressionType.ZLIB.decompress(zlib.toByteArray())));
+	}
+
+	public void testGzipHeaderFlags() throws IOException {
+		byte[] data = testData(1000);
+		byte[] compressed = CompressionType.GZIP.compress(data);
+		byte[] name = "chunk.nbt\0".getBytes();
+		byte[] extra = {4, 0, 1, 2, 3, 4};
+		// FEXTRA | FNAME
+		byte[] flagged = new byte[compressed.length + name.length + extra.length];
+		System.arraycopy(compressed, 0, flagged, 0, 10);
+		flagged[3] = 4 | 8;
+		System.arraycopy(extra, 0, flagged, 10, extra.length);
+		System.arraycopy(name, 0, flagged, 10 + extra.length, name.length);
+		System.arraycopy(compressed, 10, flagged, 10 + extra.length + name.length, compressed.length - 10);
+		assertTrue(Arrays.equals(data, CompressionType.GZIP.decompress(flagged)));
+		try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(flagged))) {
+			assertTrue(Arrays.equals(data, readAll(in)));
+		}
+	}
+
+	public void testGzipMultipleMembers() throws IOException {
+		byte[] first = testData(3000);
+		byte[] second = testData(5000);
+		byte[] a = CompressionType.GZIP.compress(first);
+		byte[] b = CompressionType.GZIP.compress(second);
+		byte[] members = new byte[a.length + b.length];
+		System.arraycopy(a, 0, members, 0, a.length);
+		System.arraycopy(b, 0, members, a.length, b.length);
+		byte[] expected = new byte[first.length + second.length];
+		System.arraycopy(first, 0, expected, 0, first.length);
+		System.arraycopy(second, 0, expected, first.length, second.length);
+
+		assertTrue(Arrays.equals(expected, CompressionType.GZIP.decompress(members)));
+		try (InputStream in = CompressionType.GZIP.decompress(new ByteArrayInputStream(members))) {
+			assertTrue(Arrays.equals(expected, readAll(in)));
+		}
+
+		// trailing data that does not start another member is ignored by both paths
+		byte[] trailing = Arrays.copyOf(members, members.length + 3);
+		assertTrue(Arrays.equals(expected, CompressionType.GZIP.decompress(trailing)));
+		try (InputStream in = CompressionType.GZIP.decompress(new ByteArrayInputStream(trailing))) {
+			assertTrue(Arrays.equals(expected, readAll(in)));
+		}
+
+		// each member is checked against its own trailer
+		byte[] badTrailer = members.clone();
+		badTrailer[a.length - 1]++;
+		assertThrowsException(() -> CompressionType.GZIP.decompress(badTrailer), ZipException.class);
+	}
+
+	public void testInvalidData() throws IOException {
+		byte[] data = testData(10000);
+		for (CompressionType type : new CompressionType[]{CompressionType.GZIP, CompressionType.ZLIB}) {
+			byte[] compressed = type.compress(data);
+			byte[] truncated = Arrays.copyOf(compressed, compressed.length / 2);
+			assertThrowsException(() -> type.decompress(truncated), EOFException.class);
+			byte[] corrupt = compressed.clone();
+			Arrays.fill(corrupt, 2, corrupt.length, (byte) 0xFF);
+			assertThrowsException(() -> type.decompress(corrupt), ZipException.class);
+		}
+		byte[] badTrailer = CompressionType.GZIP.compress(data);
+		badTrailer[badTrailer.length - 1]++;
+		assertThrowsException(() -> CompressionType.GZIP.decompress(badTrailer), ZipException.class);
+		assertThrowsException(() -> CompressionType.GZIP.decompress(new byte[]{1, 2, 3}), ZipException.class);
+
+		// the pooled inflater is usable again after a failure
+		assertTrue(Arrays.equals(data, CompressionType.ZLIB.decompress(CompressionType.ZLIB.compress(data))));
+	}
+
+	public void testNestedStreams() throws IOException {
+		byte[] a = testData(5000), b = testData(6000), c = testData(7000);
+		byte[] ca = CompressionType.ZLIB.compress(a), cb = CompressionType.ZLIB.compress(b), cc = CompressionType.ZLIB.compress(c);
+		// more streams than pooled inflaters open on the same thread at once
+		try (InputStream ia = CompressionType.ZLIB.decompress(new ByteArrayInputStream(ca));
+			 InputStream ib = CompressionType.ZLIB.decompress(new ByteArrayInputStream(cb));
+			 InputStream ic = CompressionType.ZLIB.decompress(new ByteArrayInputStream(cc))) {
+			assertTrue(Arrays.equals(b, readAll(ib)));
+			assertTrue(Arrays.equals(a, readAll(ia)));
+			assertTrue(Arrays.equals(c, readAll(ic)));
+			// reading again after the end has been reached
+			assertEquals(-1, ia.read());
+			assertEquals(0, ia.available());
+		}
+		assertTrue(Arrays.equals(a, CompressionType.ZLIB.decompress(ca)));
+	}
+
+	public void testLevelAndStrategy() throws IOException {
+		byte[] data = testData(50000);
+		for (boolean gzip : new boolean[]{false, true}) {
+			for (int level = -1; level <= 9; level++) {
+				for (int strategy : new int[]{Deflater.DEFAULT_STRATEGY, Deflater.FILTERED, Deflater.HUFFMAN_ONLY}) {
+					DeflateCodec codec = new DeflateCodec(gzip, level, strategy);
+					assertEquals(gzip, codec.isGzip());
+					assertEquals(level, codec.getLevel());
+					assertEquals(strategy, codec.getStrategy());
+					byte[] compressed = codec.compress(data, 0, data.length);
+					assertTrue(Arrays.equals(data, codec.decompress(compressed, 0, compressed.length)));
+				}
+			}
+		}
+		byte[] stored = new DeflateCodec(false, Deflater.NO_COMPRESSION, Deflater.DEFAULT_STRATEGY).compress(data, 0, data.length);
+		byte[] best = new DeflateCodec(false, Deflater.BEST_COMPRESSION, Deflater.DEFAULT_STRATEGY).compress(data, 0, data.length);
+		assertTrue(stored.length > data.length);
+		assertTrue(best.length < data.length);
+
+		assertThrowsRuntimeException(() -> new DeflateCodec(false, 10, Deflater.DEFAULT_STRATEGY), IllegalArgumentException.class);
+		assertThrowsRuntimeException(() -> new DeflateCodec(false, -2, Deflater.DEFAULT_STRATEGY), IllegalArgumentException.class);
+		assertThrowsRuntimeException(() -> new DeflateCodec(false, 5, 3), IllegalArgumentException.class);
+	}
+
+	public void testSetCodec() throws IOException {
+		CompressionCodec old = CompressionType.ZLIB.getCodec();
+		try {
+			DeflateCodec stored = new DeflateCodec(false, Deflater.NO_COMPRESSION, Deflater.DEFAULT_STRATEGY);
+			CompressionType.ZLIB.setCodec(stored);
+			assertSame(stored, CompressionType.ZLIB.getCodec());
+			byte[] data = testData(20000);
+			byte[] compressed = CompressionType.ZLIB.compress(data);
+			assertTrue(compressed.length > data.length);
+			assertTrue(Arrays.equals(data, old.decompress(compressed, 0, compressed.length)));
+			assertThrowsRuntimeException(() -> CompressionType.ZLIB.setCodec(null), NullPointerException.class);
+		} finally {
+			CompressionType.ZLIB.setCodec(old);
+		}
+	}
 }
@@ -0,0 +1,185 @@
+package net.querz.mca;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+public class Lz4CodecTest extends MCATestCase {
+
+	private static byte[] testData(int length, boolean compressible) {
+		byte[] data = new byte[length];
+		Random random = new Random(length);
+		for (int i = 0; i < length; i++) {
+			// compressible data mostly repeats the bytes 64 bytes before
+			data[i] = compressible && i >= 64 && random.nextInt(32) != 0 ? data[i - 64] : (byte) random.nextInt();
+		}
+		return data;
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[777];
+		int n;
+		while ((n = in.read(buffer)) != -1) {
+			out.write(buffer, 0, n);
+		}
+		return out.toByteArray();
+	}
+
+	private static byte[] bytes(int... values) {
+		byte[] b = new byte[values.length];
+		for (int i = 0; i < values.length; i++) {
+			b[i] = (byte) values[i];
+		}
+		return b;
+	}
+
+	private static void writeIntLE(ByteArrayOutputStream out, int value) {
+		out.write(value);
+		out.write(value >> 8);
+		out.write(value >> 16);
+		out.write(value >> 24);
+	}
+
+	public void testXXHash32() {
+		byte[] abc = "abc".getBytes(StandardCharsets.US_ASCII);
+		assertEquals(0x02CC5D05, XXHash32.hash(new byte[0], 0, 0, 0));
+		assertEquals(0x32D153FF, XXHash32.hash(abc, 0, 3, 0));
+
+		byte[] data = testData(1000, false);
+		int expected = XXHash32.hash(data, 0, data.length, 0x9747B28C);
+		for (int split : new int[]{1, 7, 16, 33}) {
+			XXHash32 hash = new XXHash32(0x9747B28C);
+			for (int i = 0; i < data.length; i += split) {
+				hash.update(data, i, Math.min(split, data.length - i));
+			}
+			assertEquals(expected, hash.getValue());
+		}
+	}
+
+	public void testRoundTrip() throws IOException {
+		for (boolean frame : new boolean[]{false, true}) {
+			Lz4Codec codec = new Lz4Codec(frame);
+			assertEquals(frame, codec.isFrame());
+			for (int length : new int[]{0, 1, 12, 13, 100, Lz4Codec.BLOCK_SIZE, Lz4Codec.BLOCK_SIZE + 1, 300000}) {
+				for (boolean compressible : new boolean[]{false, true}) {
+					byte[] data = testData(length, compressible);
+					byte[] compressed = codec.compress(data, 0, data.length);
+					if (compressible && length > 100) {
+						assertTrue(compressed.length < data.length / 2);
+					}
+					assertTrue(Arrays.equals(data, codec.decompress(compressed, 0, compressed.length)));
+					try (InputStream in = codec.decompress(new ByteArrayInputStream(compressed))) {
+						assertTrue(Arrays.equals(data, readAll(in)));
+					}
+
+					// single byte writes and reads produce the same data
+					ByteArrayOutputStream baos = new ByteArrayOutputStream();
+					try (OutputStream out = codec.compress(baos)) {
+						for (byte b : data) {
+							out.write(b);
+						}
+					}
+					assertTrue(Arrays.equals(compressed, baos.toByteArray()));
+					try (InputStream in = codec.decompress(new ByteArrayInputStream(compressed))) {
+						for (byte b : data) {
+							assertEquals(b & 0xFF, in.read());
+						}
+						assertEquals(-1, in.read());
+					}
+				}
+			}
+		}
+	}
+
+	public void testEmptyFrame() throws IOException {
+		// the output of the reference implementation for empty input
+		byte[] expected = bytes(0x04, 0x22, 0x4D, 0x18, 0x64, 0x40, 0xA7, 0, 0, 0, 0, 0x05, 0x5D, 0xCC, 0x02);
+		assertTrue(Arrays.equals(expected, new Lz4Codec(true).compress(new byte[0], 0, 0)));
+		assertEquals(0, new Lz4Codec().decompress(expected, 0, expected.length).length);
+	}
+
+	public void testBlockStreamLayout() throws IOException {
+		byte[] data = testData(1000, true);
+		byte[] compressed = CompressionType.LZ4.compress(data);
+		byte[] magic = "LZ4Block".getBytes(StandardCharsets.US_ASCII);
+		assertTrue(Arrays.equals(magic, Arrays.copyOf(compressed, 8)));
+		// LZ4 compressed, 64 KiB blocks
+		assertEquals(0x26, compressed[8]);
+		assertEquals(1000, XXHash32.readIntLE(compressed, 13));
+		assertEquals(XXHash32.hash(data, 0, data.length, 0x9747B28C) & 0x0FFFFFFF, XXHash32.readIntLE(compressed, 17));
+		// the end mark
+		byte[] end = Arrays.copyOfRange(compressed, compressed.length - 21, compressed.length);
+		assertTrue(Arrays.equals(magic, Arrays.copyOf(end, 8)));
+		assertEquals(0x16, end[8]);
+		assertTrue(Arrays.equals(new byte[12], Arrays.copyOfRange(end, 9, 21)));
+	}
+
+	public void testHandcraftedBlock() throws IOException {
+		// 1 literal, an overlapping match of 24 bytes at offset 1, 5 last literals
+		byte[] block = bytes(0x1F, 'a', 0x01, 0x00, 0x05, 0x50, 'b', 'c', 'd', 'e', 'f');
+		byte[] out = new byte[30];
+		assertEquals(30, Lz4Block.decompress(block, 0, block.length, out, 0, 0, out.length));
+		assertEquals("aaaaaaaaaaaaaaaaaaaaaaaaabcdef", new String(out, StandardCharsets.US_ASCII));
+
+		assertThrowsException(() -> Lz4Block.decompress(block, 0, block.length, new byte[29], 0, 0, 29), IOException.class);
+		assertThrowsException(() -> Lz4Block.decompress(block, 0, 4, out, 0, 0, out.length), EOFException.class);
+		byte[] invalidOffset = bytes(0x1F, 'a', 0x02, 0x00, 0x05, 0x50, 'b', 'c', 'd', 'e', 'f');
+		assertThrowsException(() -> Lz4Block.decompress(invalidOffset, 0, invalidOffset.length, out, 0, 0, out.length), IOException.class);
+	}
+
+	public void testDependentFrameBlocks() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		// a skippable frame
+		writeIntLE(out, 0x184D2A5F);
+		writeIntLE(out, 3);
+		out.write(1);
+		out.write(2);
+		out.write(3);
+
+		byte[] expected = "abcdefghabcdefgh!".getBytes(StandardCharsets.US_ASCII);
+		writeIntLE(out, 0x184D2204);
+		// version 1, dependent blocks, content checksum, 64 KiB blocks
+		byte[] descriptor = bytes(0x44, 0x40);
+		out.write(descriptor, 0, 2);
+		out.write(XXHash32.hash(descriptor, 0, 2, 0) >>> 8 & 0xFF);
+		byte[] block1 = bytes(0x80, 'a', 'b', 'c', 'd', 'e', 'f', 'g', 'h');
+		writeIntLE(out, block1.length);
+		out.write(block1, 0, block1.length);
+		// a match referring to the previous block, followed by one literal
+		byte[] block2 = bytes(0x04, 0x08, 0x00, 0x10, '!');
+		writeIntLE(out, block2.length);
+		out.write(block2, 0, block2.length);
+		writeIntLE(out, 0);
+		writeIntLE(out, XXHash32.hash(expected, 0, expected.length, 0));
+
+		// a second concatenated frame
+		byte[] second = new Lz4Codec(true).compress(expected, 0, expected.length);
+		out.write(second, 0, second.length);
+
+		byte[] data = out.toByteArray();
+		byte[] decompressed = new Lz4Codec().decompress(data, 0, data.length);
+		assertEquals("abcdefghabcdefgh!abcdefghabcdefgh!", new String(decompressed, StandardCharsets.US_ASCII));
+	}
+
+	public void testInvalidData() throws IOException {
+		Lz4Codec codec = new Lz4Codec();
+		byte[] data = testData(100000, true);
+		for (boolean frame : new boolean[]{false, true}) {
+			byte[] compressed = new Lz4Codec(frame).compress(data, 0, data.length);
+			byte[] truncated = Arrays.copyOf(compressed, compressed.length / 2);
+			assertThrowsException(() -> codec.decompress(truncated, 0, truncated.length), EOFException.class);
+			byte[] corrupt = compressed.clone();
+			corrupt[corrupt.length / 3]++;
+			assertThrowsException(() -> codec.decompress(corrupt, 0, corrupt.length), IOException.class);
+		}
+		assertThrowsException(() -> codec.decompress(new byte[]{1, 2, 3, 4, 5}, 0, 5), IOException.class);
+		assertThrowsException(() -> codec.decompress(new byte[0], 0, 0), EOFException.class);
+	}
+}
@@ -3,11 +3,20 @@ package net.querz.mca;
 import net.querz.nbt.tag.CompoundTag;
 import net.querz.nbt.tag.EndTag;
 import net.querz.nbt.tag.ListTag;
+import net.querz.nbt.tag.StringTag;
 import static net.querz.mca.LoadFlags.*;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class MCAFileTest extends MCATestCase {
 
@@ -355,6 +364,60 @@ public class MCAFileTest extends MCATestCase {
 		}, IOException.class);
 	}
 
+	public void testPartialLoadValues() {
+		File file = copyResourceToTmp("r.2.2.mca");
+		Chunk full = assertThrowsNoException(() -> MCAUtil.read(file)).getChunk(0);
+
+		Chunk biomes = assertThrowsNoException(() -> MCAUtil.read(file, BIOMES)).getChunk(0);
+		assertTrue(Arrays.equals(full.getBiomes(), biomes.getBiomes()));
+		assertEquals(full.getDataVersion(), biomes.getDataVersion());
+		assertEquals(full.getInhabitedTime(), biomes.getInhabitedTime());
+		assertEquals(full.getLastUpdate(), biomes.getLastUpdate());
+		assertEquals(full.getStatus(), biomes.getStatus());
+		assertNull(biomes.getSection(0));
+
+		Chunk blockStates = assertThrowsNoException(() -> MCAUtil.read(file, BLOCK_STATES)).getChunk(0);
+		assertNull(blockStates.getBiomes());
+		for (int y = 0; y < 16; y++) {
+			Section expected = full.getSection(y);
+			Section actual = blockStates.getSection(y);
+			if (expected == null || expected.getPalette() == null) {
+				continue;
+			}
+			assertTrue(Arrays.equals(expected.getBlockStates(), actual.getBlockStates()));
+			assertEquals(expected.getPalette(), actual.getPalette());
+			assertEquals(expected.getBlockStateAt(1, 2, 3), actual.getBlockStateAt(1, 2, 3));
+			assertNull(actual.getSkyLight());
+		}
+
+		Chunk raw = assertThrowsNoException(() -> MCAUtil.read(file, RAW)).getChunk(0);
+		assertEquals(full.getHandle(), raw.getHandle());
+
+		Chunk compactRaw = assertThrowsNoException(() -> MCAUtil.read(file, RAW | COMPACT_COMPOUNDS)).getChunk(0);
+		assertTrue(compactRaw.getHandle().isCompact());
+		assertFalse(full.getHandle().isCompact());
+		assertEquals(full.getHandle(), compactRaw.getHandle());
+		assertEquals(compactRaw.getHandle(), full.getHandle());
+		assertEquals(full.getHandle().hashCode(), compactRaw.getHandle().hashCode());
+
+		Chunk compactFull = assertThrowsNoException(() -> MCAUtil.read(file, ALL_DATA | COMPACT_COMPOUNDS)).getChunk(0);
+		assertTrue(compactFull.getHandle().isCompact());
+		assertEquals(full.getHandle(), compactFull.getHandle());
+		assertEquals(full.getSection(0).getPalette(), compactFull.getSection(0).getPalette());
+
+		Chunk compact = assertThrowsNoException(() -> MCAUtil.read(file, BLOCK_STATES | COMPACT_COMPOUNDS)).getChunk(0);
+		for (int y = 0; y < 16; y++) {
+			Section expected = full.getSection(y);
+			Section actual = compact.getSection(y);
+			if (expected == null || expected.getPalette() == null) {
+				continue;
+			}
+			assertTrue(actual.getPalette().get(0).isCompact());
+			assertEquals(expected.getPalette(), actual.getPalette());
+			assertEquals(expected.getBlockStateAt(1, 2, 3), actual.getBlockStateAt(1, 2, 3));
+		}
+	}
+
 	public void testChunkInvalidDataTag() {
 		assertThrowsException(() -> {
 			try (RandomAccessFile raf = new RandomAccessFile(getResourceFile("invalid_data_tag.dat"), "r")) {
@@ -436,6 +499,586 @@ public class MCAFileTest extends MCATestCase {
 		}
 	}
 
+	public void testReadMemoryMapped() {
+		File file = copyResourceToTmp("r.2.2.mca");
+		MCAFile expected = assertThrowsNoException(() -> MCAUtil.read(file));
+		MCAFile mapped = assertThrowsNoException(() -> MCAUtil.read(file, ALL_DATA, true));
+		for (int i = 0; i < 1024; i++) {
+			if (expected.getChunk(i) == null) {
+				assertNull(mapped.getChunk(i));
+			} else {
+				assertEquals(expected.getChunk(i).getLastMCAUpdate(), mapped.getChunk(i).getLastMCAUpdate());
+				assertEquals(expected.getChunk(i).getHandle(), mapped.getChunk(i).getHandle());
+			}
+		}
+
+		MCAFile partial = assertThrowsNoException(() -> MCAUtil.read(file, BIOMES, true));
+		assertNotNull(partial.getChunk(0).getBiomes());
+		assertNull(partial.getChunk(0).getSection(0));
+
+		File empty = getNewTmpFile("r.3.3.mca");
+		assertThrowsNoException(empty::createNewFile);
+		assertThrowsException(() -> MCAUtil.read(empty, ALL_DATA, true), EOFException.class);
+	}
+
+	public void testReadLazy() {
+		File file = copyResourceToTmp("r.2.2.mca");
+		MCAFile expected = assertThrowsNoException(() -> MCAUtil.read(file));
+		MCAFile lazy = assertThrowsNoException(() -> MCAUtil.readLazy(file, ALL_DATA));
+		assertEquals(expected.getChunk(512).getHandle(), lazy.getChunk(512).getHandle());
+		assertSame(lazy.getChunk(512), lazy.getChunk(512));
+		assertNull(lazy.getChunk(1));
+
+		// replaced chunks are never loaded
+		lazy.setChunk(0, null);
+		assertNull(lazy.getChunk(0));
+
+		int i = 0;
+		for (Chunk chunk : lazy) {
+			if (i == 1023) {
+				assertEquals(expected.getChunk(i).getHandle(), chunk.getHandle());
+			} else if (i != 512) {
+				assertNull(chunk);
+			}
+			i++;
+		}
+		assertEquals(1024, i);
+
+		File eagerFile = getNewTmpFile("r.2.2.mca");
+		assertThrowsNoException(() -> MCAUtil.write(expected, eagerFile));
+		File lazyFile = getNewTmpFile("r.2.2.mca");
+		Integer written = assertThrowsNoException(() -> MCAUtil.write(MCAUtil.readLazy(file, ALL_DATA), lazyFile));
+		assertEquals(3, written.intValue());
+		assertEquals(calculateFileMD5(eagerFile), calculateFileMD5(lazyFile));
+	}
+
+	public void testReadLazyConcurrently() throws Exception {
+		File file = copyResourceToTmp("r.2.2.mca");
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			for (int run = 0; run < 20; run++) {
+				MCAFile lazy = MCAUtil.readLazy(file, ALL_DATA);
+				List<Future<Chunk>> loaded = new ArrayList<>();
+				for (int i = 0; i < 16; i++) {
+					int index = i % 2 == 0 ? 512 : 1023;
+					loaded.add(pool.submit(() -> lazy.getChunk(index)));
+				}
+				for (int i = 0; i < loaded.size(); i++) {
+					// every thread sees the same chunk, so each chunk has only been loaded once
+					assertSame(lazy.getChunk(i % 2 == 0 ? 512 : 1023), loaded.get(i).get());
+				}
+				assertNull(lazy.getChunk(1));
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	public void testReadParallel() {
+		File file = copyResourceToTmp("r.2.2.mca");
+		MCAFile expected = assertThrowsNoException(() -> MCAUtil.read(file));
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			MCAFile parallel = assertThrowsNoException(() -> MCAUtil.read(file, ALL_DATA, pool));
+			MCAFile serial = assertThrowsNoException(() -> MCAUtil.read(file, ALL_DATA, null));
+			assertEquals(expected.getChunk(512).getHandle(), serial.getChunk(512).getHandle());
+			for (int i = 0; i < 1024; i++) {
+				if (expected.getChunk(i) == null) {
+					assertNull(parallel.getChunk(i));
+				} else {
+					assertEquals(expected.getChunk(i).getHandle(), parallel.getChunk(i).getHandle());
+				}
+			}
+
+			File invalid = getNewTmpFile("r.0.0.mca");
+			assertThrowsNoException(() -> {
+				byte[] data = Files.readAllBytes(file.toPath());
+				// corrupt the compression type of the chunk at index 512
+				data[(data[512 * 4 + 2] & 0xFF) * 4096 + 4] = 10;
+				Files.write(invalid.toPath(), data);
+			});
+			assertThrowsException(() -> MCAUtil.read(invalid, ALL_DATA, pool), IOException.class);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	public void testWriteParallel() {
+		MCAFile f = assertThrowsNoException(() -> MCAUtil.read(copyResourceToTmp("r.2.2.mca")));
+		File serial = getNewTmpFile("r.2.2.mca");
+		File parallel = getNewTmpFile("r.2.2.parallel.mca");
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			int serialChunks = assertThrowsNoException(() -> MCAUtil.write(f, serial));
+			int parallelChunks = assertThrowsNoException(() -> MCAUtil.write(f, parallel, false, pool));
+			assertEquals(serialChunks, parallelChunks);
+			assertEquals(calculateFileMD5(serial), calculateFileMD5(parallel));
+
+			MCAFile partial = assertThrowsNoException(() -> MCAUtil.read(serial, BIOMES));
+			assertThrowsException(() -> MCAUtil.write(partial, getNewTmpFile("r.2.2.partial.mca"), false, pool), UnsupportedOperationException.class);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	public void testSerializeChunkSubclass() {
+		AtomicInteger serialized = new AtomicInteger();
+		AtomicInteger compressed = new AtomicInteger();
+		Chunk chunk = new Chunk(Chunk.newChunk().getHandle()) {
+			@Override
+			public int serialize(RandomAccessFile raf, int xPos, int zPos) throws IOException {
+				serialized.incrementAndGet();
+				return super.serialize(raf, xPos, zPos);
+			}
+
+			@Override
+			protected byte[] compress(int xPos, int zPos, CompressionType compressionType) throws IOException {
+				compressed.incrementAndGet();
+				return super.compress(xPos, zPos, compressionType);
+			}
+		};
+		MCAFile f = new MCAFile(0, 0);
+		f.setChunk(0, chunk);
+		assertThrowsNoException(() -> MCAUtil.write(f, getNewTmpFile("r.0.0.mca")));
+		assertEquals(1, serialized.get());
+		assertEquals(1, compressed.get());
+
+		// the parallel path only compresses the chunks
+		ForkJoinPool pool = new ForkJoinPool(2);
+		try {
+			assertThrowsNoException(() -> MCAUtil.write(f, getNewTmpFile("r.0.0.mca"), false, pool));
+		} finally {
+			pool.shutdown();
+		}
+		assertEquals(1, serialized.get());
+		assertEquals(2, compressed.get());
+	}
+
+	public void testCompressionTypes() {
+		File file = copyResourceToTmp("r.2.2.mca");
+		MCAFile expected = assertThrowsNoException(() -> MCAUtil.read(file));
+		assertEquals(CompressionType.ZLIB, expected.getCompressionType());
+		for (CompressionType type : new CompressionType[]{CompressionType.GZIP, CompressionType.UNCOMPRESSED, CompressionType.LZ4}) {
+			MCAFile f = assertThrowsNoException(() -> MCAUtil.read(file));
+			f.setCompressionType(type);
+			File tmp = getNewTmpFile("r.2.2.mca");
+			assertThrowsNoException(() -> MCAUtil.write(f, tmp));
+			for (boolean mapped : new boolean[]{false, true}) {
+				MCAFile again = assertThrowsNoException(() -> MCAUtil.read(tmp, ALL_DATA, mapped));
+				for (int i = 0; i < 1024; i++) {
+					if (expected.getChunk(i) == null) {
+						assertNull(again.getChunk(i));
+					} else {
+						assertEquals(expected.getChunk(i).getHandle(), again.getChunk(i).getHandle());
+					}
+				}
+			}
+			Chunk partial = assertThrowsNoException(() -> MCAUtil.read(tmp, BLOCK_STATES)).getChunk(0);
+			assertNotNull(partial.getSection(0));
+		}
+		assertThrowsRuntimeException(() -> expected.setCompressionType(null), NullPointerException.class);
+	}
+
+	public void testInvalidChunkLength() {
+		MCAFile f = assertThrowsNoException(() -> MCAUtil.read(copyResourceToTmp("r.2.2.mca")));
+		File tmp = getNewTmpFile("r.2.2.mca");
+		assertThrowsNoException(() -> MCAUtil.write(f, tmp));
+		// the lengths written by this version include the compression type, so nothing is read beyond the chunk data
+		MCAFile again = assertThrowsNoException(() -> MCAUtil.read(tmp));
+		assertEquals(f.getChunk(512).getHandle(), again.getChunk(512).getHandle());
+
+		int length = assertThrowsNoException(() -> {
+			try (RandomAccessFile raf = new RandomAccessFile(tmp, "r")) {
+				raf.seek(4096 * 2);
+				return raf.readInt();
+			}
+		});
+		// older versions wrote lengths without the compression type, cutting off the last byte of the checksum
+		ReadOptions mapped = new ReadOptions();
+		mapped.setMemoryMapped(true);
+		setChunkLength(tmp, length - 1);
+		MCAFile legacy = assertThrowsNoException(() -> MCAUtil.read(tmp));
+		assertEquals(again.getChunk(0).getHandle(), legacy.getChunk(0).getHandle());
+		legacy = assertThrowsNoException(() -> MCAUtil.read(tmp, mapped));
+		assertEquals(again.getChunk(0).getHandle(), legacy.getChunk(0).getHandle());
+		// anything shorter is truncated
+		setChunkLength(tmp, length - 2);
+		assertThrowsException(() -> MCAUtil.read(tmp), EOFException.class);
+		assertThrowsException(() -> MCAUtil.read(tmp, mapped), EOFException.class);
+
+		setChunkLength(tmp, 0);
+		assertThrowsException(() -> MCAUtil.read(tmp), IOException.class);
+		setChunkLength(tmp, Integer.MAX_VALUE);
+		assertThrowsException(() -> MCAUtil.read(tmp), EOFException.class);
+	}
+
+	private void setChunkLength(File file, int length) {
+		assertThrowsNoException(() -> {
+			try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+				raf.seek(4096 * 2);
+				raf.writeInt(length);
+			}
+		});
+	}
+
+	public void testCustomCompressionType() {
+		Chunk chunk = assertThrowsNoException(() -> MCAUtil.read(copyResourceToTmp("r.2.2.mca"))).getChunk(0);
+		byte[] data = assertThrowsNoException(() -> chunk.compress(64, 64, CompressionType.UNCOMPRESSED));
+		byte[] name = "test:identity".getBytes();
+		ByteBuffer buffer = ByteBuffer.allocate(3 + name.length + data.length);
+		buffer.put(CompressionType.CUSTOM_ID).putShort((short) name.length).put(name).put(data).flip();
+
+		assertThrowsException(() -> new Chunk(0).deserialize(buffer.duplicate(), ALL_DATA), IOException.class);
+		CompressionType.registerCustomCodec("test:identity", CompressionType.UNCOMPRESSED.getCodec());
+		try {
+			Chunk custom = new Chunk(0);
+			assertThrowsNoException(() -> custom.deserialize(buffer.duplicate(), ALL_DATA));
+			assertEquals(chunk.getHandle(), custom.getHandle());
+		} finally {
+			CompressionType.registerCustomCodec("test:identity", null);
+		}
+		assertNull(CompressionType.getCustomCodec("test:identity"));
+	}
+
+	public void testUnpackedSection() {
+		MCAFile packed = assertThrowsNoException(() -> MCAUtil.read(copyResourceToTmp("r.2.2.mca")));
+		MCAFile unpacked = assertThrowsNoException(() -> MCAUtil.read(copyResourceToTmp("r.2.2.mca")));
+		Section p = packed.getChunk(0, 0).getSection(0);
+		Section u = unpacked.getChunk(0, 0).getSection(0);
+		assertFalse(u.isUnpacked());
+		u.setUnpacked(true);
+		assertTrue(u.isUnpacked());
+		for (int i = 0; i < 4096; i++) {
+			assertEquals(p.getPaletteIndex(i), u.getPaletteIndex(i));
+		}
+		assertTrue(Arrays.equals(p.getBlockStates(), u.getBlockStates()));
+
+		// grow the palette beyond 16 entries to require more bits per block
+		for (int i = 0; i < 20; i++) {
+			packed.setBlockStateAt(i % 16, i / 16, 0, block("minecraft:" + i), false);
+			unpacked.setBlockStateAt(i % 16, i / 16, 0, block("minecraft:" + i), false);
+		}
+		assertEquals(p.getPalette(), u.getPalette());
+		assertEquals(p.getBlockStateAt(3, 1, 0), u.getBlockStateAt(3, 1, 0));
+		assertTrue(Arrays.equals(p.getBlockStates(), u.getBlockStates()));
+		assertEquals(p.updateHandle(0), u.updateHandle(0));
+
+		// overwriting blocks leaves unused palette entries until the cleanup
+		for (int i = 0; i < 20; i++) {
+			packed.setBlockStateAt(i % 16, i / 16, 0, block("minecraft:stone"), false);
+			unpacked.setBlockStateAt(i % 16, i / 16, 0, block("minecraft:stone"), false);
+		}
+		packed.cleanupPalettesAndBlockStates();
+		unpacked.cleanupPalettesAndBlockStates();
+		assertTrue(u.isUnpacked());
+		assertEquals(p.getPalette(), u.getPalette());
+		assertEquals(256, u.getBlockStates().length);
+		assertTrue(Arrays.equals(p.getBlockStates(), u.getBlockStates()));
+		assertEquals(p.updateHandle(0), u.updateHandle(0));
+
+		// setting new block states updates the unpacked indices
+		u.setBlockStates(new long[256]);
+		assertEquals(0, u.getPaletteIndex(100));
+		u.setUnpacked(false);
+		assertFalse(u.isUnpacked());
+		assertTrue(Arrays.equals(new long[256], u.getBlockStates()));
+
+		// a section without block states stays packed
+		Section empty = new Section();
+		empty.setUnpacked(true);
+		assertFalse(empty.isUnpacked());
+	}
+
+	public void testForEachBlock() {
+		MCAFile f = assertThrowsNoException(() -> MCAUtil.read(copyResourceToTmp("r.2.2.mca")));
+		int sections = 0;
+		for (Chunk chunk : f) {
+			if (chunk != null) {
+				for (Section section : chunk) {
+					if (section.getBlockStates() != null) {
+						sections++;
+					}
+				}
+			}
+		}
+		assertTrue(sections > 0);
+
+		int[] count = new int[1];
+		assertTrue(f.forEachBlock((section, x, y, z, paletteIndex) -> {
+			assertSame(f.getBlockStateAt(x, y, z), section.getPalette().get(paletteIndex));
+			assertEquals(2, MCAUtil.blockToRegion(x));
+			assertEquals(2, MCAUtil.blockToRegion(z));
+			count[0]++;
+			return true;
+		}));
+		assertEquals(sections * 4096, count[0]);
+
+		Chunk chunk = f.getChunk(0, 0);
+		Section first = chunk.getSection(0);
+		count[0] = 0;
+		assertTrue(chunk.forEachBlock((section, x, y, z, paletteIndex) -> {
+			assertTrue(x >= 0 && x < 16 && z >= 0 && z < 16);
+			assertSame(chunk.getBlockStateAt(x, y, z), section.getPalette().get(paletteIndex));
+			count[0]++;
+			return true;
+		}));
+		assertTrue(count[0] > 0);
+
+		// unpacked sections visit the same blocks
+		int[] expected = new int[4096];
+		int[] actual = new int[4096];
+		first.forEachBlock((section, x, y, z, paletteIndex) -> {
+			expected[y * 256 + z * 16 + x] = paletteIndex;
+			return true;
+		});
+		first.setUnpacked(true);
+		first.forEachBlock((section, x, y, z, paletteIndex) -> {
+			actual[y * 256 + z * 16 + x] = paletteIndex;
+			return true;
+		});
+		assertTrue(Arrays.equals(expected, actual));
+		for (int i = 0; i < 4096; i++) {
+			assertEquals(first.getPaletteIndex(i), actual[i]);
+		}
+
+		// stopping early
+		count[0] = 0;
+		assertFalse(f.forEachBlock((section, x, y, z, paletteIndex) -> ++count[0] < 10));
+		assertEquals(10, count[0]);
+		assertTrue(new Section().forEachBlock((section, x, y, z, paletteIndex) -> false));
+
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			AtomicInteger parallelCount = new AtomicInteger();
+			assertTrue(f.forEachBlock((section, x, y, z, paletteIndex) -> {
+				parallelCount.incrementAndGet();
+				return true;
+			}, pool));
+			assertEquals(sections * 4096, parallelCount.get());
+			assertFalse(f.forEachBlock((section, x, y, z, paletteIndex) -> parallelCount.decrementAndGet() > 100, pool));
+
+			// lazy chunks are loaded by the tasks visiting them instead of the calling thread
+			Thread caller = Thread.currentThread();
+			AtomicInteger callerLoads = new AtomicInteger();
+			ReadOptions options = new ReadOptions();
+			options.setLazy(true);
+			options.setBlockStatePool(new BlockStatePool() {
+				@Override
+				public CompoundTag intern(CompoundTag blockState) {
+					if (Thread.currentThread() == caller) {
+						callerLoads.incrementAndGet();
+					}
+					return super.intern(blockState);
+				}
+			});
+			MCAFile lazy = assertThrowsNoException(() -> MCAUtil.read(copyResourceToTmp("r.2.2.mca"), options));
+			parallelCount.set(0);
+			assertTrue(lazy.forEachBlock((section, x, y, z, paletteIndex) -> {
+				parallelCount.incrementAndGet();
+				return true;
+			}, pool));
+			assertEquals(sections * 4096, parallelCount.get());
+			assertEquals(0, callerLoads.get());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private CompoundTag redstone(int power, String north) {
+		CompoundTag block = block("minecraft:redstone_wire");
+		CompoundTag properties = new CompoundTag();
+		properties.putString("power", Integer.toString(power));
+		properties.putString("north", north);
+		block.put("Properties", properties);
+		return block;
+	}
+
+	public void testPaletteLookup() {
+		Section section = Section.newSection();
+		String[] sides = {"none", "side", "up"};
+		int i = 0;
+		for (int power = 0; power < 16; power++) {
+			for (String north : sides) {
+				section.setBlockStateAt(i & 0xF, i >> 4, 0, redstone(power, north), false);
+				i++;
+			}
+		}
+		assertEquals(49, section.getPalette().size());
+		assertEquals(0, section.getPaletteIndex(block("minecraft:air")));
+		assertEquals(-1, section.getPaletteIndex(block("minecraft:stone")));
+		assertEquals(-1, section.getPaletteIndex(redstone(16, "none")));
+		for (int power = 0; power < 16; power++) {
+			for (int s = 0; s < sides.length; s++) {
+				int index = section.getPaletteIndex(redstone(power, sides[s]));
+				assertEquals(1 + power * 3 + s, index);
+				assertSame(section.getPalette().get(index), section.intern(redstone(power, sides[s])));
+			}
+		}
+		assertEquals(49, section.getPalette().size());
+
+		// interning adds new block states
+		CompoundTag stone = block("minecraft:stone");
+		assertSame(stone, section.intern(stone));
+		assertSame(stone, section.intern(block("minecraft:stone")));
+		assertEquals(49, section.getPaletteIndex(block("minecraft:stone")));
+
+		// modified palette entries are found again without adding duplicates once the palette is marked as modified
+		section.setBlockStateAt(0, 4, 0, stone, false);
+		stone.putString("Name", "minecraft:granite");
+		assertEquals(49, section.getPaletteIndex(stone));
+		section.markPaletteModified();
+		assertEquals(49, section.getPaletteIndex(block("minecraft:granite")));
+		assertEquals(-1, section.getPaletteIndex(block("minecraft:stone")));
+		CompoundTag wire = section.getBlockStateAt(0, 0, 0);
+		wire.getCompoundTag("Properties").putString("power", "16");
+		section.markPaletteModified();
+		section.setBlockStateAt(1, 4, 0, redstone(16, "none"), false);
+		assertEquals(50, section.getPalette().size());
+		assertSame(wire, section.getBlockStateAt(1, 4, 0));
+		section.cleanupPaletteAndBlockStates();
+		assertEquals(49, section.getPaletteIndex(block("minecraft:granite")));
+		assertEquals(-1, section.getPaletteIndex(block("minecraft:stone")));
+	}
+
+	public void testPaletteLookupCount() {
+		AtomicInteger hashes = new AtomicInteger();
+		Section section = Section.newSection();
+		for (int i = 1; i < 4096; i++) {
+			// the name counts how often the block state is hashed
+			CompoundTag state = new CompoundTag();
+			state.put("Name", new StringTag("minecraft:block_" + i) {
+				@Override
+				public int hashCode() {
+					hashes.incrementAndGet();
+					return super.hashCode();
+				}
+			});
+			section.setBlockStateAt(i & 0xF, i >> 8, i >> 4 & 0xF, state, false);
+		}
+		assertEquals(4096, section.getPalette().size());
+		// each state is hashed once when it is added and once per cleanup when the bits per block increase,
+		// adding a state never rehashes the entire palette
+		assertTrue("hashed " + hashes.get() + " times", hashes.get() < 4 * 4096);
+		for (int i = 1; i < 4096; i++) {
+			assertEquals(i, section.getPaletteIndex(section.getBlockStateAt(i & 0xF, i >> 8, i >> 4 & 0xF)));
+		}
+	}
+
+	public void testCleanupParallel() {
+		MCAFile serial = assertThrowsNoException(() -> MCAUtil.read(copyResourceToTmp("r.2.2.mca")));
+		MCAFile parallel = assertThrowsNoException(() -> MCAUtil.read(copyResourceToTmp("r.2.2.mca")));
+		for (MCAFile f : new MCAFile[]{serial, parallel}) {
+			// add unused palette entries in the middle of the palette and replace some used ones
+			for (int i = 0; i < 40; i++) {
+				f.setBlockStateAt(i & 0xF, 20, 0, block("minecraft:" + i), false);
+				f.setBlockStateAt(i & 0xF, 20, 0, block("minecraft:stone"), false);
+			}
+			f.setBlockStateAt(1008, 0, 1008, block("minecraft:custom"), false);
+		}
+		Section section = serial.getChunk(0, 0).getSection(1);
+		CompoundTag[] before = new CompoundTag[4096];
+		for (int i = 0; i < 4096; i++) {
+			before[i] = section.getPalette().get(section.getPaletteIndex(i));
+		}
+		int paletteSize = section.getPalette().size();
+
+		serial.cleanupPalettesAndBlockStates();
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			parallel.cleanupPalettesAndBlockStatesInParallel(pool);
+		} finally {
+			pool.shutdown();
+		}
+
+		assertTrue(section.getPalette().size() < paletteSize);
+		assertEquals("minecraft:air", section.getPalette().get(0).getString("Name"));
+		for (int i = 0; i < 4096; i++) {
+			assertSame(before[i], section.getPalette().get(section.getPaletteIndex(i)));
+		}
+		for (int i = 0; i < section.getPalette().size(); i++) {
+			assertEquals(i, section.getPaletteIndex(section.getPalette().get(i)));
+		}
+		for (int i = 0; i < 1024; i++) {
+			if (serial.getChunk(i) != null) {
+				assertEquals(serial.getChunk(i).updateHandle(0, 0), parallel.getChunk(i).updateHandle(0, 0));
+			}
+		}
+	}
+
+	public void testBlockStatePool() {
+		BlockStatePool pool = new BlockStatePool();
+		File file = copyResourceToTmp("r.2.2.mca");
+		MCAFile plain = assertThrowsNoException(() -> MCAUtil.read(file));
+		ReadOptions options = new ReadOptions();
+		options.setBlockStatePool(pool);
+		MCAFile a = assertThrowsNoException(() -> MCAUtil.read(file, options));
+		assertSame(pool, a.getBlockStatePool());
+		int size = pool.size();
+		assertTrue(size > 0);
+
+		// the pool can be combined with any way of reading the file
+		ForkJoinPool executor = new ForkJoinPool(2);
+		try {
+			options.setExecutor(executor);
+			MCAFile parallel = assertThrowsNoException(() -> MCAUtil.read(file, options));
+			options.setLazy(true);
+			assertThrowsException(() -> MCAUtil.read(file, options), IllegalArgumentException.class);
+			options.setExecutor(null);
+			MCAFile lazy = assertThrowsNoException(() -> MCAUtil.read(file, options));
+			for (MCAFile f : new MCAFile[] {parallel, lazy}) {
+				assertSame(a.getChunk(512).getSection(0).getPalette().get(1), f.getChunk(512).getSection(0).getPalette().get(1));
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(size, pool.size());
+		MCAFile b = new MCAFile(2, 2);
+		b.setBlockStatePool(pool);
+		// lazily loaded chunks use the pool as well
+		assertThrowsNoException(() -> b.deserialize(ByteBuffer.wrap(Files.readAllBytes(file.toPath())), ALL_DATA, true));
+		assertEquals(size, pool.size());
+
+		int entries = 0;
+		for (int i = 0; i < 1024; i++) {
+			Chunk chunk = plain.getChunk(i);
+			if (chunk == null) {
+				continue;
+			}
+			for (Section section : chunk) {
+				if (section.getPalette() == null) {
+					continue;
+				}
+				Section sa = a.getChunk(i).getSection(section.getHeight());
+				Section sb = b.getChunk(i).getSection(section.getHeight());
+				assertEquals(section.getPalette(), sa.getPalette());
+				for (int p = 0; p < section.getPalette().size(); p++) {
+					assertNotSame(section.getPalette().get(p), sa.getPalette().get(p));
+					assertSame(pool.intern(section.getPalette().get(p)), sa.getPalette().get(p));
+					// equal block states that are not added to the pool are not frozen
+					assertFalse(section.getPalette().get(p).isFrozen());
+					assertTrue(sa.getPalette().get(p).isFrozen());
+					assertSame(sa.getPalette().get(p), sb.getPalette().get(p));
+					assertEquals(section.getPaletteIndex(section.getPalette().get(p)), sa.getPaletteIndex(section.getPalette().get(p)));
+					entries++;
+				}
+			}
+			assertEquals(chunk.updateHandle(0, 0), a.getChunk(i).updateHandle(0, 0));
+		}
+		// the palettes of the sections contain duplicates that are only pooled once
+		assertTrue(size < entries);
+		assertEquals(size, pool.size());
+
+		CompoundTag custom = block("minecraft:custom");
+		assertSame(custom, pool.intern(custom));
+		assertTrue(custom.isFrozen());
+		CompoundTag duplicate = block("minecraft:custom");
+		assertSame(custom, pool.intern(duplicate));
+		assertFalse(duplicate.isFrozen());
+		assertEquals(size + 1, pool.size());
+		pool.clear();
+		assertEquals(0, pool.size());
+	}
+
 	public void test1_15GetBiomeAt() throws IOException {
 		MCAFile f = assertThrowsNoException(() -> MCAUtil.read(copyResourceToTmp("r.0.0.mca")));
 		assertEquals(162, f.getBiomeAt(31, 0, 63));
@@ -0,0 +1,191 @@
+package net.querz.mca;
+
+import net.querz.nbt.tag.CompoundTag;
+import java.util.Arrays;
+import java.util.Random;
+
+public class PackedArrayCodecTest extends MCATestCase {
+
+	// the floating point implementation used by Section before PackedArrayCodec, as a reference
+
+	private static int referenceGet(long[] blockStates, int blockStateIndex, boolean spanning) {
+		int bits = blockStates.length >> 6;
+		if (spanning) {
+			double blockStatesIndex = blockStateIndex / (4096D / blockStates.length);
+			int longIndex = (int) blockStatesIndex;
+			int startBit = (int) ((blockStatesIndex - Math.floor(blockStatesIndex)) * 64D);
+			if (startBit + bits > 64) {
+				long prev = bitRange(blockStates[longIndex], startBit, 64);
+				long next = bitRange(blockStates[longIndex + 1], 0, startBit + bits - 64);
+				return (int) ((next << 64 - startBit) + prev);
+			} else {
+				return (int) bitRange(blockStates[longIndex], startBit, startBit + bits);
+			}
+		} else {
+			int indicesPerLong = (int) (64D / bits);
+			int blockStatesIndex = blockStateIndex / indicesPerLong;
+			int startBit = (blockStateIndex % indicesPerLong) * bits;
+			return (int) bitRange(blockStates[blockStatesIndex], startBit, startBit + bits);
+		}
+	}
+
+	private static void referenceSet(int blockIndex, int paletteIndex, long[] blockStates, boolean spanning) {
+		int bits = blockStates.length >> 6;
+		if (spanning) {
+			double blockStatesIndex = blockIndex / (4096D / blockStates.length);
+			int longIndex = (int) blockStatesIndex;
+			int startBit = (int) ((blockStatesIndex - Math.floor(longIndex)) * 64D);
+			if (startBit + bits > 64) {
+				blockStates[longIndex] = updateBits(blockStates[longIndex], paletteIndex, startBit, 64);
+				blockStates[longIndex + 1] = updateBits(blockStates[longIndex + 1], paletteIndex, startBit - 64, startBit + bits - 64);
+			} else {
+				blockStates[longIndex] = updateBits(blockStates[longIndex], paletteIndex, startBit, startBit + bits);
+			}
+		} else {
+			int indicesPerLong = (int) (64D / bits);
+			int blockStatesIndex = blockIndex / indicesPerLong;
+			int startBit = (blockIndex % indicesPerLong) * bits;
+			blockStates[blockStatesIndex] = updateBits(blockStates[blockStatesIndex], paletteIndex, startBit, startBit + bits);
+		}
+	}
+
+	private static long updateBits(long n, long m, int i, int j) {
+		long mShifted = i > 0 ? (m & ((1L << j - i) - 1)) << i : (m & ((1L << j - i) - 1)) >>> -i;
+		return ((n & ((j > 63 ? 0 : (~0L << j)) | (i < 0 ? 0 : ((1L << i) - 1L)))) | mShifted);
+	}
+
+	private static long bitRange(long value, int from, int to) {
+		int waste = 64 - to;
+		return (value << waste) >>> (waste + from);
+	}
+
+	private static int[] randomValues(Random random, int bits) {
+		int[] values = new int[4096];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = random.nextInt() & (int) ((1L << bits) - 1);
+		}
+		return values;
+	}
+
+	public void testAgainstReference() {
+		Random random = new Random(4096);
+		for (boolean spanning : new boolean[]{true, false}) {
+			// the reference derives the bit width from length >> 6, which is only correct for these widths
+			int maxBits = spanning ? 16 : 10;
+			for (int bits = 4; bits <= maxBits; bits++) {
+				PackedArrayCodec codec = PackedArrayCodec.of(bits, spanning);
+				assertSame(codec, PackedArrayCodec.forLength(codec.getLength(), spanning));
+				int[] values = randomValues(random, bits);
+
+				long[] expected = new long[codec.getLength()];
+				long[] actual = new long[codec.getLength()];
+				for (int i = 0; i < 4096; i++) {
+					referenceSet(i, values[i], expected, spanning);
+					codec.set(actual, i, values[i]);
+				}
+				assertTrue("bits " + bits, Arrays.equals(expected, actual));
+
+				long[] packed = new long[codec.getLength()];
+				codec.packAll(values, packed);
+				assertTrue("bits " + bits, Arrays.equals(expected, packed));
+
+				int[] unpacked = new int[4096];
+				codec.unpackAll(expected, unpacked);
+				assertTrue("bits " + bits, Arrays.equals(values, unpacked));
+				short[] unpackedShorts = new short[4096];
+				codec.unpackAll(expected, unpackedShorts);
+				for (int i = 0; i < 4096; i++) {
+					assertEquals(referenceGet(expected, i, spanning), codec.get(expected, i));
+					assertEquals((short) values[i], unpackedShorts[i]);
+				}
+				packed = new long[codec.getLength()];
+				codec.packAll(unpackedShorts, packed);
+				assertTrue("bits " + bits, Arrays.equals(expected, packed));
+
+				// overwriting values must not affect their neighbours
+				long[] random64 = new long[codec.getLength()];
+				for (int i = 0; i < random64.length; i++) {
+					random64[i] = random.nextLong();
+				}
+				long[] reference = random64.clone();
+				for (int i = 0; i < 4096; i += 7) {
+					referenceSet(i, values[i], reference, spanning);
+					codec.set(random64, i, values[i]);
+				}
+				assertTrue("bits " + bits, Arrays.equals(reference, random64));
+			}
+		}
+	}
+
+	public void testNonSpanning12Bits() {
+		// 11 and 12 bits result in the same length, forLength can only return the smaller width
+		PackedArrayCodec codec = PackedArrayCodec.of(12, false);
+		assertEquals(820, codec.getLength());
+		assertEquals(11, PackedArrayCodec.forLength(820, false).getBits());
+		assertEquals(12, PackedArrayCodec.bitsForPaletteSize(2049));
+
+		// a Section derives the width from its palette size, so 12 bit BlockStates survive a round trip
+		Section section = Section.newSection();
+		section.dataVersion = 2586;
+		for (int i = 1; i < 3000; i++) {
+			CompoundTag state = new CompoundTag();
+			state.putString("Name", "minecraft:block_" + i);
+			section.setBlockStateAt(i & 0xF, i >> 8, i >> 4 & 0xF, state, false);
+		}
+		assertEquals(3000, section.getPalette().size());
+		assertEquals(820, section.getBlockStates().length);
+		for (int i = 1; i < 3000; i++) {
+			assertEquals(i, section.getPaletteIndex(i));
+		}
+		CompoundTag handle = section.updateHandle(0);
+		Section read = new Section(handle, 2586);
+		for (int i = 0; i < 4096; i++) {
+			assertEquals(i < 3000 ? i : 0, read.getPaletteIndex(i));
+		}
+		assertEquals("minecraft:block_2999", read.getBlockStateAt(2999 & 0xF, 2999 >> 8, 2999 >> 4 & 0xF).getString("Name"));
+	}
+
+	public void testAllWidths() {
+		Random random = new Random(64);
+		for (boolean spanning : new boolean[]{true, false}) {
+			for (int bits = 1; bits <= 31; bits++) {
+				PackedArrayCodec codec = PackedArrayCodec.of(bits, spanning);
+				int[] values = randomValues(random, bits);
+				long[] packed = new long[codec.getLength()];
+				codec.packAll(values, packed);
+				int[] unpacked = new int[4096];
+				codec.unpackAll(packed, unpacked);
+				assertTrue("bits " + bits, Arrays.equals(values, unpacked));
+				for (int i = 0; i < 4096; i++) {
+					assertEquals(values[i], codec.get(packed, i));
+				}
+			}
+		}
+		long[] packed = new long[4096];
+		PackedArrayCodec codec = PackedArrayCodec.of(64, true);
+		codec.set(packed, 10, -1);
+		assertEquals(-1, codec.get(packed, 10));
+		assertEquals(0xFFFFFFFFL, packed[10]);
+	}
+
+	public void testNonSpanningLengths() {
+		assertEquals(4, PackedArrayCodec.forLength(256, false).getBits());
+		assertEquals(5, PackedArrayCodec.forLength(342, false).getBits());
+		assertEquals(10, PackedArrayCodec.forLength(683, false).getBits());
+		// 11 and 12 bits both fit 5 values into a long, Minecraft uses 11 bits for palettes up to 2048 entries
+		assertEquals(11, PackedArrayCodec.forLength(820, false).getBits());
+		assertEquals(820, PackedArrayCodec.of(12, false).getLength());
+		assertEquals(5, PackedArrayCodec.forLength(320, true).getBits());
+		assertThrowsRuntimeException(() -> PackedArrayCodec.forLength(320, false), IllegalArgumentException.class);
+		assertThrowsRuntimeException(() -> PackedArrayCodec.forLength(321, true), IllegalArgumentException.class);
+		assertThrowsRuntimeException(() -> PackedArrayCodec.forLength(0, true), IllegalArgumentException.class);
+		assertThrowsRuntimeException(() -> PackedArrayCodec.forLength(4097, false), IllegalArgumentException.class);
+		assertThrowsRuntimeException(() -> PackedArrayCodec.of(0, false), IllegalArgumentException.class);
+		assertThrowsRuntimeException(() -> PackedArrayCodec.of(65, true), IllegalArgumentException.class);
+		assertEquals(4, PackedArrayCodec.bitsForPaletteSize(1));
+		assertEquals(4, PackedArrayCodec.bitsForPaletteSize(16));
+		assertEquals(5, PackedArrayCodec.bitsForPaletteSize(17));
+		assertEquals(11, PackedArrayCodec.bitsForPaletteSize(2048));
+		assertEquals(12, PackedArrayCodec.bitsForPaletteSize(2049));
+	}
+}
@@ -0,0 +1,104 @@
+package net.querz.mca;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class RegionProcessorTest extends MCATestCase {
+
+	private int countChunks(File file) {
+		MCAFile mcaFile = assertThrowsNoException(() -> MCAUtil.read(file));
+		int count = 0;
+		for (Chunk chunk : mcaFile) {
+			if (chunk != null) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	public void testProcess() {
+		File r00 = copyResourceToTmp("r.0.0.mca");
+		File r22 = copyResourceToTmp("r.2.2.mca");
+		copyResourceToTmp("invalid_data_tag.dat");
+		String md500 = calculateFileMD5(r00);
+		String md522 = calculateFileMD5(r22);
+		int expectedChunks = countChunks(r00) + countChunks(r22);
+
+		RegionProcessor processor = new RegionProcessor(r00.getParentFile());
+		processor.setThreads(2);
+		processor.setMaxPendingRegions(1);
+		processor.setLoadFlags(LoadFlags.BIOMES);
+		AtomicLong visited = new AtomicLong();
+		Set<Long> positions = ConcurrentHashMap.newKeySet();
+		RegionProcessor.Statistics stats = assertThrowsNoException(() -> processor.process((chunk, x, z) -> {
+			visited.incrementAndGet();
+			positions.add((long) x << 32 | z & 0xFFFFFFFFL);
+			return false;
+		}));
+		assertEquals(2, stats.getRegions());
+		assertEquals(expectedChunks, stats.getChunks());
+		assertEquals(expectedChunks, visited.get());
+		assertEquals(expectedChunks, positions.size());
+		assertTrue(positions.contains(64L << 32 | 64));
+		assertEquals(0, stats.getRegionsWritten());
+		assertEquals(r00.length() + r22.length(), stats.getBytesRead());
+		assertNotNull(stats.toString());
+
+		// nothing is written if writeBack is disabled
+		processor.setLoadFlags(LoadFlags.ALL_DATA);
+		assertThrowsNoException(() -> processor.process((chunk, x, z) -> true));
+		assertEquals(md500, calculateFileMD5(r00));
+		assertEquals(md522, calculateFileMD5(r22));
+
+		processor.setWriteBack(true);
+		stats = assertThrowsNoException(() -> processor.process((chunk, x, z) -> {
+			if (MCAUtil.chunkToRegion(x) == 2) {
+				chunk.setInhabitedTime(1234);
+				return true;
+			}
+			return false;
+		}));
+		assertEquals(1, stats.getRegionsWritten());
+		assertEquals(md500, calculateFileMD5(r00));
+		MCAFile modified = assertThrowsNoException(() -> MCAUtil.read(r22));
+		assertEquals(1234, modified.getChunk(64, 64).getInhabitedTime());
+		assertEquals(2, r00.getParentFile().listFiles((dir, name) -> name.endsWith(".mca")).length);
+	}
+
+	public void testProcessFailure() {
+		File r00 = copyResourceToTmp("r.0.0.mca");
+		copyResourceToTmp("r.2.2.mca");
+		RegionProcessor processor = new RegionProcessor(r00.getParent());
+		assertThrowsException(() -> processor.process((chunk, x, z) -> {
+			throw new IOException("abort");
+		}), IOException.class);
+
+		// partially loaded chunks cannot be written back, which is rejected before any chunk is visited
+		processor.setLoadFlags(LoadFlags.BIOMES);
+		processor.setWriteBack(true);
+		AtomicInteger visited = new AtomicInteger();
+		assertThrowsException(() -> processor.process((chunk, x, z) -> {
+			visited.incrementAndGet();
+			return false;
+		}), IllegalStateException.class);
+		assertEquals(0, visited.get());
+		processor.setLoadFlags(LoadFlags.BIOMES | LoadFlags.COMPACT_COMPOUNDS);
+		assertThrowsException(() -> processor.process((chunk, x, z) -> false), IllegalStateException.class);
+		processor.setLoadFlags(LoadFlags.ALL_DATA | LoadFlags.COMPACT_COMPOUNDS);
+		assertThrowsNoException(() -> processor.process((chunk, x, z) -> false));
+		processor.setLoadFlags(LoadFlags.RAW);
+		assertThrowsNoException(() -> processor.process((chunk, x, z) -> false));
+		processor.setLoadFlags(LoadFlags.BIOMES);
+		processor.setWriteBack(false);
+		assertThrowsNoException(() -> processor.process((chunk, x, z) -> true));
+
+		assertThrowsRuntimeException(() -> processor.setThreads(0), IllegalArgumentException.class);
+		assertThrowsRuntimeException(() -> processor.setMaxPendingRegions(0), IllegalArgumentException.class);
+		assertThrowsException(() -> new RegionProcessor(new File(r00.getParentFile(), "missing")).process((chunk, x, z) -> false), NoSuchFileException.class);
+	}
+}
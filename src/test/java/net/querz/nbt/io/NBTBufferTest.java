@@ -0,0 +1,132 @@
+package net.querz.nbt.io;
+
+import net.querz.NBTTestCase;
+import net.querz.nbt.tag.CompoundTag;
+import net.querz.nbt.tag.DoubleTag;
+import net.querz.nbt.tag.ListTag;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+public class NBTBufferTest extends NBTTestCase {
+
+	private CompoundTag createTestTag() {
+		CompoundTag root = new CompoundTag();
+		root.putByte("byte", (byte) 1);
+		root.putShort("short", (short) 2);
+		root.putInt("int", 3);
+		root.putLong("long", 4L);
+		root.putFloat("float", 5.5f);
+		root.putDouble("double", 6.6);
+		root.putByteArray("bytes", new byte[]{1, 2, 3});
+		root.putString("string", "stränge \0 € 😀");
+		root.putIntArray("ints", new int[]{1, -2, 3});
+		root.putLongArray("longs", new long[]{Long.MIN_VALUE, Long.MAX_VALUE});
+		ListTag<DoubleTag> pos = new ListTag<>(DoubleTag.class);
+		pos.addDouble(1);
+		pos.addDouble(-64);
+		root.put("Pos", pos);
+		CompoundTag nested = new CompoundTag();
+		nested.putString("", "empty key");
+		root.put("nested", nested);
+		return root;
+	}
+
+	private static void assertNamedTag(NamedTag expected, NamedTag actual) {
+		assertEquals(expected.getName(), actual.getName());
+		assertEquals(expected.getTag(), actual.getTag());
+	}
+
+	private static byte[] remaining(ByteBuffer buffer) {
+		byte[] b = new byte[buffer.remaining()];
+		buffer.duplicate().get(b);
+		return b;
+	}
+
+	public void testSameDataAsStreams() throws IOException {
+		NamedTag tag = new NamedTag("root", createTestTag());
+		for (boolean littleEndian : new boolean[]{false, true}) {
+			NBTSerializer serializer = new NBTSerializer(false, littleEndian);
+			byte[] expected = serializer.toBytes(tag);
+			ByteBuffer buffer = serializer.toBuffer(tag);
+			assertEquals(0, buffer.position());
+			assertTrue(Arrays.equals(expected, remaining(buffer)));
+
+			assertNamedTag(tag, new NBTDeserializer(false, littleEndian).fromBuffer(buffer));
+			assertFalse(buffer.hasRemaining());
+		}
+	}
+
+	public void testDirectBuffer() throws IOException {
+		NamedTag tag = new NamedTag("root", createTestTag());
+		for (boolean littleEndian : new boolean[]{false, true}) {
+			NBTSerializer serializer = new NBTSerializer(false, littleEndian);
+			byte[] expected = serializer.toBytes(tag);
+
+			// the buffer grows, keeping the data before its position
+			ByteBuffer direct = ByteBuffer.allocateDirect(8);
+			direct.put((byte) 42);
+			ByteBuffer written = serializer.toBuffer(tag, direct);
+			assertNotSame(direct, written);
+			assertTrue(written.isDirect());
+			assertEquals(1 + expected.length, written.position());
+			assertEquals(ByteOrder.BIG_ENDIAN, written.order());
+			written.flip();
+			assertEquals(42, written.get());
+			assertTrue(Arrays.equals(expected, remaining(written)));
+
+			// the buffer is large enough, so its position is advanced
+			ByteBuffer large = ByteBuffer.allocateDirect(expected.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+			assertSame(large, serializer.toBuffer(tag, large));
+			assertSame(large, serializer.toBuffer(tag, large));
+			assertEquals(expected.length * 2, large.position());
+			assertEquals(ByteOrder.LITTLE_ENDIAN, large.order());
+			large.flip();
+
+			NBTDeserializer deserializer = new NBTDeserializer(false, littleEndian);
+			assertNamedTag(tag, deserializer.fromBuffer(large));
+			assertEquals(expected.length, large.position());
+			assertNamedTag(tag, deserializer.fromBuffer(large));
+			assertFalse(large.hasRemaining());
+			assertEquals(ByteOrder.LITTLE_ENDIAN, large.order());
+		}
+	}
+
+	public void testCompressed() throws IOException {
+		NamedTag tag = new NamedTag("root", createTestTag());
+		ByteBuffer buffer = new NBTSerializer().toBuffer(tag);
+		assertNamedTag(tag, new NBTDeserializer().fromBuffer(buffer));
+		assertNamedTag(tag, new NBTDeserializer().fromBytes(new NBTSerializer().toBuffer(tag, ByteBuffer.allocate(0)).array()));
+	}
+
+	public void testInput() throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(64).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(-2).putLong(3L).putShort((short) -1).put((byte) 1).flip();
+		NBTBufferInput in = new NBTBufferInput(buffer);
+		assertSame(buffer, in.getBuffer());
+		assertEquals(-2, in.readInt());
+		assertEquals(3L, in.readLong());
+		assertEquals(0xFFFF, in.readUnsignedShort());
+		assertThrowsException(in::readInt, EOFException.class);
+		assertEquals(1, buffer.remaining());
+		assertTrue(in.readBoolean());
+		assertEquals(0, in.skipBytes(1));
+		assertThrowsException(in::readByte, EOFException.class);
+	}
+
+	public void testInvalid() throws IOException {
+		ByteBuffer buffer = new NBTSerializer(false).toBuffer(new NamedTag("root", createTestTag()));
+		buffer.limit(buffer.limit() - 1);
+		assertThrowsException(() -> new NBTDeserializer(false).fromBuffer(buffer), EOFException.class);
+		assertEquals(0, buffer.position());
+
+		CompoundTag tooLong = new CompoundTag();
+		char[] chars = new char[30000];
+		Arrays.fill(chars, '€');
+		tooLong.putString("s", new String(chars));
+		assertThrowsException(() -> new NBTSerializer(false).toBuffer(new NamedTag(null, tooLong)), UTFDataFormatException.class);
+	}
+}
@@ -0,0 +1,105 @@
+package net.querz.nbt.io;
+
+import net.querz.NBTTestCase;
+import net.querz.mca.MCAFile;
+import net.querz.mca.MCAUtil;
+import net.querz.nbt.tag.CompoundTag;
+import net.querz.nbt.tag.IntTag;
+import net.querz.nbt.tag.ListTag;
+import net.querz.nbt.tag.Tag;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.EOFException;
+
+public class NBTPathSelectorTest extends NBTTestCase {
+
+	private byte[] write(Tag<?> tag, boolean littleEndian) {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		assertThrowsNoException(() -> new NBTSerializer(false, littleEndian).toStream(new NamedTag("root", tag), baos));
+		return baos.toByteArray();
+	}
+
+	private DataInput input(byte[] data, boolean littleEndian) {
+		ByteArrayInputStream bais = new ByteArrayInputStream(data);
+		return littleEndian ? new LittleEndianNBTInputStream(bais) : new NBTInputStream(bais);
+	}
+
+	public void testSelectChunkData() {
+		MCAFile mcaFile = assertThrowsNoException(() -> MCAUtil.read(copyResourceToTmp("r.2.2.mca")));
+		CompoundTag handle = mcaFile.getChunk(0, 0).getHandle();
+		CompoundTag level = handle.getCompoundTag("Level");
+
+		CompoundTag expectedLevel = new CompoundTag();
+		expectedLevel.putInt("xPos", level.getInt("xPos"));
+		ListTag<CompoundTag> expectedSections = new ListTag<>(CompoundTag.class);
+		for (CompoundTag section : level.getListTag("Sections").asCompoundTagList()) {
+			CompoundTag s = new CompoundTag();
+			if (section.containsKey("BlockStates")) {
+				s.put("BlockStates", section.get("BlockStates"));
+			}
+			expectedSections.add(s);
+		}
+		expectedLevel.put("Sections", expectedSections);
+		CompoundTag expected = new CompoundTag();
+		expected.put("Level", expectedLevel);
+
+		NBTPathSelector selector = new NBTPathSelector("Level.Sections[*].BlockStates", "Level.xPos", "Level.missing");
+		for (boolean littleEndian : new boolean[]{false, true}) {
+			DataInput in = input(write(handle, littleEndian), littleEndian);
+			NamedTag result = assertThrowsNoException(() -> selector.read(in));
+			assertEquals("root", result.getName());
+			assertEquals(expected, result.getTag());
+			assertThrowsException(in::readByte, EOFException.class);
+		}
+
+		// selecting a compound reads it completely
+		NBTPathSelector all = new NBTPathSelector("Level", "Level.xPos");
+		NamedTag result = assertThrowsNoException(() -> all.read(input(write(handle, false), false)));
+		assertEquals(level, ((CompoundTag) result.getTag()).getCompoundTag("Level"));
+		assertEquals(1, ((CompoundTag) result.getTag()).size());
+	}
+
+	public void testSelectNested() {
+		CompoundTag root = new CompoundTag();
+		ListTag<ListTag<?>> matrix = new ListTag<>(ListTag.class);
+		for (int i = 0; i < 3; i++) {
+			ListTag<CompoundTag> row = new ListTag<>(CompoundTag.class);
+			CompoundTag c = new CompoundTag();
+			c.putInt("a", i);
+			c.putInt("b", -i);
+			row.add(c);
+			matrix.add(row);
+		}
+		root.put("matrix", matrix);
+		ListTag<IntTag> ints = new ListTag<>(IntTag.class);
+		ints.addInt(1);
+		root.put("ints", ints);
+		root.putInt("value", 5);
+
+		NamedTag result = assertThrowsNoException(() -> new NBTPathSelector("matrix[*][*].a", "ints[*].x", "value.x").read(input(write(root, false), false)));
+		CompoundTag tag = (CompoundTag) result.getTag();
+		assertEquals(1, tag.size());
+		ListTag<ListTag<?>> m = tag.getListTag("matrix").asListTagList();
+		assertEquals(3, m.size());
+		for (int i = 0; i < 3; i++) {
+			CompoundTag c = m.get(i).asCompoundTagList().get(0);
+			assertEquals(1, c.size());
+			assertEquals(i, c.getInt("a"));
+		}
+
+		result = assertThrowsNoException(() -> new NBTPathSelector("ints[*]").read(input(write(root, false), false)));
+		assertEquals(ints, ((CompoundTag) result.getTag()).getListTag("ints"));
+
+		result = assertThrowsNoException(() -> new NBTPathSelector().read(input(write(root, false), false)));
+		assertEquals(new CompoundTag(), result.getTag());
+	}
+
+	public void testInvalidPath() {
+		assertThrowsRuntimeException(() -> new NBTPathSelector(""), IllegalArgumentException.class);
+		assertThrowsRuntimeException(() -> new NBTPathSelector("Level..xPos"), IllegalArgumentException.class);
+		assertThrowsRuntimeException(() -> new NBTPathSelector("Level.Sections[0]"), IllegalArgumentException.class);
+		assertThrowsRuntimeException(() -> new NBTPathSelector("[*]"), IllegalArgumentException.class);
+		assertThrowsNoRuntimeException(() -> new NBTPathSelector("Level.Sections[*][*]"));
+	}
+}
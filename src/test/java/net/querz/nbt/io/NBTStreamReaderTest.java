@@ -0,0 +1,299 @@
+package net.querz.nbt.io;
+
+import net.querz.NBTTestCase;
+import net.querz.io.MaxDepthReachedException;
+import net.querz.nbt.tag.ByteArrayTag;
+import net.querz.nbt.tag.ByteTag;
+import net.querz.nbt.tag.CompoundTag;
+import net.querz.nbt.tag.DoubleTag;
+import net.querz.nbt.tag.EndTag;
+import net.querz.nbt.tag.FloatTag;
+import net.querz.nbt.tag.IntArrayTag;
+import net.querz.nbt.tag.IntTag;
+import net.querz.nbt.tag.ListTag;
+import net.querz.nbt.tag.LongArrayTag;
+import net.querz.nbt.tag.LongTag;
+import net.querz.nbt.tag.ShortTag;
+import net.querz.nbt.tag.StringTag;
+import net.querz.nbt.tag.Tag;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+public class NBTStreamReaderTest extends NBTTestCase {
+
+	// rebuilds the tag tree from the events to compare it with the original
+	private static class TreeHandler implements NBTHandler {
+
+		private final Deque<Tag<?>> stack = new ArrayDeque<>();
+		private String name;
+		private Tag<?> root;
+
+		@Override
+		public boolean name(byte type, String name) {
+			this.name = name;
+			return true;
+		}
+
+		private void add(Tag<?> tag) {
+			Tag<?> parent = stack.peek();
+			if (parent == null) {
+				root = tag;
+			} else if (parent instanceof CompoundTag) {
+				((CompoundTag) parent).put(name, tag);
+			} else {
+				((ListTag<?>) parent).addUnchecked(tag);
+			}
+		}
+
+		@Override
+		public void startCompound() {
+			CompoundTag c = new CompoundTag();
+			add(c);
+			stack.push(c);
+		}
+
+		@Override
+		public void endCompound() {
+			stack.pop();
+		}
+
+		@Override
+		public boolean startList(byte elementType, int length) {
+			ListTag<?> l = ListTag.createUnchecked(classFromID(elementType));
+			add(l);
+			stack.push(l);
+			return true;
+		}
+
+		@Override
+		public void endList() {
+			stack.pop();
+		}
+
+		@Override
+		public void byteValue(byte value) {
+			add(new ByteTag(value));
+		}
+
+		@Override
+		public void shortValue(short value) {
+			add(new ShortTag(value));
+		}
+
+		@Override
+		public void intValue(int value) {
+			add(new IntTag(value));
+		}
+
+		@Override
+		public void longValue(long value) {
+			add(new LongTag(value));
+		}
+
+		@Override
+		public void floatValue(float value) {
+			add(new FloatTag(value));
+		}
+
+		@Override
+		public void doubleValue(double value) {
+			add(new DoubleTag(value));
+		}
+
+		@Override
+		public void stringValue(String value) {
+			add(new StringTag(value));
+		}
+
+		@Override
+		public void byteArray(byte[] value) {
+			add(new ByteArrayTag(value));
+		}
+
+		@Override
+		public void intArray(int[] value) {
+			add(new IntArrayTag(value));
+		}
+
+		@Override
+		public void longArray(long[] value) {
+			add(new LongArrayTag(value));
+		}
+	}
+
+	private static Class<?> classFromID(byte id) {
+		Class<?>[] classes = {EndTag.class, ByteTag.class, ShortTag.class, IntTag.class, LongTag.class, FloatTag.class, DoubleTag.class,
+				ByteArrayTag.class, StringTag.class, ListTag.class, CompoundTag.class, IntArrayTag.class, LongArrayTag.class};
+		return classes[id];
+	}
+
+	private CompoundTag createTestTag() {
+		CompoundTag root = new CompoundTag();
+		root.putByte("byte", (byte) 1);
+		root.putShort("short", (short) 2);
+		root.putInt("int", 3);
+		root.putLong("long", 4L);
+		root.putFloat("float", 5.5f);
+		root.putDouble("double", 6.6);
+		root.putByteArray("bytes", new byte[]{1, 2, 3});
+		root.putString("string", "stränge");
+		root.putIntArray("ints", new int[]{1, -2, 3});
+		root.putLongArray("longs", new long[]{Long.MIN_VALUE, Long.MAX_VALUE});
+		ListTag<CompoundTag> entities = new ListTag<>(CompoundTag.class);
+		for (int i = 0; i < 3; i++) {
+			CompoundTag entity = new CompoundTag();
+			entity.putString("id", "minecraft:pig");
+			ListTag<DoubleTag> pos = new ListTag<>(DoubleTag.class);
+			pos.addDouble(i);
+			pos.addDouble(64);
+			pos.addDouble(-i);
+			entity.put("Pos", pos);
+			entity.put("Passengers", new ListTag<>(CompoundTag.class));
+			entity.putIntArray("UUID", new int[]{i, i, i, i});
+			entities.add(entity);
+		}
+		root.put("Entities", entities);
+		ListTag<ListTag<?>> nested = new ListTag<>(ListTag.class);
+		ListTag<ShortTag> shorts = new ListTag<>(ShortTag.class);
+		shorts.addShort((short) 7);
+		nested.add(shorts);
+		nested.add(ListTag.createUnchecked(EndTag.class));
+		root.put("nested", nested);
+		return root;
+	}
+
+	private byte[] write(Tag<?> tag, boolean littleEndian) {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		assertThrowsNoException(() -> new NBTSerializer(false, littleEndian).toStream(new NamedTag("root", tag), baos));
+		return baos.toByteArray();
+	}
+
+	private DataInput input(byte[] data, boolean littleEndian) {
+		ByteArrayInputStream bais = new ByteArrayInputStream(data);
+		return littleEndian ? new LittleEndianNBTInputStream(bais) : new NBTInputStream(bais);
+	}
+
+	public void testReadTree() {
+		CompoundTag tag = createTestTag();
+		for (boolean littleEndian : new boolean[]{false, true}) {
+			TreeHandler handler = new TreeHandler();
+			DataInput in = input(write(tag, littleEndian), littleEndian);
+			assertThrowsNoException(() -> new NBTStreamReader(in).read(handler));
+			assertEquals(tag, handler.root);
+			assertThrowsException(in::readByte, EOFException.class);
+		}
+	}
+
+	public void testSkip() {
+		CompoundTag tag = createTestTag();
+		CompoundTag skipped = new CompoundTag();
+		skipped.putString("inner", "value");
+		tag.put("skipped", skipped);
+		tag.putString("after", "end");
+		for (boolean littleEndian : new boolean[]{false, true}) {
+			List<String> ids = new ArrayList<>();
+			List<String> names = new ArrayList<>();
+			int[] depth = new int[1];
+			NBTHandler handler = new NBTHandler() {
+
+				private String name;
+
+				@Override
+				public boolean name(byte type, String name) {
+					names.add(name);
+					this.name = name;
+					return depth[0] == 0 || name.equals("id") || name.equals("Entities") || name.equals("after");
+				}
+
+				@Override
+				public void startCompound() {
+					depth[0]++;
+				}
+
+				@Override
+				public void endCompound() {
+					depth[0]--;
+				}
+
+				@Override
+				public void stringValue(String value) {
+					ids.add(name + "=" + value);
+				}
+			};
+			DataInput in = input(write(tag, littleEndian), littleEndian);
+			assertThrowsNoException(() -> new NBTStreamReader(in).read(handler));
+			assertEquals(0, depth[0]);
+			assertEquals(4, ids.size());
+			assertEquals(3, ids.stream().filter("id=minecraft:pig"::equals).count());
+			assertTrue(ids.contains("after=end"));
+			// children of skipped tags do not create events
+			assertTrue(names.contains("skipped"));
+			assertFalse(names.contains("inner"));
+			assertThrowsException(in::readByte, EOFException.class);
+
+			DataInput skipIn = input(write(tag, littleEndian), littleEndian);
+			assertThrowsNoException(() -> {
+				byte type = skipIn.readByte();
+				skipIn.readUTF();
+				NBTStreamReader.skip(skipIn, type, Tag.DEFAULT_MAX_DEPTH);
+			});
+			assertThrowsException(skipIn::readByte, EOFException.class);
+
+			// skipping a list stops after its elements
+			DataInput listIn = input(write(tag, littleEndian), littleEndian);
+			int[] lists = new int[1];
+			assertThrowsNoException(() -> new NBTStreamReader(listIn).read(new NBTHandler() {
+				@Override
+				public boolean startList(byte elementType, int length) {
+					lists[0]++;
+					return false;
+				}
+
+				@Override
+				public void endList() {
+					fail("endList called for skipped list");
+				}
+			}));
+			assertEquals(2, lists[0]);
+			assertThrowsException(listIn::readByte, EOFException.class);
+		}
+	}
+
+	public void testInvalid() {
+		byte[] data = write(createTestTag(), false);
+		byte[] truncated = new byte[data.length - 10];
+		System.arraycopy(data, 0, truncated, 0, truncated.length);
+		assertThrowsException(() -> new NBTStreamReader(input(truncated, false)).read(new NBTHandler() {}), EOFException.class);
+		assertThrowsException(() -> new NBTStreamReader(input(truncated, false)).read(new NBTHandler() {
+			@Override
+			public boolean name(byte type, String name) {
+				return name.equals("root");
+			}
+		}), EOFException.class);
+		assertThrowsException(() -> new NBTStreamReader(input(new byte[]{13, 0, 0}, false)).read(new NBTHandler() {}), IOException.class);
+
+		CompoundTag root = new CompoundTag();
+		CompoundTag rec = root;
+		for (int i = 0; i < 10; i++) {
+			CompoundTag c = new CompoundTag();
+			rec.put("c" + i, c);
+			rec = c;
+		}
+		byte[] deep = write(root, false);
+		assertThrowsNoException(() -> new NBTStreamReader(input(deep, false)).read(new NBTHandler() {}, 10));
+		assertThrowsRuntimeException(() -> {
+			try {
+				new NBTStreamReader(input(deep, false)).read(new NBTHandler() {}, 9);
+			} catch (IOException ex) {
+				fail(ex.getMessage());
+			}
+		}, MaxDepthReachedException.class);
+	}
+}
@@ -0,0 +1,132 @@
+package net.querz.nbt.io;
+
+import net.querz.NBTTestCase;
+import net.querz.nbt.tag.CompoundTag;
+import net.querz.nbt.tag.ListTag;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+public class StringDecoderTest extends NBTTestCase {
+
+	private static byte[] modifiedUTF8(String s) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		new DataOutputStream(baos).writeUTF(s);
+		return baos.toByteArray();
+	}
+
+	private static String randomString(Random random, int length) {
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			switch (random.nextInt(4)) {
+			case 0:
+				chars[i] = (char) random.nextInt(0x80);
+				break;
+			case 1:
+				chars[i] = (char) random.nextInt(0x800);
+				break;
+			default:
+				chars[i] = (char) random.nextInt(0x10000);
+			}
+		}
+		return new String(chars);
+	}
+
+	public void testModifiedUTF8() throws IOException {
+		StringDecoder decoder = new StringDecoder(true);
+		Random random = new Random(0);
+		String[] strings = {"", "Name", "\0", "stränge", "€", "😀", randomString(random, 100), randomString(random, 20000)};
+		for (String s : strings) {
+			byte[] data = modifiedUTF8(s);
+			assertEquals(s, decoder.read(new DataInputStream(new ByteArrayInputStream(data)), false));
+			assertEquals(s, decoder.decode(data, 2, data.length - 2, false));
+		}
+	}
+
+	public void testUTF8() throws IOException {
+		StringDecoder decoder = new StringDecoder(false);
+		for (String s : new String[]{"Name", "stränge", "😀", "\0"}) {
+			byte[] data = s.getBytes(StandardCharsets.UTF_8);
+			assertEquals(s, decoder.decode(data, 0, data.length, false));
+		}
+		// malformed standard UTF-8 is replaced instead of rejected
+		assertEquals("�", decoder.decode(new byte[]{(byte) 0x80}, 0, 1, false));
+	}
+
+	public void testMalformed() {
+		StringDecoder decoder = new StringDecoder(true);
+		byte[][] malformed = {{(byte) 0xC3}, {(byte) 0xE2, (byte) 0x82}, {(byte) 0xC3, 0x41}, {(byte) 0xE2, 0x41, (byte) 0x82}, {(byte) 0x80}, {(byte) 0xF0, (byte) 0x9F, (byte) 0x98, (byte) 0x80}};
+		for (byte[] b : malformed) {
+			assertThrowsException(() -> decoder.decode(b, 0, b.length, false), UTFDataFormatException.class);
+		}
+	}
+
+	public void testKeyCache() throws IOException {
+		assertThrowsRuntimeException(() -> new KeyCache(0), IllegalArgumentException.class);
+		assertEquals(1, new KeyCache(1).getCapacity());
+		assertEquals(64, new KeyCache(50).getCapacity());
+
+		KeyCache cache = new KeyCache(16);
+		StringDecoder decoder = new StringDecoder(true);
+		decoder.setKeyCache(cache);
+		byte[] data = "xxPalettexx".getBytes(StandardCharsets.US_ASCII);
+		String key = decoder.decode(data, 2, 7, true);
+		assertEquals("Palette", key);
+		assertSame(key, decoder.decode(data.clone(), 2, 7, true));
+		assertNotSame(key, decoder.decode(data, 2, 7, false));
+
+		// the cache is shared by little endian readers
+		StringDecoder littleEndian = new StringDecoder(false);
+		littleEndian.setKeyCache(cache);
+		assertSame(key, littleEndian.decode(data, 2, 7, true));
+
+		cache.clear();
+		assertNotSame(key, decoder.decode(data, 2, 7, true));
+
+		// long keys and keys that are not ASCII are not cached
+		byte[] longKey = new byte[KeyCache.MAX_KEY_LENGTH + 1];
+		Arrays.fill(longKey, (byte) 'a');
+		assertNotSame(decoder.decode(longKey, 0, longKey.length, true), decoder.decode(longKey, 0, longKey.length, true));
+		byte[] umlaut = modifiedUTF8("ä");
+		assertNotSame(decoder.decode(umlaut, 2, 2, true), decoder.decode(umlaut, 2, 2, true));
+	}
+
+	public void testReadersShareKeys() throws IOException {
+		CompoundTag root = new CompoundTag();
+		ListTag<CompoundTag> palette = new ListTag<>(CompoundTag.class);
+		for (int i = 0; i < 2; i++) {
+			CompoundTag block = new CompoundTag();
+			block.putString("Name", "minecraft:stone");
+			palette.add(block);
+		}
+		root.put("Palette", palette);
+		NamedTag tag = new NamedTag("Name", root);
+
+		KeyCache cache = new KeyCache(64);
+		for (boolean littleEndian : new boolean[]{false, true}) {
+			byte[] data = new NBTSerializer(false, littleEndian).toBytes(tag);
+			NBTDeserializer deserializer = new NBTDeserializer(false, littleEndian);
+			deserializer.setKeyCache(cache);
+			NamedTag fromStream = deserializer.fromBytes(data);
+			NamedTag fromBuffer = deserializer.fromBuffer(ByteBuffer.wrap(data));
+			NamedTag fromDirectBuffer = deserializer.fromBuffer((ByteBuffer) ByteBuffer.allocateDirect(data.length).put(data).flip());
+			for (NamedTag read : new NamedTag[]{fromStream, fromBuffer, fromDirectBuffer}) {
+				assertEquals(root, read.getTag());
+				ListTag<CompoundTag> p = ((CompoundTag) read.getTag()).getListTag("Palette").asCompoundTagList();
+				String first = p.get(0).keySet().iterator().next();
+				assertEquals("Name", first);
+				assertSame(first, p.get(1).keySet().iterator().next());
+				assertSame(first, read.getName());
+				// values are not cached
+				assertNotSame(p.get(0).getString("Name"), p.get(1).getString("Name"));
+			}
+		}
+	}
+}
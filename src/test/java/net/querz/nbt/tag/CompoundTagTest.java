@@ -2,8 +2,11 @@ package net.querz.nbt.tag;
 
 import net.querz.io.MaxDepthReachedException;
 import net.querz.NBTTestCase;
+import net.querz.nbt.io.NBTInputStream;
 
+import java.io.ByteArrayInputStream;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -145,6 +148,111 @@ public class CompoundTagTest extends NBTTestCase {
 		assertNotSame(invokeGetValue(ct), invokeGetValue(cl));
 	}
 
+	public void testFreeze() {
+		CompoundTag ct = createCompoundTag();
+		int hashCode = ct.hashCode();
+		assertFalse(ct.isFrozen());
+		assertSame(ct, ct.freeze());
+		assertTrue(ct.isFrozen());
+		assertTrue(ct.get("b").isFrozen());
+		assertTrue(ct.getListTag("list").isFrozen());
+		assertTrue(ct.getListTag("list").get(0).isFrozen());
+		assertEquals(hashCode, ct.hashCode());
+		assertEquals(createCompoundTag(), ct);
+		assertEquals(ct, createCompoundTag());
+
+		assertThrowsRuntimeException(() -> ct.putInt("i", 1), UnsupportedOperationException.class);
+		assertThrowsRuntimeException(() -> ct.remove("b"), UnsupportedOperationException.class);
+		assertThrowsRuntimeException(ct::clear, UnsupportedOperationException.class);
+		assertThrowsRuntimeException(() -> ct.keySet().remove("b"), UnsupportedOperationException.class);
+		assertThrowsRuntimeException(() -> ct.values().clear(), UnsupportedOperationException.class);
+		assertThrowsRuntimeException(() -> ct.entrySet().iterator().next().setValue(new IntTag(1)), UnsupportedOperationException.class);
+		assertThrowsRuntimeException(() -> ct.getByteTag("b").setValue((byte) 1), UnsupportedOperationException.class);
+		assertThrowsRuntimeException(() -> ct.getStringTag("str").setValue("bar"), UnsupportedOperationException.class);
+		assertThrowsRuntimeException(() -> ct.getListTag("list").addByte((byte) 1), UnsupportedOperationException.class);
+		assertEquals(createCompoundTag(), ct);
+
+		// clones are mutable
+		CompoundTag cl = ct.clone();
+		assertFalse(cl.isFrozen());
+		assertFalse(cl.getListTag("list").isFrozen());
+		cl.getListTag("list").asByteTagList().get(0).setValue((byte) 1);
+		assertNotEquals(ct, cl);
+		assertNotEquals(cl, ct);
+
+		// frozen tags with different hash codes are never equal
+		CompoundTag other = createCompoundTag();
+		other.putInt("i", 1);
+		assertNotEquals(ct, other.freeze());
+	}
+
+	public void testCompact() {
+		CompoundTag ct = CompoundTag.createCompact(0);
+		assertTrue(ct.isCompact());
+		CompoundTag hashed = new CompoundTag();
+		for (int i = 0; i < 40; i++) {
+			ct.putInt("k" + i, i);
+			hashed.putInt("k" + i, i);
+			assertEquals(hashed, ct);
+			assertEquals(ct, hashed);
+			assertEquals(hashed.hashCode(), ct.hashCode());
+		}
+		// insertion order is preserved
+		int i = 0;
+		for (Map.Entry<String, Tag<?>> e : ct) {
+			assertEquals("k" + i, e.getKey());
+			assertEquals(i++, ((IntTag) e.getValue()).asInt());
+		}
+		assertEquals(new IntTag(0), ct.put("k0", new IntTag(100)));
+		assertEquals(100, ct.getInt("k0"));
+		assertEquals(40, ct.size());
+
+		// removing entries moves the following entries, which must still be found
+		assertEquals(new IntTag(5), ct.remove("k5"));
+		assertNull(ct.remove("k5"));
+		assertNull(ct.get("k5"));
+		assertEquals(39, ct.size());
+		for (i = 6; i < 40; i++) {
+			assertEquals(i, ct.getInt("k" + i));
+		}
+		Iterator<String> it = ct.keySet().iterator();
+		while (it.hasNext()) {
+			if (ct.getInt(it.next()) % 2 == 1) {
+				it.remove();
+			}
+		}
+		for (Map.Entry<String, Tag<?>> e : ct) {
+			e.setValue(new IntTag(-1));
+		}
+		assertEquals(20, ct.size());
+		for (i = 0; i < 40; i++) {
+			assertEquals(i % 2 == 0 ? -1 : 0, ct.getInt("k" + i));
+		}
+		assertThrowsRuntimeException(() -> ct.entrySet().iterator().next().setValue(null), NullPointerException.class);
+		assertThrowsRuntimeException(() -> ct.put(null, new IntTag(1)), NullPointerException.class);
+
+		CompoundTag cl = ct.clone();
+		assertTrue(cl.isCompact());
+		assertEquals(ct, cl);
+		ct.clear();
+		assertEquals(0, ct.size());
+		assertNull(ct.get("k0"));
+		ct.putString("a", "b");
+		ct.trimToSize();
+		assertEquals("b", ct.getString("a"));
+		assertEquals("{\"a\":{\"type\":\"StringTag\",\"value\":\"b\"}}", ct.valueToString());
+		assertThrowsRuntimeException(() -> CompoundTag.createCompact(-1), IllegalArgumentException.class);
+
+		// reading compact compounds
+		CompoundTag original = createCompoundTag();
+		NBTInputStream in = new NBTInputStream(new ByteArrayInputStream(serialize(original)));
+		in.setCompactCompounds(true);
+		CompoundTag read = (CompoundTag) assertThrowsNoException(() -> in.readTag(Tag.DEFAULT_MAX_DEPTH)).getTag();
+		assertTrue(read.isCompact());
+		assertEquals(original, read);
+		assertEquals(original.toString(), read.toString());
+	}
+
 	public void testClear() {
 		CompoundTag cclear = new CompoundTag();
 		cclear.putString("test", "blah");
@@ -1,8 +1,14 @@
 package net.querz.nbt.tag;
 
 import net.querz.NBTTestCase;
+import net.querz.nbt.io.NBTDeserializer;
+import net.querz.nbt.io.NBTSerializer;
+import net.querz.nbt.io.NamedTag;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.util.Arrays;
+import java.util.Random;
 
 public class IntArrayTagTest extends NBTTestCase {
 
@@ -50,6 +56,32 @@ public class IntArrayTagTest extends NBTTestCase {
 		assertTrue(t.equals(tt));
 	}
 
+	public void testSerializeDeserializeBulk() {
+		// larger than the buffer used for bulk conversion, and not a multiple of its size
+		int[] values = new int[5000];
+		Random random = new Random(4);
+		for (int i = 0; i < values.length; i++) {
+			values[i] = random.nextInt();
+		}
+		IntArrayTag t = new IntArrayTag(values);
+		for (boolean littleEndian : new boolean[]{false, true}) {
+			ByteArrayOutputStream expected = new ByteArrayOutputStream();
+			DataOutputStream dos = new DataOutputStream(expected);
+			assertThrowsNoException(() -> {
+				dos.writeByte(IntArrayTag.ID);
+				dos.writeShort(0);
+				dos.writeInt(littleEndian ? Integer.reverseBytes(values.length) : values.length);
+				for (int v : values) {
+					dos.writeInt(littleEndian ? Integer.reverseBytes(v) : v);
+				}
+			});
+			byte[] data = assertThrowsNoException(() -> new NBTSerializer(false, littleEndian).toBytes(new NamedTag(null, t)));
+			assertTrue(Arrays.equals(expected.toByteArray(), data));
+			NamedTag tt = assertThrowsNoException(() -> new NBTDeserializer(false, littleEndian).fromBytes(data));
+			assertEquals(t, tt.getTag());
+		}
+	}
+
 	public void testCompareTo() {
 		IntArrayTag t = new IntArrayTag(new int[]{Integer.MIN_VALUE, 0, Integer.MAX_VALUE});
 		IntArrayTag t2 = new IntArrayTag(new int[]{Integer.MIN_VALUE, 0, Integer.MAX_VALUE});
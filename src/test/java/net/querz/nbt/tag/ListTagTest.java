@@ -6,6 +6,8 @@ import net.querz.NBTTestCase;
 
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
 import static org.junit.Assert.assertNotEquals;
 
 public class ListTagTest extends NBTTestCase {
@@ -274,6 +276,195 @@ public class ListTagTest extends NBTTestCase {
 		l.forEach(TestCase::assertNotNull);
 	}
 
+	public void testFreeze() {
+		ListTag<IntArrayTag> l = new ListTag<>(IntArrayTag.class);
+		l.addIntArray(new int[] {1, 2, 3});
+		int hashCode = l.hashCode();
+		assertSame(l, l.freeze());
+		assertTrue(l.get(0).isFrozen());
+		assertEquals(hashCode, l.hashCode());
+		assertThrowsRuntimeException(() -> l.add(new IntArrayTag()), UnsupportedOperationException.class);
+		assertThrowsRuntimeException(() -> l.set(0, new IntArrayTag()), UnsupportedOperationException.class);
+		assertThrowsRuntimeException(() -> l.remove(0), UnsupportedOperationException.class);
+		assertThrowsRuntimeException(() -> l.sort(Comparator.naturalOrder()), UnsupportedOperationException.class);
+		assertThrowsRuntimeException(() -> l.get(0).setValue(new int[0]), UnsupportedOperationException.class);
+		assertThrowsRuntimeException(() -> {
+			Iterator<IntArrayTag> it = l.iterator();
+			it.next();
+			it.remove();
+		}, UnsupportedOperationException.class);
+
+		// an empty frozen list keeps its type
+		ListTag<?> empty = ListTag.createUnchecked(EndTag.class).freeze();
+		assertThrowsRuntimeException(() -> empty.addUnchecked(new IntTag(1)), UnsupportedOperationException.class);
+		assertEquals(EndTag.class, empty.asListTagList().getTypeClass());
+		assertEquals(EndTag.class, empty.getTypeClass());
+	}
+
+	private boolean isPrimitive(ListTag<?> l) {
+		return ((PrimitiveTagList<?>) invokeGetValue(l)).isPrimitive();
+	}
+
+	public void testPrimitive() {
+		ListTag<DoubleTag> d = ListTag.ofDoubles(new double[] {1.5, -2, Double.NaN});
+		assertEquals(DoubleTag.class, d.getTypeClass());
+		assertEquals(3, d.size());
+		assertEquals(-2D, d.getDouble(1));
+		assertEquals(-2, d.getInt(1));
+		assertTrue(isPrimitive(d));
+
+		ListTag<DoubleTag> regular = new ListTag<>(DoubleTag.class);
+		regular.addDouble(1.5);
+		regular.addDouble(-2);
+		regular.addDouble(Double.NaN);
+		assertEquals(regular.hashCode(), d.hashCode());
+		assertEquals(regular, d);
+		assertEquals(d, regular);
+		assertEquals(regular.toString(), d.toString());
+
+		// clones of primitive lists are primitive and independent
+		ListTag<DoubleTag> cl = d.clone();
+		assertTrue(isPrimitive(cl));
+		assertEquals(d, cl);
+
+		// reading an element caches its tag without changing the storage, changes to the tag are retained
+		d.get(0).setValue(3);
+		assertTrue(isPrimitive(d));
+		assertSame(d.get(0), d.get(0));
+		assertEquals(3D, d.getDouble(0));
+		assertEquals(1.5, cl.getDouble(0));
+		regular.get(0).setValue(3);
+		assertEquals(regular.hashCode(), d.hashCode());
+		assertEquals(regular, d);
+		assertEquals(regular.toString(), d.toString());
+		assertEquals(3D, d.clone().getDouble(0));
+
+		// structural changes move the elements into a list of tags
+		DoubleTag first = d.get(0);
+		d.addDouble(4);
+		assertFalse(isPrimitive(d));
+		assertSame(first, d.get(0));
+		d.remove(1);
+		assertEquals(3, d.size());
+		assertEquals(4D, d.get(2).asDouble());
+		assertThrowsRuntimeException(() -> d.addUnchecked(new IntTag(1)), IllegalArgumentException.class);
+		assertThrowsRuntimeException(() -> ListTag.ofInts(null), NullPointerException.class);
+
+		// freezing keeps the primitive array and freezes cached as well as newly created tags
+		ListTag<IntTag> frozen = ListTag.ofInts(new int[] {1, 2});
+		IntTag cached = frozen.get(0);
+		int hashCode = frozen.hashCode();
+		frozen.freeze();
+		assertTrue(isPrimitive(frozen));
+		assertTrue(cached.isFrozen());
+		assertTrue(frozen.get(1).isFrozen());
+		assertEquals(2, frozen.getInt(1));
+		assertEquals(hashCode, frozen.hashCode());
+		assertThrowsRuntimeException(() -> frozen.addInt(3), UnsupportedOperationException.class);
+		assertThrowsRuntimeException(() -> frozen.set(0, new IntTag(3)), UnsupportedOperationException.class);
+		assertThrowsRuntimeException(() -> frozen.remove(0), UnsupportedOperationException.class);
+		assertThrowsRuntimeException(() -> frozen.get(0).setValue(3), UnsupportedOperationException.class);
+		assertThrowsRuntimeException(() -> {
+			Iterator<IntTag> it = frozen.iterator();
+			it.next();
+			it.remove();
+		}, UnsupportedOperationException.class);
+		assertTrue(isPrimitive(frozen));
+		assertFalse(frozen.clone().isFrozen());
+	}
+
+	public void testPrimitiveConcurrentRead() throws InterruptedException {
+		int[] values = new int[10000];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = i;
+		}
+		ListTag<IntTag> l = ListTag.ofInts(values);
+		Thread[] threads = new Thread[4];
+		Throwable[] failure = new Throwable[1];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread(() -> {
+				try {
+					for (int i = 0; i < values.length; i++) {
+						assertEquals(values.length, l.size());
+						assertEquals(i, l.get(i).asInt());
+						assertEquals(i, l.getInt(i));
+					}
+					for (IntTag tag : l) {
+						assertNotNull(tag);
+					}
+					l.hashCode();
+					l.toString();
+				} catch (Throwable ex) {
+					synchronized (failure) {
+						failure[0] = ex;
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertNull(failure[0]);
+		assertTrue(isPrimitive(l));
+		for (int i = 0; i < values.length; i++) {
+			assertSame(l.get(i), l.get(i));
+		}
+	}
+
+	public void testPrimitiveSerializeDeserialize() {
+		CompoundTag c = new CompoundTag();
+		c.put("b", ListTag.ofBytes(new byte[] {1, -2}));
+		c.put("s", ListTag.ofShorts(new short[] {Short.MIN_VALUE, 3}));
+		c.put("i", ListTag.ofInts(new int[] {Integer.MAX_VALUE, 4}));
+		c.put("l", ListTag.ofLongs(new long[] {Long.MIN_VALUE, 5}));
+		c.put("f", ListTag.ofFloats(new float[] {Float.MAX_VALUE, 6}));
+		c.put("d", ListTag.ofDoubles(new double[] {Double.MIN_VALUE, 7}));
+		c.put("e", ListTag.ofDoubles(new double[0]));
+
+		CompoundTag regular = new CompoundTag();
+		ListTag<ByteTag> b = new ListTag<>(ByteTag.class);
+		b.addByte((byte) 1);
+		b.addByte((byte) -2);
+		regular.put("b", b);
+		ListTag<ShortTag> s = new ListTag<>(ShortTag.class);
+		s.addShort(Short.MIN_VALUE);
+		s.addShort((short) 3);
+		regular.put("s", s);
+		ListTag<IntTag> i = new ListTag<>(IntTag.class);
+		i.addInt(Integer.MAX_VALUE);
+		i.addInt(4);
+		regular.put("i", i);
+		ListTag<LongTag> l = new ListTag<>(LongTag.class);
+		l.addLong(Long.MIN_VALUE);
+		l.addLong(5);
+		regular.put("l", l);
+		ListTag<FloatTag> f = new ListTag<>(FloatTag.class);
+		f.addFloat(Float.MAX_VALUE);
+		f.addFloat(6);
+		regular.put("f", f);
+		ListTag<DoubleTag> d = new ListTag<>(DoubleTag.class);
+		d.addDouble(Double.MIN_VALUE);
+		d.addDouble(7);
+		regular.put("d", d);
+		regular.put("e", new ListTag<>(DoubleTag.class));
+
+		byte[] data = serialize(c);
+		assertTrue(Arrays.equals(serialize(regular), data));
+		for (Map.Entry<String, Tag<?>> e : c) {
+			assertTrue(isPrimitive((ListTag<?>) e.getValue()));
+		}
+
+		CompoundTag read = (CompoundTag) deserialize(data);
+		assertEquals(regular, read);
+		for (String key : new String[] {"b", "s", "i", "l", "f", "d"}) {
+			assertTrue(key, isPrimitive(read.getListTag(key)));
+		}
+		// empty lists are read as regular lists, so their type can still be set by adding an element
+		assertEquals(DoubleTag.class, read.getListTag("e").getTypeClass());
+		assertTrue(Arrays.equals(data, serialize(read)));
+	}
+
 	public void testSet() {
 		ListTag<ByteTag> l = createListTag();
 		l.set(1, new ByteTag((byte) 5));